@@ -0,0 +1,231 @@
+package bst;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Runs the benchmarks with the GC profiler, saves the results as a JSON baseline,
+ * and compares them against an earlier baseline if one is given.
+ * <p>
+ * Usage: java -jar benchmarks.jar [--baseline old.json] [JMH options...]
+ * Any JMH command line option can be used, for example '-p size=1000' or 'InsertBenchmark'.
+ * Results go to baselines/results-(time).json unless '-rff' says otherwise.
+ */
+public class BenchmarkRunner {
+
+    private static final double THRESHOLD = 0.10; // Change in score reported as a regression.
+
+    /**
+     * This is the main method that runs on program execution.
+     * @param args String[] of commandline args.
+     * @throws CommandLineOptionException If the JMH options are not valid.
+     * @throws RunnerException If a benchmark fails.
+     * @throws IOException If a baseline can not be read or written.
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+
+        // Take out the baseline option; everything else goes to JMH.
+        Path baseline = null;
+        List<String> jmhArgs = new ArrayList<>();
+        for (int i=0; i<args.length; i++){
+            if (args[i].equals("--baseline") && i + 1 < args.length) baseline = Paths.get(args[++i]);
+            else jmhArgs.add(args[i]);
+        }
+        CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+
+        // Always profile allocation, and save JSON to a new file unless told where.
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class);
+        Path results;
+        if (commandLine.getResult().hasValue()) results = Paths.get(commandLine.getResult().get());
+        else {
+            results = Paths.get("baselines", "results-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+            Files.createDirectories(results.getParent());
+            options.result(results.toString());
+        }
+        if (!commandLine.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+
+        Collection<RunResult> runs = new Runner(options.build()).run();
+        System.out.println("Results saved to " + results);
+        if (baseline != null) compare(baseline, runs);
+    }
+
+    /**
+     * Prints the change of every result against the matching one in a baseline, flagging regressions.
+     * @param baseline Path of the earlier JSON results.
+     * @param runs Results of this run.
+     * @throws IOException If the baseline can not be read.
+     */
+    @SuppressWarnings("unchecked")
+    private static void compare(Path baseline, Collection<RunResult> runs) throws IOException {
+
+        // Index the baseline scores by benchmark, mode and parameters.
+        Map<String, Double> scores = new HashMap<>();
+        String json = new String(Files.readAllBytes(baseline), StandardCharsets.UTF_8);
+        for (Object entry : (List<Object>) new JsonReader(json).read()){
+            Map<String, Object> result = (Map<String, Object>) entry;
+            Map<String, Object> params = result.containsKey("params") ? (Map<String, Object>) result.get("params") : new HashMap<String, Object>();
+            Map<String, Object> metric = (Map<String, Object>) result.get("primaryMetric");
+            scores.put(key((String) result.get("benchmark"), (String) result.get("mode"), new TreeMap<>(params)), ((Number) metric.get("score")).doubleValue());
+        }
+
+        System.out.println();
+        System.out.println("Change against " + baseline + ":");
+        int regressions = 0;
+        for (RunResult run : runs){
+            String mode = run.getParams().getMode().shortLabel();
+            Map<String, Object> params = new TreeMap<>();
+            for (String name : run.getParams().getParamsKeys()) params.put(name, run.getParams().getParam(name));
+            String key = key(run.getParams().getBenchmark(), mode, params);
+            Double old = scores.get(key);
+            if (old == null || old == 0) continue;
+
+            // Throughput should go up; every other mode measures time, which should go down.
+            double score = run.getPrimaryResult().getScore();
+            double change = (score - old) / old;
+            boolean worse = mode.equals("thrpt") ? change < -THRESHOLD : change > THRESHOLD;
+            if (worse) regressions++;
+            System.out.printf("%s%-100s %+7.1f%%%n", worse ? "REGRESSION " : "           ", key, change * 100);
+        }
+        System.out.println(regressions + " regression(s) beyond " + (int) (THRESHOLD * 100) + "%.");
+    }
+
+    /**
+     * Makes the key a result is matched on.
+     * @param benchmark Full name of the benchmark method.
+     * @param mode Short label of the mode.
+     * @param params Parameters, sorted by name.
+     * @return Key of the result.
+     */
+    private static String key(String benchmark, String mode, Map<String, Object> params){
+        return benchmark + " " + mode + " " + params;
+    }
+
+    /**
+     * Reader for the plain JSON that JMH writes: objects, arrays, strings, numbers, booleans and null.
+     */
+    private static final class JsonReader {
+
+        private final String text; // JSON being read.
+        private int position = 0; // Index of the next character.
+
+        /**
+         * Constructor to read a string.
+         * @param text JSON to read.
+         */
+        JsonReader(String text){
+            this.text = text;
+        }
+
+        /**
+         * Reads the next value.
+         * @return Map, List, String, Double, Boolean or null.
+         */
+        Object read(){
+            this.skipSpace();
+            char c = this.text.charAt(this.position);
+            if (c == '{'){
+                Map<String, Object> map = new LinkedHashMap<>();
+                this.position++;
+                while (this.peek() != '}'){
+                    String name = (String) this.read();
+                    this.next(); // ':'
+                    map.put(name, this.read());
+                    if (this.peek() == ',') this.position++;
+                }
+                this.position++;
+                return map;
+            }
+            if (c == '['){
+                List<Object> list = new ArrayList<>();
+                this.position++;
+                while (this.peek() != ']'){
+                    list.add(this.read());
+                    if (this.peek() == ',') this.position++;
+                }
+                this.position++;
+                return list;
+            }
+            if (c == '"') return this.readString();
+            if (this.text.startsWith("true", this.position)){
+                this.position += 4;
+                return Boolean.TRUE;
+            }
+            if (this.text.startsWith("false", this.position)){
+                this.position += 5;
+                return Boolean.FALSE;
+            }
+            if (this.text.startsWith("null", this.position)){
+                this.position += 4;
+                return null;
+            }
+
+            // Anything else is a number; JMH writes "NaN" as a string, so only plain numbers land here.
+            int start = this.position;
+            while (this.position < this.text.length() && "+-.eE0123456789".indexOf(this.text.charAt(this.position)) >= 0) this.position++;
+            return Double.parseDouble(this.text.substring(start, this.position));
+        }
+
+        /**
+         * Reads a string, including its quotes.
+         * @return String without quotes or escapes.
+         */
+        private String readString(){
+            StringBuilder builder = new StringBuilder();
+            this.position++;
+            while (true){
+                char c = this.text.charAt(this.position++);
+                if (c == '"') return builder.toString();
+                if (c == '\\'){
+                    char escaped = this.text.charAt(this.position++);
+                    if (escaped == 'u'){
+                        builder.append((char) Integer.parseInt(this.text.substring(this.position, this.position + 4), 16));
+                        this.position += 4;
+                    }
+                    else builder.append(escaped == 'n' ? '\n' : escaped == 't' ? '\t' : escaped);
+                }
+                else builder.append(c);
+            }
+        }
+
+        /**
+         * Skips white space.
+         */
+        private void skipSpace(){
+            while (this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position))) this.position++;
+        }
+
+        /**
+         * Looks at the next character that is not white space.
+         * @return Next character.
+         */
+        private char peek(){
+            this.skipSpace();
+            return this.text.charAt(this.position);
+        }
+
+        /**
+         * Takes the next character that is not white space.
+         * @return Character taken.
+         */
+        private char next(){
+            char c = this.peek();
+            this.position++;
+            return c;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package bst;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a batch of keys into an empty tree, one insert at a time and all at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size; // Number of keys loaded per operation.
+
+    @Param({"UNIFORM", "SKEWED", "DUPLICATES"})
+    KeyDistribution distribution; // How the keys are generated.
+
+    Integer[] keys; // Keys to load.
+
+    /**
+     * Generates the keys once for the whole run.
+     */
+    @Setup(Level.Trial)
+    public void setUp(){
+        this.keys = this.distribution.keys(this.size);
+    }
+
+    /**
+     * Loads every key with addNode.
+     * @return Loaded tree.
+     */
+    @Benchmark
+    public BalancedBST<Integer> addNode(){
+        return KeyDistribution.load(this.keys);
+    }
+
+    /**
+     * Loads every key with one addAll.
+     * @return Loaded tree.
+     */
+    @Benchmark
+    public BalancedBST<Integer> addAll(){
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        tree.addAll(Arrays.asList(this.keys));
+        return tree;
+    }
+}
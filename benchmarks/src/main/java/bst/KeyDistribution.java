@@ -0,0 +1,68 @@
+package bst;
+
+import java.util.Random;
+
+/**
+ * Ways of generating the keys a benchmark loads into a tree.
+ */
+public enum KeyDistribution {
+
+    /**
+     * Keys spread evenly over every int value; almost no duplicates.
+     */
+    UNIFORM {
+        int next(Random random, int size){
+            return random.nextInt();
+        }
+    },
+
+    /**
+     * Keys from 0 to size, heavily weighted toward the small end, so a few keys get most of the duplicates.
+     */
+    SKEWED {
+        int next(Random random, int size){
+            double uniform = random.nextDouble();
+            return (int) (uniform * uniform * uniform * uniform * size);
+        }
+    },
+
+    /**
+     * Keys from 0 through 99, the same as Main, so nearly every insert is a duplicate.
+     */
+    DUPLICATES {
+        int next(Random random, int size){
+            return random.nextInt(100);
+        }
+    };
+
+    /**
+     * Generates one key.
+     * @param random Source of randomness.
+     * @param size Number of keys being generated in total.
+     * @return Key.
+     */
+    abstract int next(Random random, int size);
+
+    /**
+     * Generates a batch of keys from a fixed seed, so every run loads the same keys.
+     * @param size Number of keys.
+     * @return Boxed keys, so boxing is not part of what is measured.
+     */
+    Integer[] keys(int size){
+        Random random = new Random(42);
+        Integer[] keys = new Integer[size];
+        for (int i=0; i<size; i++) keys[i] = this.next(random, size);
+        return keys;
+    }
+
+    /**
+     * Loads a batch of keys into a new tree one at a time.
+     * @param keys Keys to load.
+     * @return Tree of the keys.
+     */
+    static BalancedBST<Integer> load(Integer[] keys){
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        for (Integer key : keys) tree.addNode(key);
+        return tree;
+    }
+}
@@ -0,0 +1,71 @@
+package bst;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures single-key lookups in the pointer tree against its frozen Eytzinger-ordered snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size; // Number of keys in the tree.
+
+    @Param({"UNIFORM", "SKEWED", "DUPLICATES"})
+    KeyDistribution distribution; // How the keys are generated.
+
+    BalancedBST<Integer> tree; // Tree being searched.
+    FrozenBST<Integer> frozen; // Snapshot of the same tree.
+    Integer[] probes; // Keys to look up, half of them in the tree.
+    int next; // Index of the next probe.
+
+    /**
+     * Loads the tree and picks the probes once for the whole run.
+     */
+    @Setup(Level.Trial)
+    public void setUp(){
+        Integer[] keys = this.distribution.keys(this.size);
+        this.tree = KeyDistribution.load(keys);
+        this.frozen = this.tree.freeze();
+
+        // Every other probe is a loaded key; the rest are random and mostly missing.
+        Random random = new Random(7);
+        this.probes = new Integer[1 << 16];
+        for (int i=0; i<this.probes.length; i++)
+            this.probes[i] = i % 2 == 0 ? keys[random.nextInt(keys.length)] : this.distribution.next(random, this.size);
+    }
+
+    /**
+     * Gets the next probe, cycling through them.
+     * @return Key to look up.
+     */
+    private Integer probe(){
+        return this.probes[this.next++ & (this.probes.length - 1)];
+    }
+
+    /**
+     * Looks a key up in the pointer tree.
+     * @return Count of the key.
+     */
+    @Benchmark
+    public int pointerTree(){
+        return this.tree.getCount(this.probe());
+    }
+
+    /**
+     * Looks a key up in the frozen snapshot.
+     * @return Count of the key.
+     */
+    @Benchmark
+    public int frozen(){
+        return this.frozen.getCount(this.probe());
+    }
+}
@@ -0,0 +1,61 @@
+package bst;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the padded level-by-level exports used for drawing. These grow with 2^height,
+ * so the sizes stop well short of the other benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatrixBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int size; // Number of keys in the tree.
+
+    @Param({"UNIFORM", "SKEWED", "DUPLICATES"})
+    KeyDistribution distribution; // How the keys are generated.
+
+    BalancedBST<Integer> tree; // Tree being exported.
+
+    /**
+     * Loads the tree once for the whole run.
+     */
+    @Setup(Level.Trial)
+    public void setUp(){
+        this.tree = KeyDistribution.load(this.distribution.keys(this.size));
+    }
+
+    /**
+     * Exports the values level by level.
+     * @return Matrix of the values.
+     */
+    @Benchmark
+    public Object[][] toMatrix(){
+        return this.tree.toMatrix();
+    }
+
+    /**
+     * Exports the values and counts level by level as strings.
+     * @return Matrix of the values.
+     */
+    @Benchmark
+    public String[][] toStringMatrix(){
+        return this.tree.toStringMatrix();
+    }
+
+    /**
+     * Exports the values in order with gaps for missing nodes.
+     * @return String of the values.
+     */
+    @Benchmark
+    public String toStringTree(){
+        return this.tree.toStringTree();
+    }
+}
@@ -0,0 +1,54 @@
+package bst;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rebuilding a loaded tree to perfect balance, sequentially and on the common fork/join pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RebuildBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size; // Number of keys in the tree.
+
+    @Param({"UNIFORM", "SKEWED", "DUPLICATES"})
+    KeyDistribution distribution; // How the keys are generated.
+
+    BalancedBST<Integer> tree; // Tree being rebuilt; its contents never change.
+
+    /**
+     * Loads the tree once for the whole run.
+     */
+    @Setup(Level.Trial)
+    public void setUp(){
+        this.tree = KeyDistribution.load(this.distribution.keys(this.size));
+    }
+
+    /**
+     * Rebuilds the tree in this thread.
+     * @return Rebuilt tree.
+     */
+    @Benchmark
+    public BalancedBST<Integer> balance(){
+        this.tree.balance();
+        return this.tree;
+    }
+
+    /**
+     * Rebuilds the tree on the common pool.
+     * @return Rebuilt tree.
+     */
+    @Benchmark
+    public BalancedBST<Integer> balanceParallel(){
+        this.tree.balanceParallel(ForkJoinPool.commonPool());
+        return this.tree;
+    }
+}
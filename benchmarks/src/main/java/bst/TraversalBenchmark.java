@@ -0,0 +1,62 @@
+package bst;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures walking every value of a loaded tree in order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraversalBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size; // Number of keys in the tree.
+
+    @Param({"UNIFORM", "SKEWED", "DUPLICATES"})
+    KeyDistribution distribution; // How the keys are generated.
+
+    BalancedBST<Integer> tree; // Tree being walked.
+
+    /**
+     * Loads the tree once for the whole run.
+     */
+    @Setup(Level.Trial)
+    public void setUp(){
+        this.tree = KeyDistribution.load(this.distribution.keys(this.size));
+    }
+
+    /**
+     * Copies the values into a list.
+     * @return List of the values.
+     */
+    @Benchmark
+    public ArrayList<Integer> toInorderArray(){
+        return this.tree.toInorderArray();
+    }
+
+    /**
+     * Walks the values with the tree's iterator.
+     * @param blackhole Sink for the values.
+     */
+    @Benchmark
+    public void iterate(Blackhole blackhole){
+        for (Integer value : this.tree) blackhole.consume(value);
+    }
+
+    /**
+     * Exports the run-length encoded values.
+     * @return Run list of the values.
+     */
+    @Benchmark
+    public BalancedBST.Runs toRuns(){
+        return this.tree.toRuns();
+    }
+}
@@ -0,0 +1,238 @@
+package bst;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes a BalancedBST as a compact binary snapshot, and reads it back as a balanced tree in linear time.
+ * <p>
+ * A snapshot is the magic "BSTS", a version byte, a flags byte, the number of distinct values and the total count
+ * as varints, then each (value, count) run in order, the value written by a StreamCodec and the count as a varint.
+ * If the checksum flag is set, a CRC32 of everything before it follows as four bytes.
+ * <p>
+ * Writing walks the nodes of the tree in order, so nothing the size of the tree is built. Reading takes only the
+ * bytes of the snapshot from the stream, so whatever follows it, such as the next message on a socket, stays there.
+ */
+final class BSTSerializer {
+    private static final int MAGIC = 0x42535453; // "BSTS"
+    private static final int VERSION = 1;
+    private static final int CHECKSUM = 1; // Flag set when a CRC32 follows the runs.
+    private static final int BUFFER_SIZE = 1 << 16; // Size of the buffers put around streams and channels.
+
+    /**
+     * Not to be constructed; every method is static.
+     */
+    private BSTSerializer(){
+    }
+
+    /**
+     * Writes a snapshot of a tree to a stream, one node at a time. The stream is flushed but not closed.
+     * @param tree Tree to be written.
+     * @param codec Codec for the values of the tree.
+     * @param out Stream to write to.
+     * @param checksum If a CRC32 should be written after the runs.
+     * @param <T> Type of the values.
+     * @throws IOException If the stream can not be written.
+     * @throws IllegalArgumentException If the tree has a comparator; snapshots are read back in natural order.
+     */
+    static <T> void write(BalancedBST<T> tree, StreamCodec<T> codec, OutputStream out, boolean checksum) throws IOException {
+        if (tree.comparator() != null) throw new IllegalArgumentException("Only trees in natural order can be written.");
+        BalancedBST<T>.Node node = tree.firstNode();
+        CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(checked, BUFFER_SIZE));
+
+        // Write the header.
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeByte(checksum ? CHECKSUM : 0);
+        writeVarLong(data, tree.distinct());
+        writeVarLong(data, tree.size());
+
+        // Write a run for each node in order, each value relative to the one before.
+        T previous = null;
+        for (; node != null; node = node.successor()){
+            T value = node.getValue();
+            codec.write(data, previous, value);
+            writeVarLong(data, node.getCount());
+            previous = value;
+        }
+
+        // The checksum covers everything that reached the stream before it.
+        data.flush();
+        if (checksum) new DataOutputStream(out).writeInt((int) checked.getChecksum().getValue());
+        out.flush();
+    }
+
+    /**
+     * Writes a snapshot of a tree to a channel, such as a FileChannel or a SocketChannel. The channel is not closed.
+     * @param tree Tree to be written.
+     * @param codec Codec for the values of the tree.
+     * @param channel Channel to write to.
+     * @param checksum If a CRC32 should be written after the runs.
+     * @param <T> Type of the values.
+     * @throws IOException If the channel can not be written.
+     * @throws IllegalArgumentException If the tree has a comparator.
+     */
+    static <T> void write(BalancedBST<T> tree, StreamCodec<T> codec, WritableByteChannel channel, boolean checksum) throws IOException {
+        write(tree, codec, Channels.newOutputStream(channel), checksum);
+    }
+
+    /**
+     * Reads a snapshot from a stream and builds a perfectly balanced tree of it, without inserting values one by one.
+     * Only the bytes of the snapshot are read, so the stream is left just past it; for that the stream is read
+     * as given, without a buffer of this method's own. A stream that reads from a file or socket should be passed
+     * in a BufferedInputStream, which keeps anything it reads past the snapshot for the caller.
+     * The stream is not closed.
+     * @param codec Codec for the values, the same one the snapshot was written with.
+     * @param in Stream to read from.
+     * @param <T> Type of the values.
+     * @return Tree of the values in the snapshot.
+     * @throws IOException If the stream can not be read, is not a snapshot, or fails its checksum.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> BalancedBST<T> read(StreamCodec<T> codec, InputStream in) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(in, new CRC32());
+        DataInputStream data = new DataInputStream(checked);
+
+        // Read and check the header.
+        if (data.readInt() != MAGIC) throw new IOException("Not a tree snapshot.");
+        int version = data.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Unsupported snapshot version: " + version);
+        int flags = data.readUnsignedByte();
+        long distinct = readVarLong(data), total = readVarLong(data);
+        if (distinct < 0 || distinct > Integer.MAX_VALUE) throw new IOException("Snapshot has too many values: " + distinct);
+
+        // Read the runs, checking that they are in order so the tree built from them is valid.
+        // The buffers start small and grow, so a damaged count can not make them huge up front.
+        BalancedBST.Runs runs = new BalancedBST.Runs((int) Math.min(distinct, BUFFER_SIZE));
+        long sum = 0;
+        T previous = null;
+        for (long i=0; i<distinct; i++){
+            T value = codec.read(data, previous);
+            long count = readVarLong(data);
+            if (count < 1 || count > Integer.MAX_VALUE) throw new IOException("Bad count in snapshot: " + count);
+            if (previous != null && BalancedBST.NATURAL_ORDER.compare(previous, value) >= 0) throw new IOException("Snapshot values are not in order.");
+            runs.add(value, (int) count);
+            sum += count;
+            previous = value;
+        }
+        if (sum != total) throw new IOException("Snapshot counts add up to " + sum + ", header says " + total);
+
+        // Compare the checksum of what was read with the one that was written.
+        if ((flags & CHECKSUM) != 0){
+            int expected = (int) checked.getChecksum().getValue();
+            if (data.readInt() != expected) throw new IOException("Snapshot checksum does not match.");
+        }
+        return BalancedBST.fromRuns(runs);
+    }
+
+    /**
+     * Reads a snapshot from a channel and builds a perfectly balanced tree of it. The channel is not closed, and is
+     * left just past the snapshot. A channel with a position, such as a FileChannel, is read ahead in blocks and its
+     * position then set back to the end of the snapshot; any other, such as a SocketChannel, is read a byte at a
+     * time, as it can not be put back.
+     * @param codec Codec for the values, the same one the snapshot was written with.
+     * @param channel Channel to read from.
+     * @param <T> Type of the values.
+     * @return Tree of the values in the snapshot.
+     * @throws IOException If the channel can not be read, is not a snapshot, or fails its checksum.
+     */
+    static <T> BalancedBST<T> read(StreamCodec<T> codec, ReadableByteChannel channel) throws IOException {
+        if (!(channel instanceof SeekableByteChannel)) return read(codec, Channels.newInputStream(channel));
+
+        // Count what the snapshot takes from the buffer, and move the channel back to just past it.
+        SeekableByteChannel seekable = (SeekableByteChannel) channel;
+        long start = seekable.position();
+        CountingInputStream counted = new CountingInputStream(new BufferedInputStream(Channels.newInputStream(seekable), BUFFER_SIZE));
+        BalancedBST<T> tree = read(codec, counted);
+        seekable.position(start + counted.count);
+        return tree;
+    }
+
+    /**
+     * Stream that counts the bytes read through it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count; // Number of bytes read so far.
+
+        /**
+         * Constructor to count the bytes read from a stream.
+         * @param in Stream to read from.
+         */
+        CountingInputStream(InputStream in){
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) this.count++;
+            return b;
+        }
+
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) this.count += read;
+            return read;
+        }
+
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            this.count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Writes a long as an unsigned varint: seven bits per byte, lowest first, the top bit set on all but the last.
+     * @param out Stream to write to.
+     * @param value Value to be written; negative values take ten bytes.
+     * @throws IOException If the stream can not be written.
+     */
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0){
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads a long written by writeVarLong.
+     * @param in Stream to read from.
+     * @return Value that was read.
+     * @throws IOException If the stream can not be read or the varint is longer than ten bytes.
+     */
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift=0; shift<64; shift+=7){
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Varint is too long.");
+    }
+
+    /**
+     * Maps a signed long to an unsigned one so small negative values stay small as varints.
+     * @param value Signed value.
+     * @return 0, -1, 1, -2, ... as 0, 1, 2, 3, ...
+     */
+    static long zigzag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Undoes zigzag.
+     * @param value Unsigned value.
+     * @return Signed value.
+     */
+    static long unzigzag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,2008 @@
+package bst;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Class for full balanced binary search tree.
+ * By default this tree balances when a new node is added, using AVL rotations along the insert path,
+ * so the height never exceeds about 1.44 log2(n). Other policies can be set per tree; see RebalancePolicy.
+ * Values are kept in their natural order, or in the order of a comparator given when the tree is made.
+ * Only a tree in natural order needs Comparable values; with a comparator, values can be of any type.
+ */
+public class BalancedBST<T> implements Iterable<T> {
+    private Node root; // Root node.
+    private int nodeCount = 0;
+    private int modCount = 0; // Number of changes to the shape of the tree, so iterators can detect them.
+    private final ArrayDeque<Node> pool = new ArrayDeque<>(); // Removed nodes kept to be used again.
+    private static final int POOL_CAPACITY = 1024; // Most removed nodes kept in the pool.
+    static final int MAX_EXPORT_LEVELS = 64; // Most levels exportLevelOrder can number, as positions are longs.
+    private int distinct = 0; // Number of nodes, ie distinct values.
+    private TreeListener listener; // Receives metrics events, null when metrics are off.
+    private int comparisons; // Comparisons made by the current operation, reported to the listener.
+    private RebalancePolicy policy = RebalancePolicy.AVL; // How the tree stays balanced as values are added.
+    private double alpha = 0.7; // Scapegoat balance tolerance; a child may hold at most this share of its parent.
+    private boolean dirty = false; // If deferred inserts have left the tree unbalanced.
+    private int maxDistinct = 0; // Most nodes since the last full rebuild, for scapegoat deletes.
+    private final Comparator<? super T> comparator; // Order given when the tree was made, null for natural order.
+    private Comparator<Object> order = NATURAL_ORDER; // Order every comparison goes through.
+    private NodeFactory<T> factory; // Makes new nodes, null for plain ones.
+
+    /**
+     * Natural order of Comparable values.
+     */
+    @SuppressWarnings("unchecked")
+    static final Comparator<Object> NATURAL_ORDER = (a, b) -> ((Comparable<Object>) a).compareTo(b);
+
+    /**
+     * Natural order of Integer values, comparing the ints directly.
+     */
+    private static final Comparator<Object> INTEGER_ORDER = (a, b) -> Integer.compare((Integer) a, (Integer) b);
+
+    /**
+     * Natural order of Long values, comparing the longs directly.
+     */
+    private static final Comparator<Object> LONG_ORDER = (a, b) -> Long.compare((Long) a, (Long) b);
+
+    /**
+     * Natural order of String values.
+     */
+    private static final Comparator<Object> STRING_ORDER = (a, b) -> ((String) a).compareTo((String) b);
+
+    /**
+     * Node class contains a value; and three references to nodes as left, right, and parent.
+     */
+    protected class Node{
+
+        private T value; // Value of node.
+        private Node left; // Reference to left node.
+        private Node right; // Reference to right node.
+        private Node parent; // Reference to parent node.
+        private int count;
+        private int height;
+        private int size; // Number of values in this subtree, counting duplicates.
+
+        /**
+         * Constructor to build fully instantiated node.
+         * @param value Value of node.
+         * @param parent Reference to parent node.
+         * @param left Reference to left node.
+         * @param right Reference to right node.
+         */
+        Node(T value, Node parent, Node left, Node right){
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.parent = parent;
+            this.count = 1;
+            this.height = 1;
+            this.size = 1;
+        }
+
+        /**
+         * Clears a node so it can be used again for a new value, as if it had just been constructed.
+         * @param value Value of node.
+         * @param parent Reference to parent node.
+         */
+        void reset(T value, Node parent){
+            this.value = value;
+            this.left = null;
+            this.right = null;
+            this.parent = parent;
+            this.count = 1;
+            this.height = 1;
+            this.size = 1;
+        }
+
+        /**
+         * Constructor to build node with no children. If root node, 'parent' is null.
+         * @param value Value of node.
+         * @param parent Reference to parent node.
+         */
+        Node(T value, Node parent){
+            this(value, parent, null, null);
+        }
+
+        /**
+         * If there are multiple nodes of the same value, program may increase count of a node by calling this method.
+         * @param count Number of times the value was added again.
+         */
+        void increment(int count){
+            this.count += count;
+            this.size += count;
+        }
+
+        /**
+         * If there are multiple nodes of the same value, program may decrement count of a node by calling this method.
+         */
+        void decrement(){
+            this.count--;
+            this.size--;
+        }
+
+        /**
+         * Access the count of this node.
+         * @return Count of the node.
+         */
+        int getCount(){
+            return this.count;
+        }
+
+        /**
+         * Access the value of this node.
+         * @return Value of the node.
+         */
+        T getValue(){
+            return this.value;
+        }
+
+        /**
+         * Access the left child of this node.
+         * @return Left child, null if there is none.
+         */
+        Node getLeft(){
+            return this.left;
+        }
+
+        /**
+         * Access the right child of this node.
+         * @return Right child, null if there is none.
+         */
+        Node getRight(){
+            return this.right;
+        }
+
+        /**
+         * Access the number of values in this subtree, counting duplicates.
+         * @return Size of the subtree.
+         */
+        int getSize(){
+            return this.size;
+        }
+
+        /**
+         * Access the height of this subtree, a leaf being one.
+         * @return Height of the subtree.
+         */
+        int getHeight(){
+            return this.height;
+        }
+
+        /**
+         * Appends a node to the current node as a child, rotating on the way back up to keep the subtree AVL balanced.
+         * Only the heights of the nodes along the insert path are updated.
+         * @param node Node to be appended.
+         * @return Root of this subtree after any rotations; callers must store it in place of this node.
+         */
+        Node appendChild(Node node){
+
+            // Get comparison value of the nodes.
+            int compareValue = order.compare(node.value, this.value);
+            comparisons++;
+
+            // If they are equal, increase count. The shape of the tree does not change.
+            if (compareValue == 0) {
+                increment(node.count);
+                return this;
+            }
+
+            // If the node is less, add it to the left.
+            if (compareValue < 0){
+                // If left child is null, put the new node there.
+                if (this.left == null) this.left = node;
+                // Otherwise, send it down the chain.
+                else this.left = this.left.appendChild(node);
+                this.left.parent = this;
+            }
+
+            // If the node is more, add it to the right.
+            else {
+                // If the right child is null, put the new node there.
+                if (this.right == null) this.right = node;
+                // Otherwise, send it down the chain.
+                else this.right = this.right.appendChild(node);
+                this.right.parent = this;
+            }
+
+            // Reset the height of this node and rotate if either side has grown too tall.
+            return this.rebalance();
+        }
+
+        /**
+         * Resets the height and size of this node from those of its children, without recursing.
+         */
+        void update(){
+            this.height = Math.max(heightOf(this.left), heightOf(this.right)) + 1;
+            this.size = sizeOf(this.left) + this.count + sizeOf(this.right);
+        }
+
+        /**
+         * Restores the AVL condition at this node, assuming both children already satisfy it.
+         * @return Root of this subtree after any rotations.
+         */
+        Node rebalance(){
+            this.update();
+            int balanceFactor = heightOf(this.left) - heightOf(this.right);
+
+            // Left side is too tall; rotate the left child first if it leans right.
+            if (balanceFactor > 1){
+                if (heightOf(this.left.left) < heightOf(this.left.right)) this.left = this.left.rotateLeft();
+                return this.rotateRight();
+            }
+
+            // Right side is too tall; rotate the right child first if it leans left.
+            if (balanceFactor < -1){
+                if (heightOf(this.right.right) < heightOf(this.right.left)) this.right = this.right.rotateRight();
+                return this.rotateLeft();
+            }
+            return this;
+        }
+
+        /**
+         * Rotates this node down to the right, making its left child the root of the subtree.
+         * @return New root of the subtree.
+         */
+        Node rotateRight(){
+            Node pivot = this.left;
+
+            // Move the pivot's right subtree over to be this node's left subtree.
+            this.left = pivot.right;
+            if (this.left != null) this.left.parent = this;
+
+            // Put this node under the pivot.
+            pivot.right = this;
+            pivot.parent = this.parent;
+            this.parent = pivot;
+
+            // Heights and sizes must be reset bottom-up.
+            this.update();
+            pivot.update();
+            return pivot;
+        }
+
+        /**
+         * Rotates this node down to the left, making its right child the root of the subtree.
+         * @return New root of the subtree.
+         */
+        Node rotateLeft(){
+            Node pivot = this.right;
+
+            // Move the pivot's left subtree over to be this node's right subtree.
+            this.right = pivot.left;
+            if (this.right != null) this.right.parent = this;
+
+            // Put this node under the pivot.
+            pivot.left = this;
+            pivot.parent = this.parent;
+            this.parent = pivot;
+
+            // Heights and sizes must be reset bottom-up.
+            this.update();
+            pivot.update();
+            return pivot;
+        }
+
+        /**
+         * Unlinks the node of a value from the subtree under this node, rotating on the way back up to keep it balanced.
+         * The value must be in the subtree. The unlinked node is handed back to the node pool.
+         * @param value Value of the node to be unlinked.
+         * @return Root of this subtree after the removal, null if it is now empty; callers must store it in place of this node.
+         */
+        Node removeChild(T value){
+
+            // Get comparison value of the nodes.
+            int compareValue = order.compare(value, this.value);
+            comparisons++;
+
+            // If the value is less, remove it from the left.
+            if (compareValue < 0){
+                this.left = this.left.removeChild(value);
+                if (this.left != null) this.left.parent = this;
+            }
+
+            // If the value is more, remove it from the right.
+            else if (compareValue > 0){
+                this.right = this.right.removeChild(value);
+                if (this.right != null) this.right.parent = this;
+            }
+
+            // Otherwise this node goes. With one child or none, the child takes its place.
+            else if (this.left == null || this.right == null){
+                Node child = this.left != null ? this.left : this.right;
+                recycle(this);
+                return child;
+            }
+
+            // With two children, the next node in order is taken out of the right subtree and takes its place.
+            else {
+                Node successor = this.right.first();
+                successor.right = this.right.removeFirst();
+                successor.left = this.left;
+                successor.left.parent = successor;
+                if (successor.right != null) successor.right.parent = successor;
+                recycle(this);
+                return successor.rebalance();
+            }
+
+            // Reset the height and size of this node and rotate if either side has become too tall.
+            return this.rebalance();
+        }
+
+        /**
+         * Unlinks the leftmost node of the subtree under this node, without recycling it.
+         * @return Root of this subtree after the removal, null if it is now empty.
+         */
+        Node removeFirst(){
+            // This is the leftmost node; its right child takes its place.
+            if (this.left == null) return this.right;
+
+            this.left = this.left.removeFirst();
+            if (this.left != null) this.left.parent = this;
+            return this.rebalance();
+        }
+
+        /**
+         * Makes an Array-list the in-order array-representation of the values of the nodes.
+         * Adds an item for every count of each node.
+         * @return ArrayList of the values of the node children's values, in order.
+         */
+        ArrayList<T> toInorderArray(){
+            // Make one ArrayList and have every node append to it.
+            ArrayList<T> list = new ArrayList<>();
+            this.addInorder(list);
+            return list;
+        }
+
+        /**
+         * Appends the values of this node and its children to a list, in order.
+         * Adds an item for every count of each node.
+         * @param list List to append to.
+         */
+        void addInorder(ArrayList<T> list){
+
+            // Append the values of the left children.
+            if (this.left != null) this.left.addInorder(list);
+
+            // Append the value of this node for the number of times of its count.
+            for (int i=0; i < this.count; i++) list.add(this.value);
+
+            // Append the values of the right children.
+            if (this.right != null) this.right.addInorder(list);
+        }
+
+        /**
+         * Finds the leftmost node of the subtree under this node.
+         * @return Node with the smallest value in this subtree.
+         */
+        Node first(){
+            Node node = this;
+            while (node.left != null) node = node.left;
+            return node;
+        }
+
+        /**
+         * Finds the next node in order, using the parent references instead of a stack.
+         * @return Node with the next larger value, null if this is the last node.
+         */
+        Node successor(){
+            // If there is a right subtree, it is the leftmost node in there.
+            if (this.right != null) return this.right.first();
+
+            // Otherwise climb until coming up from a left child.
+            Node node = this;
+            while (node.parent != null && node.parent.right == node) node = node.parent;
+            return node.parent;
+        }
+
+        /**
+         * Makes an ArrayList of the values in the tree in Inorder notation, including nulls.
+         * @param recursionLevel When initially called this should be 0.
+         * @param rootHeight Height of the initial node this method is being called on.
+         * @return ArrayList of the values in the tree.
+         */
+        ArrayList<T> toInorderArrayWithNulls(int recursionLevel, int rootHeight){
+            // Make an ArrayList for the current recursion.
+            ArrayList<T> list = new ArrayList<>();
+
+            // Append the ArrayList for the right children.
+            if (this.left != null) list.addAll(this.left.toInorderArrayWithNulls(recursionLevel + 1, rootHeight));
+            else for (int i=0; i < (Math.pow(2, rootHeight-recursionLevel)-1);i++) list.add(null);
+
+            // Append the value of this node for the number of times of its count.
+            for (int i=0; i < this.count; i++) list.add(this.value);
+
+            // Append the ArrayList for the left children.
+            if (this.right != null) list.addAll(this.right.toInorderArrayWithNulls(recursionLevel + 1, rootHeight));
+            else for (int i=0; i < (Math.pow(2, rootHeight-recursionLevel)-1);i++) list.add(null);
+
+            // Send the current ArrayList back up.
+            return list;
+        }
+
+        /**
+         * Makes a two-dimensional array of the values in the tree, including nulls.
+         * @param recursionLevel When initially called this should be 0.
+         * @param list When initially called this should be null.
+         * @param rootHeight Height of the initial node this method is being called on.
+         * @return ArrayList of ArrayLists of the values in each level of the tree.
+         */
+        ArrayList<ArrayList<T>> toMatrix(int recursionLevel, ArrayList<ArrayList<T>> list, int rootHeight){
+
+            // If this is the first level, initialize the list.
+            if (list == null) {
+                list = new ArrayList<>();
+                // Add a list for each level of the tree.
+                for (int i=0; i<rootHeight; i++) list.add(new ArrayList<>());
+            }
+
+            // Add this node's value to this level's list.
+            list.get(recursionLevel).add(this.value);
+
+            // If the left node is not null, recurse this method there.
+            if (this.left != null) this.left.toMatrix(recursionLevel + 1, list, rootHeight);
+            // Otherwise append null nodes to each list accordingly.
+            else if (recursionLevel + 1 != rootHeight) for (int i=recursionLevel+1; i<rootHeight; i++) for (int j=0; j<Math.pow(2, (i-(recursionLevel+1))); j++) list.get(i).add(null);
+
+            // If the left node is not null, recurse this method there.
+            if (this.right != null) this.right.toMatrix(recursionLevel + 1, list, rootHeight);
+            // Otherwise append null nodes to each list accordingly.
+            else if (recursionLevel + 1 != rootHeight) for (int i=recursionLevel+1; i<rootHeight; i++) for (int j=0; j<Math.pow(2, (i-(recursionLevel+1))); j++) list.get(i).add(null);
+
+            return list;
+        }
+
+        /**
+         * Makes a two-dimensional array of the values in the tree as strings, including nulls.
+         * Entries in the matrix include a count, which follows the value, for example '3.14 (x8)'
+         * @param recursionLevel When initially called this should be 0.
+         * @param list When initially called this should be null.
+         * @param rootHeight Height of the initial node this method is being called on.
+         * @return ArrayList of ArrayLists of the values in each level of the tree.
+         */
+        ArrayList<ArrayList<String>> toStringMatrix(int recursionLevel, ArrayList<ArrayList<String>> list, int rootHeight){
+
+            // If this is the first level, initialize the list.
+            if (list == null) {
+                list = new ArrayList<>();
+                // Add a list for each level of the tree.
+                for (int i=0; i<rootHeight; i++) list.add(new ArrayList<>());
+            }
+
+            // Add this node's value to this level's list.
+            list.get(recursionLevel).add(this.value.toString() + " (x" + this.count + ")");
+
+            // If the left node is not null, recurse this method there.
+            if (this.left != null) this.left.toStringMatrix(recursionLevel + 1, list, rootHeight);
+            // Otherwise append null nodes to each list accordingly.
+            else if (recursionLevel + 1 != rootHeight) for (int i=recursionLevel+1; i<rootHeight; i++) for (int j=0; j<Math.pow(2, (i-(recursionLevel+1))); j++) list.get(i).add("∅");
+
+            // If the left node is not null, recurse this method there.
+            if (this.right != null) this.right.toStringMatrix(recursionLevel + 1, list, rootHeight);
+            // Otherwise append null nodes to each list accordingly.
+            else if (recursionLevel + 1 != rootHeight) for (int i=recursionLevel+1; i<rootHeight; i++) for (int j=0; j<Math.pow(2, (i-(recursionLevel+1))); j++) list.get(i).add("∅");
+
+            return list;
+        }
+
+        /**
+         * Sets the height variable of a node and its children.
+         * @return Height of the node.
+         */
+        int heights(){
+
+            // Get (and set) heights of children
+            int leftHeight = this.left == null ? 0 : this.left.heights();
+            int rightHeight = this.right == null ? 0 : this.right.heights();
+
+            // Find the higher of the two and set and return it, plus one.
+            this.height = Math.max(leftHeight, rightHeight) + 1;
+            return this.height;
+        }
+    }
+
+    /**
+     * Run-length encoded in-order contents of a tree: each distinct value once, with its count in a parallel array.
+     * Values are held as Objects so that one buffer can be shared by any value type.
+     */
+    static final class Runs {
+
+        Object[] values; // Distinct values, in order.
+        int[] counts; // Count of each distinct value.
+        Object[] nodes; // Node holding each value when collected from a tree for a rebuild, otherwise null.
+        int size; // Number of distinct values in use.
+        final Comparator<Object> order; // Order of the values.
+
+        /**
+         * Constructor to make an empty run list with room for a number of distinct values.
+         * @param capacity Initial number of distinct values the buffer can hold.
+         * @param keepNodes If the nodes the values came from should be kept so a rebuild can reuse them.
+         * @param order Order of the values.
+         */
+        Runs(int capacity, boolean keepNodes, Comparator<Object> order){
+            this.values = new Object[Math.max(capacity, 1)];
+            this.counts = new int[Math.max(capacity, 1)];
+            if (keepNodes) this.nodes = new Object[this.values.length];
+            this.order = order;
+        }
+
+        /**
+         * Constructor to make an empty run list of values in their natural order.
+         * @param capacity Initial number of distinct values the buffer can hold.
+         * @param keepNodes If the nodes the values came from should be kept so a rebuild can reuse them.
+         */
+        Runs(int capacity, boolean keepNodes){
+            this(capacity, keepNodes, NATURAL_ORDER);
+        }
+
+        /**
+         * Constructor to make an empty run list of values in their natural order.
+         * @param capacity Initial number of distinct values the buffer can hold.
+         */
+        Runs(int capacity){
+            this(capacity, false);
+        }
+
+        /**
+         * Appends a value to the end of the list. The value must not be less than the last value.
+         * If it is equal to the last value, the last count is increased instead.
+         * @param value Value to be appended.
+         * @param count Number of times the value occurs.
+         */
+        void add(Object value, int count){
+            // Equal values are folded into the last run.
+            if (size > 0 && order.compare(values[size-1], value) == 0){
+                counts[size-1] += count;
+                return;
+            }
+
+            // Grow the buffers if they are full.
+            if (size == values.length){
+                values = Arrays.copyOf(values, size*2);
+                counts = Arrays.copyOf(counts, size*2);
+                if (nodes != null) nodes = Arrays.copyOf(nodes, size*2);
+            }
+            values[size] = value;
+            counts[size] = count;
+            size++;
+        }
+
+        /**
+         * Appends every run of another list, whose first value must be greater than this list's last value.
+         * @param other Run list to be appended.
+         */
+        void addAll(Runs other){
+            // Grow the buffers to fit both lists.
+            if (size + other.size > values.length){
+                int capacity = Math.max(size + other.size, size*2);
+                values = Arrays.copyOf(values, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                if (nodes != null) nodes = Arrays.copyOf(nodes, capacity);
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            System.arraycopy(other.counts, 0, counts, size, other.size);
+            if (nodes != null) System.arraycopy(other.nodes, 0, nodes, size, other.size);
+            size += other.size;
+        }
+
+        /**
+         * Merges two run lists into a new one, adding the counts of values found in both.
+         * If the first list kept its nodes, so does the merged one, with no node for values only in the second.
+         * @param a First run list.
+         * @param b Second run list, in the same order.
+         * @return Merged run list.
+         */
+        static Runs merge(Runs a, Runs b){
+            Runs merged = new Runs(a.size + b.size, a.nodes != null, a.order);
+            int i = 0, j = 0;
+
+            // Take the smaller head each time; the add method folds equal heads together.
+            // On equal heads the first list's run goes first, so its node is the one kept.
+            while (i < a.size && j < b.size){
+                if (a.order.compare(a.values[i], b.values[j]) <= 0) {
+                    merged.add(a.values[i], a.counts[i]);
+                    if (merged.nodes != null) merged.nodes[merged.size-1] = a.nodes[i];
+                    i++;
+                }
+                else {
+                    merged.add(b.values[j], b.counts[j]);
+                    j++;
+                }
+            }
+
+            // Copy whichever list has values left.
+            for (; i < a.size; i++){
+                merged.add(a.values[i], a.counts[i]);
+                if (merged.nodes != null) merged.nodes[merged.size-1] = a.nodes[i];
+            }
+            for (; j < b.size; j++) merged.add(b.values[j], b.counts[j]);
+            return merged;
+        }
+    }
+
+    /**
+     * Summary of the shape and contents of a tree.
+     */
+    static final class Statistics {
+
+        final int distinct; // Number of nodes, ie distinct values.
+        final long total; // Number of values, counting duplicates.
+        final int height; // Height of the tree.
+        final int maxCount; // Largest count of any node.
+
+        /**
+         * Constructor to build a summary from its parts.
+         * @param distinct Number of nodes.
+         * @param total Number of values, counting duplicates.
+         * @param height Height of the tree.
+         * @param maxCount Largest count of any node.
+         */
+        Statistics(int distinct, long total, int height, int maxCount){
+            this.distinct = distinct;
+            this.total = total;
+            this.height = height;
+            this.maxCount = maxCount;
+        }
+
+        /**
+         * Summarises a node from the summaries of its children.
+         * @param left Summary of the left subtree, null if there is none.
+         * @param count Count of the node.
+         * @param right Summary of the right subtree, null if there is none.
+         * @return Summary of the node's subtree.
+         */
+        static Statistics join(Statistics left, int count, Statistics right){
+            if (left == null) left = new Statistics(0, 0, 0, 0);
+            if (right == null) right = new Statistics(0, 0, 0, 0);
+            return new Statistics(left.distinct + right.distinct + 1, left.total + right.total + count,
+                    Math.max(left.height, right.height) + 1, Math.max(count, Math.max(left.maxCount, right.maxCount)));
+        }
+
+        public String toString(){
+            return "distinct=" + distinct + ", total=" + total + ", height=" + height + ", maxCount=" + maxCount;
+        }
+    }
+
+    /**
+     * Get the stored height of a node, treating a missing node as height zero.
+     * @param node Node to get the height of, may be null.
+     * @return Height of the node.
+     */
+    private int heightOf(Node node){
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Get the number of values under a node, treating a missing node as empty.
+     * @param node Node to get the size of, may be null.
+     * @return Size of the node.
+     */
+    private int sizeOf(Node node){
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Constructor to make a new BalancedBST with a root node of a passed value.
+     * @param valueOfRoot Value of the root of the BST.
+     */
+    BalancedBST(T valueOfRoot){
+        this.comparator = null;
+        this.root = new Node(valueOfRoot, null);
+        this.nodeCount++;
+        this.distinct++;
+        this.root.heights();
+        this.specialize(valueOfRoot);
+    }
+
+    /**
+     * Constructor to make an empty BalancedBST.
+     */
+    BalancedBST(){
+        this.comparator = null;
+        this.root = null;
+    }
+
+    /**
+     * Constructor to make an empty BalancedBST that orders its values with a comparator instead of their natural order.
+     * @param comparator Order of the values, null for natural order.
+     */
+    @SuppressWarnings("unchecked")
+    BalancedBST(Comparator<? super T> comparator){
+        this.comparator = comparator;
+        if (comparator != null) this.order = (Comparator<Object>) comparator;
+    }
+
+    /**
+     * Get the comparator the tree orders its values with.
+     * @return Comparator given when the tree was made, null for natural order.
+     */
+    Comparator<? super T> comparator(){
+        return this.comparator;
+    }
+
+    /**
+     * Checks if an order is one of the natural orders.
+     * @param order Order to check.
+     * @return True if the order is NATURAL_ORDER or one of its versions for a single type.
+     */
+    static boolean isNatural(Comparator<Object> order){
+        return order == NATURAL_ORDER || order == INTEGER_ORDER || order == LONG_ORDER || order == STRING_ORDER;
+    }
+
+    /**
+     * Picks the natural order to compare with from the type of a value, when the tree has no comparator.
+     * Integer, Long and String values get an order that calls their own comparison directly, so the comparisons
+     * in a tree of one of them see one type; anything else goes through Comparable.
+     * @param sample Any value of the tree.
+     */
+    private void specialize(Object sample){
+        if (this.comparator != null) return;
+        if (sample instanceof Integer) this.order = INTEGER_ORDER;
+        else if (sample instanceof Long) this.order = LONG_ORDER;
+        else if (sample instanceof String) this.order = STRING_ORDER;
+        else this.order = NATURAL_ORDER;
+    }
+
+    /**
+     * Add a node to the BST.
+     * @param value Value to be placed in node.
+     */
+    void addNode(T value){
+        this.addNode(value, 1);
+    }
+
+    /**
+     * Add a value to the BST a number of times at once, with a single descent.
+     * @param value Value to be placed in node.
+     * @param count Number of times to add it, at least one.
+     */
+    void addNode(T value, int count){
+        long start = this.listener == null ? 0 : System.nanoTime();
+        this.comparisons = 0;
+        boolean duplicate = false;
+
+        if (nodeCount==0){
+            this.specialize(value);
+            this.root = this.obtain(value, null);
+            this.root.increment(count - 1);
+        }
+        else if (this.policy == RebalancePolicy.AVL){
+            // The root may change after rotations.
+            Node node = this.obtain(value, null);
+            node.increment(count - 1);
+            this.root = root.appendChild(node);
+            this.root.parent = null;
+
+            // If the node was not linked in, the value was already there; keep the node for next time.
+            duplicate = node.parent == null && node != this.root;
+            if (duplicate) this.recycle(node);
+        }
+        else {
+            Node node = this.obtain(value, null);
+            node.increment(count - 1);
+            int depth = this.insertUnbalanced(node);
+            duplicate = depth == 0;
+            if (duplicate) this.recycle(node);
+
+            // Only a new node can unbalance the tree.
+            else if (this.policy == RebalancePolicy.EAGER) this.balance();
+            else if (this.policy == RebalancePolicy.DEFERRED) this.dirty = true;
+            else if (depth > this.scapegoatDepth(this.distinct + 1)) this.rebuildScapegoat(node);
+        }
+        if (!duplicate) this.distinct++;
+        this.maxDistinct = Math.max(this.maxDistinct, this.distinct);
+        this.nodeCount += count;
+        this.modCount++;
+        if (this.listener != null) this.listener.inserted(System.nanoTime() - start, this.comparisons, duplicate);
+    }
+
+    /**
+     * Links a node into the tree by plain search, without rotations, and updates the heights and sizes above it.
+     * If the value is already there, its count is raised instead and the node is not linked.
+     * @param node Node to be linked, with no children.
+     * @return Depth of the node, the root being one, or zero if the value was already in the tree.
+     */
+    private int insertUnbalanced(Node node){
+        Node current = this.root;
+        int depth = 1;
+        while (true){
+            int compareValue = this.order.compare(node.value, current.value);
+            this.comparisons++;
+
+            // If they are equal, increase count; only the sizes above change.
+            if (compareValue == 0){
+                current.increment(node.count);
+                for (Node ancestor = current.parent; ancestor != null; ancestor = ancestor.parent) ancestor.size += node.count;
+                return 0;
+            }
+
+            // Go down the side the value belongs on, linking the node at the first gap.
+            depth++;
+            Node child = compareValue < 0 ? current.left : current.right;
+            if (child == null){
+                if (compareValue < 0) current.left = node;
+                else current.right = node;
+                node.parent = current;
+                break;
+            }
+            current = child;
+        }
+        for (Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) ancestor.update();
+        return depth;
+    }
+
+    /**
+     * Get the deepest a node may be in a scapegoat tree of a number of nodes, log(n) / log(1 / alpha).
+     * @param nodes Number of nodes in the tree.
+     * @return Greatest allowed depth, the root being one.
+     */
+    private int scapegoatDepth(int nodes){
+        return (int) Math.floor(Math.log(nodes) / Math.log(1 / this.alpha)) + 1;
+    }
+
+    /**
+     * Finds the lowest ancestor of a node that is too deep which breaks the alpha balance condition,
+     * and rebuilds its subtree to perfect balance.
+     * @param node Node that was just linked too deep.
+     */
+    private void rebuildScapegoat(Node node){
+        // Walk up, counting the nodes under each ancestor, until a child holds too much of its parent.
+        int below = 1;
+        for (Node child = node, ancestor = node.parent; ancestor != null; child = ancestor, ancestor = ancestor.parent){
+            int total = below + 1 + this.countNodes(ancestor.left == child ? ancestor.right : ancestor.left);
+            if (below > this.alpha * total){
+                this.rebuild(ancestor);
+                return;
+            }
+            below = total;
+        }
+    }
+
+    /**
+     * Counts the nodes, ie distinct values, under a node.
+     * @param node Node to count from, may be null.
+     * @return Number of nodes in the subtree.
+     */
+    private int countNodes(Node node){
+        return node == null ? 0 : this.countNodes(node.left) + 1 + this.countNodes(node.right);
+    }
+
+    /**
+     * Rebuilds the subtree under a node to perfect balance, reusing its nodes, and resets the heights above it.
+     * @param node Root of the subtree to rebuild.
+     */
+    private void rebuild(Node node){
+        long start = this.listener == null ? 0 : System.nanoTime();
+        Node parent = node.parent;
+        boolean left = parent != null && parent.left == node;
+
+        // Collect the nodes of the subtree in order and relink them from the middle out.
+        Runs runs = new Runs(16, true, this.order);
+        this.collectRuns(node, runs);
+        Node subtree = this.build(runs, 0, runs.size, parent);
+        if (parent == null) this.root = subtree;
+        else if (left) parent.left = subtree;
+        else parent.right = subtree;
+
+        // The sizes above do not change, but the heights may.
+        for (Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) ancestor.update();
+        if (this.listener != null) this.listener.rebalanced(System.nanoTime() - start, runs.size);
+    }
+
+    /**
+     * Get the policy the tree uses to stay balanced as values are added.
+     * @return Rebalancing policy.
+     */
+    RebalancePolicy getRebalancePolicy(){
+        return this.policy;
+    }
+
+    /**
+     * Set the policy the tree uses to stay balanced as values are added.
+     * The tree is rebuilt first if the new policy can not take over its current shape.
+     * @param policy Rebalancing policy.
+     */
+    void setRebalancePolicy(RebalancePolicy policy){
+        // AVL rotations assume the AVL condition already holds, which the other policies do not keep.
+        if (policy == RebalancePolicy.AVL && this.policy != RebalancePolicy.AVL) this.balance();
+        else this.settle();
+        this.policy = policy;
+    }
+
+    /**
+     * Get the balance tolerance of the scapegoat policy.
+     * @return Largest share of a subtree that one child may hold.
+     */
+    double getAlpha(){
+        return this.alpha;
+    }
+
+    /**
+     * Set the balance tolerance of the scapegoat policy.
+     * Values near 0.5 keep the tree close to perfect balance with more rebuilds; values near 1 rebuild less often.
+     * @param alpha Largest share of a subtree that one child may hold, above 0.5 and below 1.
+     * @throws IllegalArgumentException If alpha is out of range.
+     */
+    void setAlpha(double alpha){
+        if (!(alpha > 0.5 && alpha < 1)) throw new IllegalArgumentException("Alpha must be above 0.5 and below 1: " + alpha);
+        this.alpha = alpha;
+    }
+
+    /**
+     * Rebuilds the tree if deferred inserts have left it unbalanced, so reads get logarithmic paths.
+     * This changes the tree, so it must only be called on the thread that changes it; the reads of this class
+     * that walk the tree call it themselves.
+     */
+    void settle(){
+        if (this.dirty) this.balance();
+    }
+
+    /**
+     * Add a batch of values to the BST.
+     * The batch is sorted (unless it already is), merged with the values in the tree, and the tree rebuilt
+     * perfectly balanced in one linear pass.
+     * @param values Values to be placed in the tree.
+     */
+    void addAll(Collection<? extends T> values){
+        if (values.isEmpty()) return;
+        long start = this.listener == null ? 0 : System.nanoTime();
+
+        // Sort a copy of the batch if it is not already in order.
+        Object[] batch = values.toArray();
+        if (this.root == null) this.specialize(batch[0]);
+        if (!isSorted(batch, this.order)) Arrays.sort(batch, this.order);
+
+        // Run-length encode the batch and merge it in.
+        Runs runs = new Runs(batch.length, false, this.order);
+        for (Object value : batch) runs.add(value, 1);
+        this.mergeRuns(runs, batch.length, start);
+    }
+
+    /**
+     * Add a run list of values to the BST, merging it with the values in the tree and rebuilding the tree
+     * perfectly balanced in one linear pass.
+     * @param runs Run list of the values, in the order of the tree.
+     */
+    void addRuns(Runs runs){
+        if (runs.size == 0) return;
+        long start = this.listener == null ? 0 : System.nanoTime();
+        if (this.root == null) this.specialize(runs.values[0]);
+        long total = 0;
+        for (int i=0; i<runs.size; i++) total += runs.counts[i];
+        this.mergeRuns(runs, total, start);
+    }
+
+    /**
+     * Merges a run list with the values in the tree and builds the new tree.
+     * @param runs Run list of the values to be added, in the order of the tree.
+     * @param total Number of values in the run list, counting duplicates.
+     * @param start Time the operation started, for the listener.
+     */
+    private void mergeRuns(Runs runs, long total, long start){
+        // The nodes already in the tree are relinked, so only the new values need new ones.
+        if (this.root != null) runs = Runs.merge(this.toRuns(true), runs);
+
+        // Build the new tree.
+        this.root = this.build(runs, 0, runs.size, null);
+        this.nodeCount += total;
+        this.distinct = runs.size;
+        this.modCount++;
+        this.dirty = false;
+        this.maxDistinct = runs.size;
+        if (this.listener != null) this.listener.rebalanced(System.nanoTime() - start, runs.size);
+    }
+
+    /**
+     * Remove one occurrence of a value from the BST.
+     * The count of its node is lowered, and the node is unlinked once the count reaches zero.
+     * @param value Value to be removed.
+     * @return True if the value was in the tree.
+     */
+    boolean remove(T value){
+        long start = this.listener == null ? 0 : System.nanoTime();
+        this.comparisons = 0;
+        Node node = this.find(value);
+        if (node == null) return false;
+
+        // With duplicates left, only the counts on the path to the root change.
+        boolean unlinked = node.count == 1;
+        if (!unlinked){
+            node.decrement();
+            for (Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) ancestor.size--;
+        }
+        else this.unlink(value);
+        this.nodeCount--;
+        this.modCount++;
+        if (this.listener != null) this.listener.removed(System.nanoTime() - start, this.comparisons, unlinked);
+        return true;
+    }
+
+    /**
+     * Remove every occurrence of a value from the BST, unlinking its node.
+     * @param value Value to be removed.
+     * @return Number of occurrences that were removed.
+     */
+    int removeAll(T value){
+        long start = this.listener == null ? 0 : System.nanoTime();
+        this.comparisons = 0;
+        Node node = this.find(value);
+        if (node == null) return 0;
+        int removed = node.count;
+        this.unlink(value);
+        this.nodeCount -= removed;
+        this.modCount++;
+        if (this.listener != null) this.listener.removed(System.nanoTime() - start, this.comparisons, true);
+        return removed;
+    }
+
+    /**
+     * Unlinks the node of a value, which must be in the tree, rebalancing along its path.
+     * @param value Value of the node to be unlinked.
+     */
+    private void unlink(T value){
+        // The root may change after rotations, or go away.
+        this.root = this.root.removeChild(value);
+        if (this.root != null) this.root.parent = null;
+        this.distinct--;
+
+        // A scapegoat tree that has lost too many nodes is rebuilt, as its depth bound has shrunk.
+        if (this.policy == RebalancePolicy.SCAPEGOAT && this.distinct < this.alpha * this.maxDistinct) this.balance();
+    }
+
+    /**
+     * Get a node for a value, taking one from the pool of removed nodes if there is one.
+     * @param value Value of node.
+     * @param parent Reference to parent node.
+     * @return Node with no children and a count of one.
+     */
+    private Node obtain(T value, Node parent){
+        Node node = this.pool.poll();
+        if (node == null){
+            if (this.listener != null) this.listener.allocated();
+            return this.factory == null ? new Node(value, parent) : this.factory.make(this, value, parent);
+        }
+        node.reset(value, parent);
+        return node;
+    }
+
+    /**
+     * Hands a node that is no longer in the tree back to the pool, if the pool is not full.
+     * @param node Node to be used again.
+     */
+    private void recycle(Node node){
+        node.reset(null, null);
+        if (this.pool.size() < POOL_CAPACITY) this.pool.push(node);
+    }
+
+    /**
+     * Make a new BalancedBST from an array of values that is already sorted.
+     * @param values Values in ascending order; duplicates must be next to each other.
+     * @param <T> Type of the values.
+     * @return Perfectly balanced tree of the values.
+     * @throws IllegalArgumentException If the values are not sorted.
+     */
+    static <T> BalancedBST<T> fromSorted(T[] values){
+        if (!isSorted(values, NATURAL_ORDER)) throw new IllegalArgumentException("Values are not sorted.");
+
+        // Run-length encode the values and build the tree from them.
+        Runs runs = new Runs(values.length);
+        for (T value : values) runs.add(value, 1);
+        return fromRuns(runs);
+    }
+
+    /**
+     * Make a new BalancedBST from a run list, which must be in order with no value repeated.
+     * The tree keeps the order of the run list, so runs taken from a tree with a comparator make a tree with it too.
+     * @param runs Run list of the values and their counts.
+     * @param <T> Type of the values.
+     * @return Perfectly balanced tree of the values.
+     */
+    static <T> BalancedBST<T> fromRuns(Runs runs){
+        BalancedBST<T> tree = isNatural(runs.order) ? new BalancedBST<>() : new BalancedBST<>(runs.order);
+        if (runs.size > 0) tree.specialize(runs.values[0]);
+        tree.root = tree.build(runs, 0, runs.size, null);
+        tree.distinct = runs.size;
+        for (int i=0; i<runs.size; i++) tree.nodeCount += runs.counts[i];
+        return tree;
+    }
+
+    /**
+     * Finds the node holding a value.
+     * @param value Value to look for.
+     * @return Node of the value, null if it is not in the tree.
+     */
+    private Node find(T value){
+        this.settle();
+        Node node = this.root;
+        while (node != null){
+            int compareValue = this.order.compare(value, node.value);
+            this.comparisons++;
+            if (compareValue == 0) return node;
+            node = compareValue < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Get the node holding a value, for classes that keep links of their own between the nodes of the tree.
+     * @param value Value to look for.
+     * @return Node of the value, null if it is not in the tree.
+     */
+    Node getNode(T value){
+        return this.find(value);
+    }
+
+    /**
+     * Makes the nodes of a tree, for classes that keep fields of their own on the nodes, such as links between them.
+     * The fields are then only paid for by the trees that need them.
+     * @param <T> Type of the values.
+     */
+    interface NodeFactory<T> {
+
+        /**
+         * Makes a node with no children and a count of one.
+         * @param tree Tree the node is for.
+         * @param value Value of node.
+         * @param parent Reference to parent node.
+         * @return New node.
+         */
+        BalancedBST<T>.Node make(BalancedBST<T> tree, T value, BalancedBST<T>.Node parent);
+    }
+
+    /**
+     * Set what makes the nodes of the tree from now on. The nodes already in the tree, and in the pool, are
+     * replaced by ones from the factory, rebuilding the tree perfectly balanced in one linear pass.
+     * @param factory Factory of the nodes, null for plain nodes.
+     */
+    void setNodeFactory(NodeFactory<T> factory){
+        this.factory = factory;
+        this.pool.clear();
+        if (this.root == null) return;
+        Runs runs = this.toRuns();
+        this.root = this.build(runs, 0, runs.size, null);
+        this.modCount++;
+        this.dirty = false;
+        this.maxDistinct = runs.size;
+    }
+
+    /**
+     * Get the number of times a value has been added to the tree.
+     * @param value Value to look for.
+     * @return Count of the value, 0 if it is not in the tree.
+     */
+    int getCount(T value){
+        Node node = this.find(value);
+        return node == null ? 0 : node.count;
+    }
+
+    /**
+     * Checks if a value is in the tree.
+     * @param value Value to look for.
+     * @return True if the value has been added at least once.
+     */
+    boolean contains(T value){
+        return this.find(value) != null;
+    }
+
+    /**
+     * Get the number of values in the tree, counting duplicates.
+     * @return Number of values added to the tree.
+     */
+    int size(){
+        return this.nodeCount;
+    }
+
+    /**
+     * Get the node of the smallest value, so the nodes can be walked in order with successor without copying them,
+     * for example to stream the tree out. Deferred inserts are balanced first.
+     * @return Node of the smallest value, null if the tree is empty.
+     */
+    Node firstNode(){
+        this.settle();
+        return this.root == null ? null : this.root.first();
+    }
+
+    /**
+     * Get the root node, so the tree can be walked without copying it, for example to draw it.
+     * This never changes the tree, so a thread that only reads it can call it; deferred inserts are not
+     * balanced first, so the thread that changes the tree should call settle before handing it over.
+     * @return Root node, null if the tree is empty.
+     */
+    Node getRoot(){
+        return this.root;
+    }
+
+    /**
+     * Get the number of distinct values in the tree, ie the number of nodes.
+     * @return Number of distinct values.
+     */
+    int distinct(){
+        return this.distinct;
+    }
+
+    /**
+     * Sets the listener that receives metrics events, such as a TreeMetrics.
+     * With no listener, the only cost left on the hot paths is a null check.
+     * @param listener Listener to be told of every operation, null to turn metrics off.
+     */
+    void setListener(TreeListener listener){
+        this.listener = listener;
+    }
+
+    /**
+     * Get the number of values in the tree that are less than a value.
+     * @param value Value to rank.
+     * @return Number of smaller values, counting duplicates.
+     */
+    int rank(T value){
+        return this.countBelow(value, false);
+    }
+
+    /**
+     * Counts the values in the tree below a value, walking down one path and adding up the sizes left of it.
+     * @param value Value to compare against.
+     * @param inclusive If values equal to the value should be counted too.
+     * @return Number of values below the value, counting duplicates.
+     */
+    private int countBelow(T value, boolean inclusive){
+        this.settle();
+        int below = 0;
+        Node node = this.root;
+        while (node != null){
+            int compareValue = this.order.compare(value, node.value);
+
+            // Everything left of an equal node is below; the node itself only counts if inclusive.
+            if (compareValue == 0) return below + sizeOf(node.left) + (inclusive ? node.count : 0);
+
+            // Going right passes this node and its left subtree.
+            if (compareValue > 0){
+                below += sizeOf(node.left) + node.count;
+                node = node.right;
+            }
+            else node = node.left;
+        }
+        return below;
+    }
+
+    /**
+     * Get the value at a position in the in-order values of the tree, counting duplicates.
+     * @param index Position of the value, from 0.
+     * @return Value at the position.
+     * @throws IndexOutOfBoundsException If the position is not less than the size of the tree.
+     */
+    T select(int index){
+        this.settle();
+        if (index < 0 || index >= this.nodeCount) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.nodeCount);
+        Node node = this.root;
+        while (true){
+            int leftSize = sizeOf(node.left);
+
+            // The position is in the left subtree, this node, or the right subtree.
+            if (index < leftSize) node = node.left;
+            else if (index < leftSize + node.count) return node.value;
+            else {
+                index -= leftSize + node.count;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Counts the values in the tree between two values, inclusive.
+     * @param low Smallest value to count.
+     * @param high Largest value to count.
+     * @return Number of values in the range, counting duplicates.
+     */
+    int countInRange(T low, T high){
+        if (this.order.compare(low, high) > 0) return 0;
+        return this.countBelow(high, true) - this.countBelow(low, false);
+    }
+
+    /**
+     * Get the largest value in the tree less than or equal to a value.
+     * @param value Value to look for.
+     * @return Floor of the value, null if there is none.
+     */
+    T floor(T value){
+        this.settle();
+        Node node = this.root, floor = null;
+        while (node != null){
+            int compareValue = this.order.compare(value, node.value);
+            if (compareValue == 0) return node.value;
+            if (compareValue > 0){
+                floor = node;
+                node = node.right;
+            }
+            else node = node.left;
+        }
+        return floor == null ? null : floor.value;
+    }
+
+    /**
+     * Get the smallest value in the tree greater than or equal to a value.
+     * @param value Value to look for.
+     * @return Ceiling of the value, null if there is none.
+     */
+    T ceiling(T value){
+        Node node = this.ceilingNode(value);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Finds the node of the smallest value greater than or equal to a value, so the nodes from it can be walked
+     * in order with successor. Deferred inserts are balanced first.
+     * @param value Value to look for.
+     * @return Node of the ceiling, null if there is none.
+     */
+    Node ceilingNode(T value){
+        this.settle();
+        Node node = this.root, ceiling = null;
+        while (node != null){
+            int compareValue = this.order.compare(value, node.value);
+            if (compareValue == 0) return node;
+            if (compareValue < 0){
+                ceiling = node;
+                node = node.left;
+            }
+            else node = node.right;
+        }
+        return ceiling;
+    }
+
+    /**
+     * Get the values in the tree between two values, inclusive, in order. Values are found as they are iterated,
+     * so the first one costs O(log n) and each after it O(1) on average.
+     * @param low Smallest value to return.
+     * @param high Largest value to return.
+     * @return Iterable of the values in the range, repeating a value for each count of its node.
+     */
+    Iterable<T> range(final T low, final T high){
+        return new Iterable<T>() {
+            public Iterator<T> iterator(){
+                return new InorderIterator(ceilingNode(low), high);
+            }
+        };
+    }
+
+    /**
+     * Iterates over the values in order, repeating a value for each count of its node.
+     * Nothing is copied; the iterator follows the parent references from node to node.
+     * @return Iterator of the values.
+     */
+    public Iterator<T> iterator(){
+        return new InorderIterator();
+    }
+
+    /**
+     * Makes a splittable spliterator over the values in order, repeating a value for each count of its node.
+     * @return Spliterator of the values.
+     */
+    public Spliterator<T> spliterator(){
+        return new InorderSpliterator(this.root == null ? null : this.root.first(), null, 0, this.nodeCount);
+    }
+
+    /**
+     * Makes a sequential stream of the values in order, without copying the tree.
+     * @return Stream of the values.
+     */
+    Stream<T> stream(){
+        return StreamSupport.stream(this.spliterator(), false);
+    }
+
+    /**
+     * Makes a parallel stream of the values in order, without copying the tree.
+     * @return Stream of the values.
+     */
+    Stream<T> parallelStream(){
+        return StreamSupport.stream(this.spliterator(), true);
+    }
+
+    /**
+     * Iterator over the values in order, walking the nodes through their parent references.
+     */
+    private class InorderIterator implements Iterator<T> {
+
+        private Node next; // Node whose value is returned next, null when done.
+        private int remaining; // Number of times the value of next is still to be returned.
+        private final T last; // Largest value to return, null for no limit.
+        private final int expectedModCount = modCount; // Change count of the tree when the iterator was made.
+
+        /**
+         * Constructor to start at the smallest value.
+         */
+        InorderIterator(){
+            this(root == null ? null : root.first(), null);
+        }
+
+        /**
+         * Constructor to iterate from a node up to a value.
+         * @param first Node to start at, null for an empty iterator.
+         * @param last Largest value to return, null for no limit.
+         */
+        InorderIterator(Node first, T last){
+            this.last = last;
+            this.next = first;
+            this.skipPastLast();
+            this.remaining = this.next == null ? 0 : this.next.count;
+        }
+
+        /**
+         * Ends the iteration if the next node is past the largest value to return.
+         */
+        private void skipPastLast(){
+            if (this.next != null && this.last != null && order.compare(this.next.value, this.last) > 0) this.next = null;
+        }
+
+        public boolean hasNext(){
+            return this.next != null;
+        }
+
+        public T next(){
+            if (this.next == null) throw new NoSuchElementException();
+            if (modCount != this.expectedModCount) throw new ConcurrentModificationException();
+            T value = this.next.value;
+
+            // Move to the next node once every count of this one has been returned.
+            if (--this.remaining == 0){
+                this.next = this.next.successor();
+                this.skipPastLast();
+                this.remaining = this.next == null ? 0 : this.next.count;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Spliterator over the values from one node up to (not including) another, in order.
+     * Splitting hands the first half of the range to a new spliterator, using the node at the top of the
+     * remaining range as the split point, so each half is about half of the tree below it.
+     */
+    private class InorderSpliterator implements Spliterator<T> {
+
+        private Node current; // Node whose value is returned next, null when done.
+        private int remaining; // Number of times the value of current is still to be returned.
+        private final Node fence; // First node after the range, null for the end of the tree.
+        private int side; // 0 if never split, 1 if this is the upper part of a split, -1 if the lower part.
+        private long estimate; // Estimated number of values left, exact while side is 0.
+        private final int expectedModCount = modCount; // Change count of the tree when the spliterator was made.
+
+        /**
+         * Constructor to make a spliterator over a range of nodes.
+         * @param current First node of the range.
+         * @param fence First node after the range, null for the end of the tree.
+         * @param side 0 for the whole tree, -1 for the lower part of a split.
+         * @param estimate Number of values in the range, or an estimate of it.
+         */
+        InorderSpliterator(Node current, Node fence, int side, long estimate){
+            this.current = current;
+            this.remaining = current == null ? 0 : current.count;
+            this.fence = fence;
+            this.side = side;
+            this.estimate = estimate;
+        }
+
+        public Spliterator<T> trySplit(){
+            Node e = this.current, f = this.fence;
+
+            // Pick the split point: the root at first, then the top of whichever part this is.
+            Node split = (e == null || e == f) ? null
+                    : this.side == 0 ? root
+                    : this.side > 0 ? e.right
+                    : f != null ? f.left
+                    : null;
+            if (split == null || split == e || split == f || order.compare(e.value, split.value) >= 0) return null;
+
+            // Hand everything before the split point to a new spliterator, keeping any unfinished count of the current node.
+            InorderSpliterator prefix = new InorderSpliterator(e, split, -1, this.estimate >>>= 1);
+            prefix.remaining = this.remaining;
+            this.side = 1;
+            this.current = split;
+            this.remaining = split.count;
+            return prefix;
+        }
+
+        public boolean tryAdvance(Consumer<? super T> action){
+            if (this.current == null || this.current == this.fence) return false;
+            if (modCount != this.expectedModCount) throw new ConcurrentModificationException();
+            action.accept(this.current.value);
+
+            // Move to the next node once every count of this one has been returned.
+            if (--this.remaining == 0){
+                this.current = this.current.successor();
+                this.remaining = this.current == null ? 0 : this.current.count;
+            }
+            if (this.side == 0) this.estimate--;
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super T> action){
+            for (Node node = this.current; node != null && node != this.fence; node = node.successor()){
+                for (int i = (node == this.current ? this.remaining : node.count); i > 0; i--) action.accept(node.value);
+            }
+            this.current = this.fence;
+            this.remaining = 0;
+            if (modCount != this.expectedModCount) throw new ConcurrentModificationException();
+        }
+
+        public long estimateSize(){
+            return this.estimate;
+        }
+
+        public int characteristics(){
+            return (this.side == 0 ? Spliterator.SIZED : 0) | Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL;
+        }
+
+        public Comparator<? super T> getComparator(){
+            // Null means the values are in their natural order.
+            return comparator;
+        }
+    }
+
+    /**
+     * Creates a string representation of the nodes in the tree.
+     * @return String of nodes in the tree, comma + space delimited.
+     */
+    public String toString(){
+
+        // Instantiate a StringBuilder.
+        StringBuilder stringBuilder = new StringBuilder();
+
+        // Iterate through the tree and append the value to the StringBuilder.
+        for (T t : this){
+            stringBuilder.append(", ");
+            stringBuilder.append(t.toString());
+        }
+
+        // Remove the initial delimiter from the string (if it contains them).
+        if (stringBuilder.length() > 1) {
+            stringBuilder.deleteCharAt(0);
+            stringBuilder.deleteCharAt(0);
+        }
+
+        // Make a string from the builder and return it.
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Makes an ArrayList of the values in the tree, in order, with a value repeated for each count of its node.
+     * @return ArrayList of the values in the tree.
+     */
+    ArrayList<T> toInorderArray(){
+        this.settle();
+        return this.root == null ? new ArrayList<>() : this.root.toInorderArray();
+    }
+
+    /**
+     * Creates a string representation of the nodes in the tree including nulls.
+     * @return String of nodes in the tree including nulls, comma + space delimited.
+     */
+    String toStringTree(){
+        this.settle();
+        ArrayList<T> list = this.root.toInorderArrayWithNulls(1, this.root.height);
+        StringBuilder stringBuilder = new StringBuilder();
+
+        // Iterate through the list and append the value to the StringBuilder.
+        for (T t : list){
+            stringBuilder.append(", ");
+            stringBuilder.append(t==null?"∅":t.toString());
+        }
+
+        // Remove the initial delimiter from the string (if it contains them).
+        if (stringBuilder.length() > 1) {
+            stringBuilder.deleteCharAt(0);
+            stringBuilder.deleteCharAt(0);
+        }
+
+        // Make a string from the builder and return it.
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Passes every node to a visitor in level order, with its level and its position in that level.
+     * Unlike toMatrix and toStringMatrix, missing nodes are not filled in, so this takes O(n) time and
+     * only holds one level of the tree at a time.
+     * Positions are longs, so at most 64 levels can be numbered; a position on level 63 is below 2^63. An AVL tree
+     * never gets that tall, but a scapegoat tree with alpha close to 1 can, and is then refused before any node is
+     * visited.
+     * @param visitor Visitor to receive the nodes.
+     * @throws IllegalStateException If the tree has more than MAX_EXPORT_LEVELS levels.
+     */
+    void exportLevelOrder(LevelOrderVisitor<? super T> visitor){
+        this.settle();
+        if (this.root == null) return;
+        if (this.root.height > MAX_EXPORT_LEVELS){
+            throw new IllegalStateException("Tree has " + this.root.height + " levels; at most " + MAX_EXPORT_LEVELS + " can be exported.");
+        }
+        ArrayList<Node> level = new ArrayList<>();
+        long[] positions = {0};
+        level.add(this.root);
+
+        // Visit one level while collecting the children, and their positions, that make up the next.
+        for (int depth=0; !level.isEmpty(); depth++){
+            ArrayList<Node> next = new ArrayList<>(level.size() * 2);
+            long[] nextPositions = new long[level.size() * 2];
+            for (int i=0; i<level.size(); i++){
+                Node node = level.get(i);
+                visitor.visit(depth, positions[i], node.value, node.count);
+                if (node.left != null){
+                    nextPositions[next.size()] = positions[i] * 2;
+                    next.add(node.left);
+                }
+                if (node.right != null){
+                    nextPositions[next.size()] = positions[i] * 2 + 1;
+                    next.add(node.right);
+                }
+            }
+            level = next;
+            positions = nextPositions;
+        }
+    }
+
+    /**
+     * Balances the tree.
+     * The nodes are collected in order with their values and rebuilt in place from index ranges, in linear time.
+     */
+    void balance(){
+        if (this.root == null) return;
+        long start = this.listener == null ? 0 : System.nanoTime();
+        Runs runs = this.toRuns(true);
+        this.root = this.build(runs, 0, runs.size, null);
+        this.modCount++;
+        this.dirty = false;
+        this.maxDistinct = runs.size;
+        if (this.listener != null) this.listener.rebalanced(System.nanoTime() - start, runs.size);
+    }
+
+    /**
+     * Get the run-length encoded in-order contents of the tree.
+     * @return Run list of the values in the tree.
+     */
+    Runs toRuns(){
+        return this.toRuns(false);
+    }
+
+    /**
+     * Get the run-length encoded in-order contents of the tree.
+     * @param keepNodes If the nodes should be kept alongside their values so they can be reused by build.
+     * @return Run list of the values in the tree.
+     */
+    private Runs toRuns(boolean keepNodes){
+        Runs runs = new Runs(16, keepNodes, this.order);
+        if (this.root != null) this.collectRuns(this.root, runs);
+        return runs;
+    }
+
+    /**
+     * Appends the values of a node and its children, in order, to a run list.
+     * The subtree is walked by parent references, so a tall subtree left by deferred inserts can not overflow the stack.
+     * @param node Node to start from.
+     * @param runs Run list to append to.
+     */
+    private void collectRuns(Node node, Runs runs){
+        Node current = node.first();
+        while (current != null){
+            runs.add(current.value, current.count);
+            if (runs.nodes != null) runs.nodes[runs.size-1] = current;
+
+            // Step to the next node in order, stopping once the climb gets back to the top of the subtree.
+            if (current.right != null) current = current.right.first();
+            else {
+                while (current != node && current.parent.right == current) current = current.parent;
+                current = current == node ? null : current.parent;
+            }
+        }
+    }
+
+    /**
+     * Builds a perfectly balanced subtree from a range of a run list.
+     * The root of each subtree is the middle distinct value of its range.
+     * If the run list kept its nodes, they are relinked instead of allocating new ones; runs without one get a new node.
+     * @param runs Run list of the values.
+     * @param from Index of the first run in the range.
+     * @param to Index after the last run in the range.
+     * @param parent Parent of the subtree, null for the root.
+     * @return Root of the subtree, or null if the range is empty.
+     */
+    @SuppressWarnings("unchecked")
+    private Node build(Runs runs, int from, int to, Node parent){
+        if (from >= to) return null;
+
+        // Make a node of the middle value, then build its children from either side.
+        int center = (from + to) >>> 1;
+        Node node = runs.nodes == null || runs.nodes[center] == null ? this.obtain(null, parent) : (Node) runs.nodes[center];
+        node.value = (T) runs.values[center];
+        node.count = runs.counts[center];
+        node.parent = parent;
+        node.left = this.build(runs, from, center, node);
+        node.right = this.build(runs, center + 1, to, node);
+        node.update();
+        return node;
+    }
+
+    /**
+     * Checks if an array is in ascending order.
+     * @param values Array of values.
+     * @param order Order of the values.
+     * @return True if no value is greater than the one after it.
+     */
+    private static boolean isSorted(Object[] values, Comparator<Object> order){
+        for (int i=1; i<values.length; i++) if (order.compare(values[i-1], values[i]) > 0) return false;
+        return true;
+    }
+
+    /**
+     * Makes an immutable, array-backed snapshot of the tree for fast lookups.
+     * Later changes to the tree do not show in the snapshot.
+     * @return Snapshot of the values in the tree.
+     */
+    FrozenBST<T> freeze(){
+        return new FrozenBST<>(this.toRuns());
+    }
+
+    /**
+     * Balances the tree like balance(), exporting and rebuilding independent subtrees on a fork/join pool.
+     * The resulting shape is exactly the same as the sequential rebuild.
+     * @param pool Pool to run on.
+     */
+    void balanceParallel(ForkJoinPool pool){
+        if (this.root == null) return;
+        long start = this.listener == null ? 0 : System.nanoTime();
+        int depth = forkDepth(pool);
+        Runs runs = pool.invoke(new ExportTask(this.root, true, depth));
+        this.obtainNodes(runs);
+        this.root = pool.invoke(new BuildTask(runs, 0, runs.size, null, depth));
+        this.modCount++;
+        this.dirty = false;
+        this.maxDistinct = runs.size;
+        if (this.listener != null) this.listener.rebalanced(System.nanoTime() - start, runs.size);
+    }
+
+    /**
+     * Gives every run that has no node one from the node pool, so a parallel rebuild never needs the pool.
+     * The pool is not safe to share between threads, so this runs on the thread that owns the tree.
+     * @param runs Run list to be rebuilt.
+     */
+    private void obtainNodes(Runs runs){
+        if (runs.nodes == null) runs.nodes = new Object[runs.values.length];
+        for (int i=0; i<runs.size; i++) if (runs.nodes[i] == null) runs.nodes[i] = this.obtain(null, null);
+    }
+
+    /**
+     * Get the run-length encoded in-order contents of the tree, exporting independent subtrees on a fork/join pool.
+     * @param pool Pool to run on.
+     * @return Run list of the values in the tree.
+     */
+    Runs toRunsParallel(ForkJoinPool pool){
+        if (this.root == null) return new Runs(1, false, this.order);
+        return pool.invoke(new ExportTask(this.root, false, forkDepth(pool)));
+    }
+
+    /**
+     * Resets the height variable of every node, working on independent subtrees on a fork/join pool.
+     * @param pool Pool to run on.
+     * @return Height of the tree.
+     */
+    int heightsParallel(ForkJoinPool pool){
+        this.settle();
+        if (this.root == null) return 0;
+        return pool.invoke(new StatisticsTask(this.root, forkDepth(pool))).height;
+    }
+
+    /**
+     * Summarises the tree, working on independent subtrees on a fork/join pool. Heights are reset on the way.
+     * @param pool Pool to run on.
+     * @return Summary of the tree.
+     */
+    Statistics statistics(ForkJoinPool pool){
+        this.settle();
+        if (this.root == null) return new Statistics(0, 0, 0, 0);
+        return pool.invoke(new StatisticsTask(this.root, forkDepth(pool)));
+    }
+
+    /**
+     * Get the depth below which subtrees are handled sequentially: enough levels for several tasks per worker.
+     * @param pool Pool the tasks will run on.
+     * @return Number of levels that fork.
+     */
+    private static int forkDepth(ForkJoinPool pool){
+        return 32 - Integer.numberOfLeadingZeros(pool.getParallelism()) + 3;
+    }
+
+    /**
+     * Task exporting a subtree to a run list, forking the children until the sequential cutoff.
+     */
+    private class ExportTask extends RecursiveTask<Runs> {
+        private static final long serialVersionUID = 1L;
+
+        private final Node node; // Root of the subtree.
+        private final boolean keepNodes; // If the nodes should be kept for a rebuild.
+        private final int depth; // Number of levels left that fork.
+
+        /**
+         * Constructor to make a task for a subtree.
+         * @param node Root of the subtree.
+         * @param keepNodes If the nodes should be kept for a rebuild.
+         * @param depth Number of levels left that fork.
+         */
+        ExportTask(Node node, boolean keepNodes, int depth){
+            this.node = node;
+            this.keepNodes = keepNodes;
+            this.depth = depth;
+        }
+
+        protected Runs compute(){
+            // Small enough; export it in this thread.
+            if (depth == 0){
+                Runs runs = new Runs(16, keepNodes, order);
+                collectRuns(node, runs);
+                return runs;
+            }
+
+            // Export the left side in another thread and the right side in this one, then join them around this node.
+            ExportTask leftTask = node.left == null ? null : new ExportTask(node.left, keepNodes, depth - 1);
+            if (leftTask != null) leftTask.fork();
+            Runs right = node.right == null ? null : new ExportTask(node.right, keepNodes, depth - 1).compute();
+            Runs runs = leftTask == null ? new Runs(16, keepNodes, order) : leftTask.join();
+            runs.add(node.value, node.count);
+            if (keepNodes) runs.nodes[runs.size-1] = node;
+            if (right != null) runs.addAll(right);
+            return runs;
+        }
+    }
+
+    /**
+     * Task building a perfectly balanced subtree from a range of a run list, forking the children until the sequential cutoff.
+     * Every run must already have a node, from obtainNodes, as the node pool is not shared with the workers.
+     */
+    private class BuildTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final Runs runs; // Run list of the values.
+        private final int from; // Index of the first run in the range.
+        private final int to; // Index after the last run in the range.
+        private final Node parent; // Parent of the subtree.
+        private final int depth; // Number of levels left that fork.
+
+        /**
+         * Constructor to make a task for a range.
+         * @param runs Run list of the values.
+         * @param from Index of the first run in the range.
+         * @param to Index after the last run in the range.
+         * @param parent Parent of the subtree, null for the root.
+         * @param depth Number of levels left that fork.
+         */
+        BuildTask(Runs runs, int from, int to, Node parent, int depth){
+            this.runs = runs;
+            this.from = from;
+            this.to = to;
+            this.parent = parent;
+            this.depth = depth;
+        }
+
+        @SuppressWarnings("unchecked")
+        protected Node compute(){
+            // Small enough; build it in this thread.
+            if (depth == 0 || from >= to) return build(runs, from, to, parent);
+
+            // Make the middle node the same way build does, then build both sides at once.
+            int center = (from + to) >>> 1;
+            Node node = (Node) runs.nodes[center];
+            node.value = (T) runs.values[center];
+            node.count = runs.counts[center];
+            node.parent = parent;
+            BuildTask leftTask = new BuildTask(runs, from, center, node, depth - 1);
+            leftTask.fork();
+            node.right = new BuildTask(runs, center + 1, to, node, depth - 1).compute();
+            node.left = leftTask.join();
+            node.update();
+            return node;
+        }
+    }
+
+    /**
+     * Task summarising a subtree and resetting its heights, forking the children until the sequential cutoff.
+     */
+    private class StatisticsTask extends RecursiveTask<Statistics> {
+        private static final long serialVersionUID = 1L;
+
+        private final Node node; // Root of the subtree.
+        private final int depth; // Number of levels left that fork.
+
+        /**
+         * Constructor to make a task for a subtree.
+         * @param node Root of the subtree.
+         * @param depth Number of levels left that fork.
+         */
+        StatisticsTask(Node node, int depth){
+            this.node = node;
+            this.depth = depth;
+        }
+
+        protected Statistics compute(){
+            // Small enough; summarise it in this thread.
+            if (depth == 0) return summarise(node);
+
+            // Otherwise do the left side in another thread.
+            StatisticsTask leftTask = node.left == null ? null : new StatisticsTask(node.left, depth - 1);
+            if (leftTask != null) leftTask.fork();
+            Statistics right = node.right == null ? null : new StatisticsTask(node.right, depth - 1).compute();
+            Statistics left = leftTask == null ? null : leftTask.join();
+
+            Statistics statistics = Statistics.join(left, node.count, right);
+            node.height = statistics.height;
+            return statistics;
+        }
+    }
+
+    /**
+     * Summarises a subtree and resets its heights, in this thread.
+     * @param node Root of the subtree.
+     * @return Summary of the subtree.
+     */
+    private Statistics summarise(Node node){
+        Statistics left = node.left == null ? null : this.summarise(node.left);
+        Statistics right = node.right == null ? null : this.summarise(node.right);
+        Statistics statistics = Statistics.join(left, node.count, right);
+        node.height = statistics.height;
+        return statistics;
+    }
+
+    /**
+     * Get the height of the tree as it is, without balancing deferred inserts first. This never changes the tree,
+     * so metrics can read it from another thread.
+     * @return Height of the tree.
+     */
+    int getHeight(){
+        return heightOf(this.root);
+    }
+
+    /**
+     * Get the tree in a two-dimensional array representation, with each row of the same height as a row in the matrix.
+     * The rows are Object arrays, so values of mixed classes fit and no array has to be made by reflection.
+     * @return Two-dimensional array representation of the tree.
+     */
+    Object[][] toMatrix(){
+        this.settle();
+
+        // Get the 2D-ArrayList from the root node of the tree.
+        ArrayList<ArrayList<T>> list = this.root.toMatrix(0,null, this.root.height);
+
+        // Initialize the return matrix.
+        Object[][] bigArray = new Object[this.root.height][];
+
+        // Populate the return matrix with the lists from the root's 'toMatrix'.
+        for (int i=0; i<bigArray.length;i++) bigArray[i] = list.get(i).toArray();
+        return bigArray;
+    }
+
+    /**
+     * Get the tree in a two-dimensional array representation, with each row of the same height as a row in the matrix.
+     * This methods represents the values as strings with a postfix denoting count of the node.
+     * @return Two-dimensional array representation of the tree.
+     */
+    String[][] toStringMatrix(){
+        this.settle();
+
+        // Get the 2D-ArrayList from the root node of the tree.
+        ArrayList<ArrayList<String>> list = this.root.toStringMatrix(0, null, this.root.height);
+
+        // Initialize the return matrix.
+        String[][] strings = new String[list.size()][];
+
+        // Populate the return matrix with the lists from the root's 'toStringMatrix'.
+        for (int i=0; i<strings.length;i++){
+            // Get the size of the list.
+            int size = list.get(i).size();
+            // Initialize the array.
+            String[] temps = new String[size];
+            // Move the current iteration's value over.
+            for (int j=0; j<size; j++) temps[j] = list.get(i).get(j);
+            // Set the array to the temporary one.
+            strings[i] = temps;
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,444 @@
+package bst;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Class for a BalancedBST with a bound on its size, for use as an ordered cache over a working set.
+ * The bound is a number of distinct values or an estimated number of bytes. When an add takes the tree over it,
+ * values are evicted by an EvictionPolicy until it is back under, each with one O(log n) removal; the tree is
+ * never rebuilt as a whole. Lookups count as hits or misses, so the bound can be sized from the statistics.
+ * <p>
+ * For LRU and LFU the nodes of the tree are linked into a list in eviction order, and counts are read from the nodes;
+ * nothing else is kept per value. The links are kept on nodes of a subclass the tree makes through a node factory,
+ * so trees that are not bounded this way carry none.
+ * @param <T> Type of the values.
+ */
+public class BoundedBST<T> implements Iterable<T> {
+    private final BalancedBST<T> tree; // Tree holding the values.
+    private final EvictionPolicy policy; // Which values are evicted.
+    private final int maxEntries; // Most distinct values kept, or Integer.MAX_VALUE if bound by bytes.
+    private final long maxBytes; // Most estimated bytes kept, or Long.MAX_VALUE if bound by entries.
+    private final ToLongFunction<? super T> weigher; // Estimated bytes of a value itself, past its node.
+    private final boolean linked; // If the nodes are linked in eviction order, for LRU and LFU.
+    private final long nodeBytes; // Estimated bytes of a node of the tree.
+    private final TreeMap<Integer, LinkedNode<T>> newestOfCount; // Newest node in the list with each count, null unless LFU.
+    private LinkedNode<T> eldest; // Next node to evict, null if none are linked.
+    private LinkedNode<T> newest; // Node at the other end of the list.
+    private long bytes = 0; // Estimated bytes of the values kept.
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0; // Number of values evicted, not counting duplicates.
+
+    /**
+     * Estimated bytes of a tree node, past its value, with compressed references: a 12 byte object header, five
+     * references (the value, both children, the parent and the tree) and three ints, rounded up to 8 bytes.
+     */
+    static final long NODE_BYTES = 48;
+
+    /**
+     * Estimated bytes of a tree node linked in eviction order, for LRU and LFU: a node and two more references.
+     */
+    static final long LINKED_NODE_BYTES = 56;
+
+    /**
+     * Node of the tree with links to the nodes before and after it in eviction order.
+     * @param <T> Type of the values.
+     */
+    private static final class LinkedNode<T> extends BalancedBST<T>.Node {
+        LinkedNode<T> older; // Node used before this one.
+        LinkedNode<T> newer; // Node used after this one.
+
+        /**
+         * Constructor to make a node with no children, for a tree.
+         * @param tree Tree the node is for.
+         * @param value Value of node.
+         * @param parent Reference to parent node.
+         */
+        LinkedNode(BalancedBST<T> tree, T value, BalancedBST<T>.Node parent){
+            tree.super(value, parent);
+        }
+    }
+
+    /**
+     * Constructor to bound a tree by its number of distinct values.
+     * @param tree Tree to bound, which may already hold values; it should not be changed other than through this.
+     * @param maxEntries Most distinct values to keep.
+     * @param policy Which values to evict.
+     * @throws IllegalArgumentException If maxEntries is less than one, or the tree is not balanced by AVL.
+     */
+    BoundedBST(BalancedBST<T> tree, int maxEntries, EvictionPolicy policy){
+        this(tree, maxEntries, Long.MAX_VALUE, value -> 0, policy);
+    }
+
+    /**
+     * Constructor to bound a tree by the bytes its values are estimated to take. Each value is counted as
+     * NODE_BYTES, or LINKED_NODE_BYTES for LRU and LFU, plus what the weigher says the value itself takes.
+     * @param tree Tree to bound, which may already hold values; it should not be changed other than through this.
+     * @param maxBytes Most estimated bytes to keep.
+     * @param weigher Estimated bytes of a value, such as 16 for an Integer; 0 if values are shared with other data.
+     * @param policy Which values to evict.
+     * @throws IllegalArgumentException If maxBytes is less than one, or the tree is not balanced by AVL.
+     */
+    BoundedBST(BalancedBST<T> tree, long maxBytes, ToLongFunction<? super T> weigher, EvictionPolicy policy){
+        this(tree, Integer.MAX_VALUE, maxBytes, weigher, policy);
+    }
+
+    /**
+     * Constructor to bound a tree by both its number of distinct values and its estimated bytes.
+     * The tree must be balanced by AVL, and stay so: the other policies may rebuild the whole tree on an add or
+     * removal, and a rebuild may move values to other nodes than the ones linked in eviction order. For LRU and LFU
+     * the tree is rebuilt once here, with nodes that can be linked.
+     * @param tree Tree to bound.
+     * @param maxEntries Most distinct values to keep.
+     * @param maxBytes Most estimated bytes to keep.
+     * @param weigher Estimated bytes of a value.
+     * @param policy Which values to evict.
+     * @throws IllegalArgumentException If either bound is less than one, or the tree is not balanced by AVL.
+     */
+    private BoundedBST(BalancedBST<T> tree, int maxEntries, long maxBytes, ToLongFunction<? super T> weigher, EvictionPolicy policy){
+        if (maxEntries < 1) throw new IllegalArgumentException("Bound must be at least one entry: " + maxEntries);
+        if (maxBytes < 1) throw new IllegalArgumentException("Bound must be at least one byte: " + maxBytes);
+        if (tree.getRebalancePolicy() != RebalancePolicy.AVL)
+            throw new IllegalArgumentException("Only a tree balanced by AVL can be bounded, not " + tree.getRebalancePolicy() + ".");
+        this.tree = tree;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+        this.policy = policy;
+        this.linked = policy == EvictionPolicy.LRU || policy == EvictionPolicy.LFU;
+        this.nodeBytes = this.linked ? LINKED_NODE_BYTES : NODE_BYTES;
+        this.newestOfCount = policy == EvictionPolicy.LFU ? new TreeMap<>() : null;
+
+        // Take in the values already in the tree as if they had been added in order, then apply the bound.
+        if (this.linked) tree.setNodeFactory(LinkedNode::new);
+        for (BalancedBST<T>.Node node = tree.firstNode(); node != null; node = node.successor()){
+            this.bytes += this.weigh(node.getValue());
+            if (this.linked) this.link((LinkedNode<T>) node);
+        }
+        this.evict();
+    }
+
+    /**
+     * Add a value, evicting others if the tree goes over its bound. The value itself may be evicted,
+     * for example if it is the smallest and the policy is SMALLEST.
+     * @param value Value to be placed in the tree.
+     */
+    void addNode(T value){
+        if (!this.linked){
+            // The tree only gains a node if the value is new.
+            int before = this.tree.distinct();
+            this.tree.addNode(value);
+            if (this.tree.distinct() > before){
+                this.bytes += this.weigh(value);
+                this.evict();
+            }
+            return;
+        }
+
+        // An old value moves up the list; a new one is linked in at the newest end of its count.
+        LinkedNode<T> node = this.linkedNode(value);
+        if (node != null){
+            this.unlink(node, node.getCount());
+            this.tree.addNode(value);
+            this.link(node);
+            return;
+        }
+        this.tree.addNode(value);
+        this.link(this.linkedNode(value));
+        this.bytes += this.weigh(value);
+        this.evict();
+    }
+
+    /**
+     * Remove one occurrence of a value. This is not an eviction and is not counted as one.
+     * @param value Value to be removed.
+     * @return True if the value was in the tree.
+     */
+    boolean remove(T value){
+        if (!this.linked){
+            int before = this.tree.distinct();
+            if (!this.tree.remove(value)) return false;
+            if (this.tree.distinct() < before) this.bytes -= this.weigh(value);
+            return true;
+        }
+
+        // LFU orders by count, so a node that stays has to be placed again.
+        LinkedNode<T> node = this.linkedNode(value);
+        if (node == null) return false;
+        int count = node.getCount();
+        this.unlink(node, count);
+        this.tree.remove(value);
+        if (count > 1) this.link(node);
+        else this.bytes -= this.weigh(value);
+        return true;
+    }
+
+    /**
+     * Remove every occurrence of a value. This is not an eviction and is not counted as one.
+     * @param value Value to be removed.
+     * @return Number of occurrences that were removed.
+     */
+    int removeAll(T value){
+        if (this.linked){
+            LinkedNode<T> node = this.linkedNode(value);
+            if (node == null) return 0;
+            this.unlink(node, node.getCount());
+        }
+        int removed = this.tree.removeAll(value);
+        if (removed > 0) this.bytes -= this.weigh(value);
+        return removed;
+    }
+
+    /**
+     * Get the number of times a value has been added, counting a hit or a miss.
+     * @param value Value to look for.
+     * @return Count of the value, 0 if it is not in the tree.
+     */
+    int getCount(T value){
+        BalancedBST<T>.Node node = this.tree.getNode(value);
+        if (node == null){
+            this.misses++;
+            return 0;
+        }
+        this.touch(node);
+        return node.getCount();
+    }
+
+    /**
+     * Checks if a value is in the tree, counting a hit or a miss.
+     * @param value Value to look for.
+     * @return True if the value is in the tree.
+     */
+    boolean contains(T value){
+        return this.getCount(value) > 0;
+    }
+
+    /**
+     * Get the largest value in the tree less than or equal to a value, counting a hit on it or a miss.
+     * @param value Value to look for.
+     * @return Floor of the value, null if there is none.
+     */
+    T floor(T value){
+        T floor = this.tree.floor(value);
+        this.record(floor);
+        return floor;
+    }
+
+    /**
+     * Get the smallest value in the tree greater than or equal to a value, counting a hit on it or a miss.
+     * @param value Value to look for.
+     * @return Ceiling of the value, null if there is none.
+     */
+    T ceiling(T value){
+        T ceiling = this.tree.ceiling(value);
+        this.record(ceiling);
+        return ceiling;
+    }
+
+    /**
+     * Get the values in the tree between two values, inclusive, in order. Scans are not counted as hits.
+     * @param low Smallest value to return.
+     * @param high Largest value to return.
+     * @return Iterable of the values in the range, repeating a value for each count of its node.
+     */
+    Iterable<T> range(T low, T high){
+        return this.tree.range(low, high);
+    }
+
+    /**
+     * Iterates over the values in order, repeating a value for each count of its node. Scans are not counted as hits.
+     * @return Iterator of the values.
+     */
+    public Iterator<T> iterator(){
+        return this.tree.iterator();
+    }
+
+    /**
+     * Get the number of values in the tree, counting duplicates.
+     * @return Number of values in the tree.
+     */
+    int size(){
+        return this.tree.size();
+    }
+
+    /**
+     * Get the number of distinct values in the tree, which the entry bound applies to.
+     * @return Number of distinct values.
+     */
+    int distinct(){
+        return this.tree.distinct();
+    }
+
+    /**
+     * Get the estimated bytes of the values in the tree, which the byte bound applies to.
+     * @return Estimated bytes.
+     */
+    long getBytes(){
+        return this.bytes;
+    }
+
+    /**
+     * Get the policy used to pick values to evict.
+     * @return Eviction policy.
+     */
+    EvictionPolicy getEvictionPolicy(){
+        return this.policy;
+    }
+
+    /**
+     * Get the number of lookups that found a value.
+     * @return Number of hits.
+     */
+    long getHits(){
+        return this.hits;
+    }
+
+    /**
+     * Get the number of lookups that found nothing.
+     * @return Number of misses.
+     */
+    long getMisses(){
+        return this.misses;
+    }
+
+    /**
+     * Get the share of lookups that found a value.
+     * @return Hits over lookups, 0 if there have been none.
+     */
+    double getHitRate(){
+        long lookups = this.hits + this.misses;
+        return lookups == 0 ? 0 : (double) this.hits / lookups;
+    }
+
+    /**
+     * Get the number of values evicted to keep the tree under its bound, not counting duplicates.
+     * @return Number of evictions.
+     */
+    long getEvictions(){
+        return this.evictions;
+    }
+
+    /**
+     * Sets the hit, miss and eviction counts back to zero.
+     */
+    void resetStatistics(){
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    /**
+     * Get the tree the values are kept in, for reads that are not counted, such as drawing or exporting it.
+     * @return Bounded tree.
+     */
+    BalancedBST<T> getTree(){
+        return this.tree;
+    }
+
+    /**
+     * Get the node of a value in a tree whose nodes are linked in eviction order.
+     * @param value Value to look for.
+     * @return Node of the value, null if it is not in the tree.
+     */
+    private LinkedNode<T> linkedNode(T value){
+        return (LinkedNode<T>) this.tree.getNode(value);
+    }
+
+    /**
+     * Counts a lookup, moving the value found up the list.
+     * @param found Value the lookup found, null for a miss.
+     */
+    private void record(T found){
+        if (found == null) this.misses++;
+        else if (this.linked) this.touch(this.tree.getNode(found));
+        else this.hits++;
+    }
+
+    /**
+     * Counts a hit on a value, moving its node to the newest end of its place in the list.
+     * @param node Node of the value found.
+     */
+    private void touch(BalancedBST<T>.Node node){
+        this.hits++;
+        if (!this.linked) return;
+        LinkedNode<T> linkedNode = (LinkedNode<T>) node;
+        this.unlink(linkedNode, linkedNode.getCount());
+        this.link(linkedNode);
+    }
+
+    /**
+     * Links a node into eviction order: at the newest end for LRU, and at the newest end of the nodes with its
+     * count for LFU, so the eldest node has the lowest count and of those was used longest ago.
+     * @param node Node to be linked, not already in the list.
+     */
+    private void link(LinkedNode<T> node){
+        // LRU goes after the newest node; LFU after the newest node with the same count or the next lower one.
+        LinkedNode<T> older = this.newest;
+        if (this.newestOfCount != null){
+            Map.Entry<Integer, LinkedNode<T>> lower = this.newestOfCount.floorEntry(node.getCount());
+            older = lower == null ? null : lower.getValue();
+            this.newestOfCount.put(node.getCount(), node);
+        }
+        LinkedNode<T> newer = older == null ? this.eldest : older.newer;
+        node.older = older;
+        node.newer = newer;
+        if (older == null) this.eldest = node;
+        else older.newer = node;
+        if (newer == null) this.newest = node;
+        else newer.older = node;
+    }
+
+    /**
+     * Takes a node out of eviction order, in O(1) for LRU and O(log c) for LFU, c being the number of different counts.
+     * @param node Node to be taken out.
+     * @param count Count the node had when it was linked.
+     */
+    private void unlink(LinkedNode<T> node, int count){
+        // If this was the newest node with its count, the one before it takes over if it has the same count.
+        if (this.newestOfCount != null && this.newestOfCount.get(count) == node){
+            if (node.older != null && node.older.getCount() == count) this.newestOfCount.put(count, node.older);
+            else this.newestOfCount.remove(count);
+        }
+        if (node.older == null) this.eldest = node.newer;
+        else node.older.newer = node.newer;
+        if (node.newer == null) this.newest = node.older;
+        else node.newer.older = node.older;
+        node.older = null;
+        node.newer = null;
+    }
+
+    /**
+     * Evicts values until the tree is under both bounds.
+     */
+    private void evict(){
+        while (this.tree.distinct() > this.maxEntries || this.bytes > this.maxBytes && this.tree.distinct() > 0){
+            T victim;
+            switch (this.policy){
+                case SMALLEST:
+                    victim = this.tree.select(0);
+                    break;
+                case LARGEST:
+                    victim = this.tree.select(this.tree.size() - 1);
+                    break;
+                default:
+                    victim = this.eldest.getValue();
+                    this.unlink(this.eldest, this.eldest.getCount());
+            }
+            this.tree.removeAll(victim);
+            this.bytes -= this.weigh(victim);
+            this.evictions++;
+        }
+    }
+
+    /**
+     * Get the estimated bytes a value takes in the tree.
+     * @param value Value to weigh.
+     * @return Estimated bytes of the value and its node.
+     */
+    private long weigh(T value){
+        return this.nodeBytes + this.weigher.applyAsLong(value);
+    }
+}
@@ -0,0 +1,323 @@
+package bst;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * Class for a BalancedBST with a write buffer in front of it, for ingesting values faster than the tree can take
+ * them one by one. Adds go into a small sorted buffer of (value, count) runs; when it fills, the runs are merged
+ * into the tree in one batch, so the cost of keeping the tree balanced is paid once per buffer instead of once per
+ * value. Point lookups check both the buffer and the tree, so they are always exact; ordered scans merge the buffer
+ * in first.
+ * <p>
+ * A merge either rebuilds the tree from the merged runs in one linear pass, or inserts the runs into it in order,
+ * whichever costs less by the times measured for earlier merges: rebuilds win while the tree is small next to the
+ * buffer, and inserts once it is large. Given a bound on how long a merge may take, the buffer fills only as far as
+ * the cheaper merge can be done within the bound.
+ * @param <T> Type of the values.
+ */
+public class BufferedBST<T> implements Iterable<T> {
+    private final BalancedBST<T> tree; // Tree the buffer is merged into.
+    private final Comparator<Object> order; // Order of the values, the same as the tree's.
+    private final Object[] values; // Distinct values in the buffer, in order.
+    private final int[] counts; // Count of each value in the buffer.
+    private int size = 0; // Number of distinct values in the buffer.
+    private int buffered = 0; // Number of values in the buffer, counting duplicates.
+    private int limit; // Number of distinct values the buffer fills to before a merge, at most its capacity.
+    private final long maxMergeNanos; // Longest a merge should take.
+    private double rebuildNanos = 0; // Measured time to rebuild per run in the merged tree, 0 until measured.
+    private double insertNanos = 0; // Measured time to insert per run from the buffer, 0 until measured.
+    private long merges = 0;
+    private long rebuilds = 0; // Merges that rebuilt the tree, rather than inserting into it.
+    private long longestMerge = 0; // Longest time a merge has taken.
+
+    /**
+     * Constructor to put a buffer in front of a tree, with no bound on merge time.
+     * @param tree Tree to merge into, which may already hold values; it should not be changed other than through this.
+     * @param capacity Number of distinct values the buffer holds before it is merged.
+     * @throws IllegalArgumentException If capacity is less than one.
+     */
+    BufferedBST(BalancedBST<T> tree, int capacity){
+        this(tree, capacity, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor to put a buffer in front of a tree, with a bound on how long a merge may take.
+     * @param tree Tree to merge into, which may already hold values; it should not be changed other than through this.
+     * @param capacity Number of distinct values the buffer holds before it is merged.
+     * @param maxMergeNanos Longest a merge should take. This is a target from measured costs, not a guarantee.
+     * @throws IllegalArgumentException If capacity or maxMergeNanos is less than one.
+     */
+    @SuppressWarnings("unchecked")
+    BufferedBST(BalancedBST<T> tree, int capacity, long maxMergeNanos){
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least one: " + capacity);
+        if (maxMergeNanos < 1) throw new IllegalArgumentException("Merge bound must be at least one nanosecond: " + maxMergeNanos);
+        this.tree = tree;
+        this.order = tree.comparator() == null ? BalancedBST.NATURAL_ORDER : (Comparator<Object>) tree.comparator();
+        this.values = new Object[capacity];
+        this.counts = new int[capacity];
+        this.limit = capacity;
+        this.maxMergeNanos = maxMergeNanos;
+    }
+
+    /**
+     * Add a node to the BST, by placing it in the buffer. Merges the buffer if it is full.
+     * @param value Value to be placed in node.
+     */
+    void addNode(T value){
+        int index = this.search(value);
+
+        // A value already in the buffer only has its count raised.
+        if (index >= 0) this.counts[index]++;
+        else {
+            index = -index - 1;
+            System.arraycopy(this.values, index, this.values, index + 1, this.size - index);
+            System.arraycopy(this.counts, index, this.counts, index + 1, this.size - index);
+            this.values[index] = value;
+            this.counts[index] = 1;
+            this.size++;
+        }
+        this.buffered++;
+        if (this.size >= this.limit) this.flush();
+    }
+
+    /**
+     * Remove one occurrence of a value, from the buffer if it is there, otherwise from the tree.
+     * @param value Value to be removed.
+     * @return True if the value was in the buffer or the tree.
+     */
+    boolean remove(T value){
+        int index = this.search(value);
+        if (index < 0) return this.tree.remove(value);
+        if (--this.counts[index] == 0) this.removeRun(index);
+        this.buffered--;
+        return true;
+    }
+
+    /**
+     * Remove every occurrence of a value, from both the buffer and the tree.
+     * @param value Value to be removed.
+     * @return Number of occurrences that were removed.
+     */
+    int removeAll(T value){
+        int removed = 0, index = this.search(value);
+        if (index >= 0){
+            removed = this.counts[index];
+            this.buffered -= removed;
+            this.removeRun(index);
+        }
+        return removed + this.tree.removeAll(value);
+    }
+
+    /**
+     * Get the number of times a value has been added, in the buffer and the tree together.
+     * @param value Value to look for.
+     * @return Count of the value, 0 if it is not in either.
+     */
+    int getCount(T value){
+        int index = this.search(value);
+        return (index >= 0 ? this.counts[index] : 0) + this.tree.getCount(value);
+    }
+
+    /**
+     * Checks if a value is in the buffer or the tree.
+     * @param value Value to look for.
+     * @return True if the value has been added at least once.
+     */
+    boolean contains(T value){
+        return this.search(value) >= 0 || this.tree.contains(value);
+    }
+
+    /**
+     * Get the largest value in the buffer or the tree less than or equal to a value.
+     * @param value Value to look for.
+     * @return Floor of the value, null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    T floor(T value){
+        int index = this.search(value);
+        if (index >= 0) return (T) this.values[index];
+        index = -index - 2;
+        T floor = this.tree.floor(value);
+        if (index < 0) return floor;
+        return floor == null || this.order.compare(this.values[index], floor) > 0 ? (T) this.values[index] : floor;
+    }
+
+    /**
+     * Get the smallest value in the buffer or the tree greater than or equal to a value.
+     * @param value Value to look for.
+     * @return Ceiling of the value, null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    T ceiling(T value){
+        int index = this.search(value);
+        if (index >= 0) return (T) this.values[index];
+        index = -index - 1;
+        T ceiling = this.tree.ceiling(value);
+        if (index == this.size) return ceiling;
+        return ceiling == null || this.order.compare(this.values[index], ceiling) < 0 ? (T) this.values[index] : ceiling;
+    }
+
+    /**
+     * Get the values between two values, inclusive, in order. The buffer is merged first.
+     * @param low Smallest value to return.
+     * @param high Largest value to return.
+     * @return Iterable of the values in the range, repeating a value for each count.
+     */
+    Iterable<T> range(T low, T high){
+        this.flush();
+        return this.tree.range(low, high);
+    }
+
+    /**
+     * Iterates over the values in order, repeating a value for each count. The buffer is merged first.
+     * @return Iterator of the values.
+     */
+    public Iterator<T> iterator(){
+        this.flush();
+        return this.tree.iterator();
+    }
+
+    /**
+     * Get the number of values in the buffer and the tree, counting duplicates.
+     * @return Number of values added.
+     */
+    int size(){
+        return this.tree.size() + this.buffered;
+    }
+
+    /**
+     * Get the number of values waiting in the buffer, counting duplicates.
+     * @return Number of buffered values.
+     */
+    int buffered(){
+        return this.buffered;
+    }
+
+    /**
+     * Get the tree with the buffer merged into it, for reads that need the tree itself, such as rank or freeze.
+     * @return Tree holding every value.
+     */
+    BalancedBST<T> getTree(){
+        this.flush();
+        return this.tree;
+    }
+
+    /**
+     * Get the number of merges so far.
+     * @return Number of merges.
+     */
+    long getMerges(){
+        return this.merges;
+    }
+
+    /**
+     * Get the number of merges that rebuilt the tree rather than inserting into it.
+     * @return Number of rebuilds.
+     */
+    long getRebuilds(){
+        return this.rebuilds;
+    }
+
+    /**
+     * Get the longest time a merge has taken.
+     * @return Longest merge in nanoseconds.
+     */
+    long getLongestMerge(){
+        return this.longestMerge;
+    }
+
+    /**
+     * Get the number of distinct values the buffer now fills to before it is merged.
+     * @return Fill limit, at most the capacity.
+     */
+    int getLimit(){
+        return this.limit;
+    }
+
+    /**
+     * Merges the buffer into the tree and empties it, by whichever of a rebuild or inserts costs less, then sets
+     * how far the buffer fills before the next merge.
+     */
+    @SuppressWarnings("unchecked")
+    void flush(){
+        if (this.size == 0) return;
+        long start = System.nanoTime();
+        double rebuildEstimate = this.rebuildNanos * (this.tree.distinct() + this.size);
+        double insertEstimate = this.insertNanos * this.size;
+
+        // Until both costs are measured, try each once: a rebuild first, then inserts.
+        boolean rebuild;
+        if (this.rebuildNanos == 0) rebuild = true;
+        else if (this.insertNanos == 0) rebuild = false;
+        else rebuild = rebuildEstimate <= insertEstimate;
+
+        // Rebuild the tree from the merged runs, or insert the runs one by one; in order, their paths are mostly cached.
+        if (rebuild){
+            BalancedBST.Runs runs = new BalancedBST.Runs(this.size, false, this.order);
+            for (int i=0; i<this.size; i++) runs.add(this.values[i], this.counts[i]);
+            this.tree.addRuns(runs);
+        }
+        else {
+            for (int i=0; i<this.size; i++) this.tree.addNode((T) this.values[i], this.counts[i]);
+        }
+
+        // Measure what the merge cost, for picking the next one.
+        long nanos = System.nanoTime() - start;
+        if (rebuild){
+            this.rebuildNanos = (double) nanos / Math.max(this.tree.distinct(), 1);
+            this.rebuilds++;
+        }
+        else this.insertNanos = (double) nanos / this.size;
+        this.merges++;
+        this.longestMerge = Math.max(this.longestMerge, nanos);
+
+        // Fill only as far as the cheaper merge of a full buffer can go within the bound. A rebuild takes as long
+        // whatever the fill, so the fill is set by the cost of inserts.
+        int capacity = this.values.length;
+        double full = Math.min(this.rebuildNanos * (this.tree.distinct() + capacity), this.insertNanos * capacity);
+        if (this.insertNanos == 0 || full <= this.maxMergeNanos) this.limit = capacity;
+        else this.limit = (int) Math.max(1, Math.min(capacity, this.maxMergeNanos / this.insertNanos));
+
+        // Empty the buffer, dropping the references so the values can be collected once out of the tree.
+        Arrays.fill(this.values, 0, this.size, null);
+        this.size = 0;
+        this.buffered = 0;
+    }
+
+    /**
+     * Finds a value in the buffer by binary search.
+     * @param value Value to look for.
+     * @return Index of the value, or (-(insertion point) - 1) if it is not in the buffer.
+     */
+    private int search(Object value){
+        int low = 0, high = this.size - 1;
+        while (low <= high){
+            int middle = (low + high) >>> 1;
+            int compareValue = this.order.compare(this.values[middle], value);
+            if (compareValue < 0) low = middle + 1;
+            else if (compareValue > 0) high = middle - 1;
+            else return middle;
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Takes a run out of the buffer, closing the gap.
+     * @param index Index of the run.
+     */
+    private void removeRun(int index){
+        System.arraycopy(this.values, index + 1, this.values, index, this.size - index - 1);
+        System.arraycopy(this.counts, index + 1, this.counts, index, this.size - index - 1);
+        this.values[--this.size] = null;
+    }
+
+    /**
+     * Creates a string representation of the values. The buffer is merged first.
+     * @return String of values, comma + space delimited.
+     */
+    public String toString(){
+        return this.getTree().toString();
+    }
+}
@@ -0,0 +1,399 @@
+package bst;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Class for balanced binary search tree that can be shared between threads.
+ * The values are split by range into stripes, and each stripe is a PersistentBalancedBST whose versions are never
+ * changed once made. An update makes a new version of its stripe and publishes it with a compare-and-set, trying
+ * again if another update to the same stripe got there first; updates to different stripes never meet, so writers
+ * in different parts of the key space run in parallel. A stripe that grows past a size is split in two at its
+ * middle value, in O(log n), until there are enough stripes for the threads of the machine.
+ * <p>
+ * Lookups read the last version of one stripe and never block, even while the stripe is being split or read by a
+ * snapshot; only updates wait for those. A snapshot joins the last versions of every stripe
+ * into one version in O(log n) per stripe, and hands it out for as many consistent reads as needed.
+ * Values are kept in their natural order, or in the order of a comparator given when the tree is made.
+ * @param <T> Type of the values.
+ */
+public class ConcurrentBalancedBST<T> implements Iterable<T> {
+    private static final int SPLIT_SIZE = 1 << 10; // Number of values a stripe holds before it is split.
+    private static final int MAX_STRIPES = 4 * Runtime.getRuntime().availableProcessors(); // Most stripes made by splits.
+    private static final int SNAPSHOT_RETRIES = 64; // Times the stripes are read again before a snapshot stops the writers.
+    private final Comparator<? super T> comparator; // Order given when the tree was made, null for natural order.
+    private final Comparator<Object> order; // Order every comparison goes through.
+    private final AtomicReference<Layout<T>> layout; // Stripes of the tree and the values they are split at.
+
+    /**
+     * One range of the values, holding its state.
+     * @param <T> Type of the values.
+     */
+    private static final class Stripe<T> {
+        final AtomicReference<State<T>> state; // Last published state of the stripe.
+
+        /**
+         * Constructor to make a stripe from its first version.
+         * @param version Version of the stripe.
+         */
+        Stripe(PersistentBalancedBST<T> version){
+            this.state = new AtomicReference<>(new State<>(version, 0, false));
+        }
+    }
+
+    /**
+     * Version of a stripe with how it is sealed against updates. A sealed stripe keeps its last version readable;
+     * only updates wait for it. Snapshots that stop the writers seal a stripe for as long as they read it, any
+     * number at once, and a split seals it for good, as the layout it is in is replaced.
+     * States are never changed; an update publishes a new one.
+     * @param <T> Type of the values.
+     */
+    private static final class State<T> {
+        final PersistentBalancedBST<T> version; // Values of the stripe.
+        final int seals; // Number of snapshots reading the stripe with the writers stopped.
+        final boolean split; // If the stripe has been split, and its layout is being replaced.
+
+        /**
+         * Constructor to make a state.
+         * @param version Values of the stripe.
+         * @param seals Number of snapshots reading the stripe with the writers stopped.
+         * @param split If the stripe has been split.
+         */
+        State(PersistentBalancedBST<T> version, int seals, boolean split){
+            this.version = version;
+            this.seals = seals;
+            this.split = split;
+        }
+
+        /**
+         * Checks if updates to the stripe must wait.
+         * @return True if the stripe is sealed by a snapshot or a split.
+         */
+        boolean sealed(){
+            return this.seals > 0 || this.split;
+        }
+    }
+
+    /**
+     * Stripes in order and the values between them. Layouts are never changed; a split publishes a new one.
+     * @param <T> Type of the values.
+     */
+    private static final class Layout<T> {
+        final Object[] splits; // Smallest value of every stripe but the first, in order.
+        final List<Stripe<T>> stripes; // Stripes in order, one more than the splits.
+
+        /**
+         * Constructor to make a layout.
+         * @param splits Smallest value of every stripe but the first.
+         * @param stripes Stripes in order.
+         */
+        Layout(Object[] splits, List<Stripe<T>> stripes){
+            this.splits = splits;
+            this.stripes = stripes;
+        }
+
+        /**
+         * Finds the stripe a value belongs in, by binary search over the splits.
+         * @param value Value to look for.
+         * @param order Order of the values.
+         * @return Stripe whose range holds the value.
+         */
+        Stripe<T> route(Object value, Comparator<Object> order){
+            int low = 0, high = this.splits.length;
+            while (low < high){
+                int middle = (low + high) >>> 1;
+                if (order.compare(value, this.splits[middle]) < 0) high = middle;
+                else low = middle + 1;
+            }
+            return this.stripes.get(low);
+        }
+
+        /**
+         * Makes a layout with one stripe replaced by two.
+         * @param stripe Stripe to replace, which must be in this layout.
+         * @param split Smallest value of the higher stripe.
+         * @param lower Stripe of the values less than the split.
+         * @param higher Stripe of the other values.
+         * @return New layout.
+         */
+        Layout<T> split(Stripe<T> stripe, Object split, Stripe<T> lower, Stripe<T> higher){
+            int index = this.stripes.indexOf(stripe);
+            List<Stripe<T>> stripes = new ArrayList<>(this.stripes);
+            stripes.set(index, lower);
+            stripes.add(index + 1, higher);
+            Object[] splits = new Object[this.splits.length + 1];
+            System.arraycopy(this.splits, 0, splits, 0, index);
+            splits[index] = split;
+            System.arraycopy(this.splits, index, splits, index + 1, this.splits.length - index);
+            return new Layout<>(splits, Collections.unmodifiableList(stripes));
+        }
+    }
+
+    /**
+     * Constructor to make an empty tree, with values in their natural order.
+     */
+    ConcurrentBalancedBST(){
+        this(null);
+    }
+
+    /**
+     * Constructor to make an empty tree, with values in the order of a comparator.
+     * @param comparator Order of the values, null for natural order.
+     */
+    @SuppressWarnings("unchecked")
+    ConcurrentBalancedBST(Comparator<? super T> comparator){
+        this.comparator = comparator;
+        this.order = comparator == null ? BalancedBST.NATURAL_ORDER : (Comparator<Object>) comparator;
+        Stripe<T> stripe = new Stripe<>(new PersistentBalancedBST<>(comparator));
+        this.layout = new AtomicReference<>(new Layout<>(new Object[0], Collections.singletonList(stripe)));
+    }
+
+    /**
+     * Get the comparator the values are ordered by.
+     * @return Comparator given when the tree was made, null for natural order.
+     */
+    Comparator<? super T> comparator(){
+        return this.comparator;
+    }
+
+    /**
+     * Add a node to the BST. Safe to call from any thread.
+     * @param value Value to be placed in node.
+     */
+    void addNode(T value){
+        while (true){
+            Layout<T> layout = this.layout.get();
+            Stripe<T> stripe = layout.route(value, this.order);
+            State<T> current = stripe.state.get();
+
+            // The stripe is being split or read with the writers stopped; wait for the new layout or the snapshot.
+            if (current.sealed()){
+                Thread.yield();
+                continue;
+            }
+            State<T> next = new State<>(current.version.add(value), 0, false);
+            if (stripe.state.compareAndSet(current, next)){
+                if (next.version.size() >= SPLIT_SIZE && layout.stripes.size() < MAX_STRIPES) this.split(stripe, next);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Add a batch of values to the BST, one at a time.
+     * @param values Values to be placed in the tree.
+     */
+    void addAll(Collection<? extends T> values){
+        for (T value : values) this.addNode(value);
+    }
+
+    /**
+     * Remove one occurrence of a value from the BST. Safe to call from any thread.
+     * @param value Value to be removed.
+     * @return True if the value was in the tree.
+     */
+    boolean remove(T value){
+        while (true){
+            Stripe<T> stripe = this.layout.get().route(value, this.order);
+            State<T> current = stripe.state.get();
+            if (current.sealed()){
+                Thread.yield();
+                continue;
+            }
+            PersistentBalancedBST<T> next = current.version.remove(value);
+            if (next == current.version) return false;
+            if (stripe.state.compareAndSet(current, new State<>(next, 0, false))) return true;
+        }
+    }
+
+    /**
+     * Splits a stripe in two at its middle value, if nothing has changed or sealed it since a state was published.
+     * Otherwise the split is left to the next update.
+     * @param stripe Stripe to split.
+     * @param state State of the stripe that was published.
+     */
+    private void split(Stripe<T> stripe, State<T> state){
+        PersistentBalancedBST<T> version = state.version;
+        // Split at the middle value, or past the smallest one if more than half the values are equal to it.
+        T split = version.select(version.size() / 2);
+        PersistentBalancedBST<T> lower = version.headTree(split);
+        if (lower.isEmpty()){
+            long smallest = version.getCount(split);
+            if (smallest == version.size()) return;
+            split = version.select(smallest);
+            lower = version.headTree(split);
+        }
+        PersistentBalancedBST<T> higher = version.tailTree(split);
+
+        // Seal the stripe against updates, then publish the layout with its two halves. Until then, readers
+        // still read the sealed version, which holds the same values as the two halves.
+        if (!stripe.state.compareAndSet(state, new State<>(version, 0, true))) return;
+        Stripe<T> low = new Stripe<>(lower), high = new Stripe<>(higher);
+        while (true){
+            Layout<T> current = this.layout.get();
+            if (this.layout.compareAndSet(current, current.split(stripe, split, low, high))) return;
+        }
+    }
+
+    /**
+     * Get the version of every stripe, all as they were at one moment. The states are read twice, and used if
+     * none changed in between; if writers keep changing them, every stripe is sealed against updates while the
+     * versions are read. Readers are never held up either way.
+     * @return Versions of the stripes, in order.
+     */
+    private List<PersistentBalancedBST<T>> collect(){
+        for (int attempt=0; attempt<SNAPSHOT_RETRIES; attempt++){
+            Layout<T> layout = this.layout.get();
+            List<State<T>> states = new ArrayList<>(layout.stripes.size());
+            for (Stripe<T> stripe : layout.stripes) states.add(stripe.state.get());
+
+            // The versions were all held at one moment if no state changed while they were read, and no split
+            // was published; a stripe sealed by a split holds its values until its layout is replaced.
+            boolean same = true;
+            for (int i=0; same && i<states.size(); i++) same = layout.stripes.get(i).state.get() == states.get(i);
+            if (same && layout == this.layout.get()) return versions(states);
+            Thread.yield();
+        }
+
+        // Writers kept changing the stripes; seal every one that is not already sealed by a split, read them, and
+        // take the seals off again. Other snapshots may seal the same stripes at the same time.
+        while (true){
+            Layout<T> layout = this.layout.get();
+            List<State<T>> states = new ArrayList<>(layout.stripes.size());
+            for (Stripe<T> stripe : layout.stripes){
+                State<T> state;
+                do state = stripe.state.get();
+                while (!state.split && !stripe.state.compareAndSet(state, new State<>(state.version, state.seals + 1, false)));
+                states.add(state);
+            }
+            boolean same = layout == this.layout.get();
+            for (int i=0; i<states.size(); i++) if (!states.get(i).split) unseal(layout.stripes.get(i));
+
+            // A split was published while the stripes were read; read the new layout. There are only so many splits.
+            if (same) return versions(states);
+        }
+    }
+
+    /**
+     * Takes a snapshot's seal off a stripe.
+     * @param stripe Stripe the snapshot sealed.
+     * @param <T> Type of the values.
+     */
+    private static <T> void unseal(Stripe<T> stripe){
+        State<T> state;
+        do state = stripe.state.get();
+        while (!stripe.state.compareAndSet(state, new State<>(state.version, state.seals - 1, false)));
+    }
+
+    /**
+     * Get the versions of states.
+     * @param states States of the stripes, in order.
+     * @param <T> Type of the values.
+     * @return Version of every state, in order.
+     */
+    private static <T> List<PersistentBalancedBST<T>> versions(List<State<T>> states){
+        List<PersistentBalancedBST<T>> versions = new ArrayList<>(states.size());
+        for (State<T> state : states) versions.add(state.version);
+        return versions;
+    }
+
+    /**
+     * Get the values of every stripe as one version, as they all were at one moment. It never changes, whatever
+     * other threads do afterwards, so every read of it agrees with every other.
+     * @return Current version of the tree.
+     */
+    PersistentBalancedBST<T> snapshot(){
+        List<PersistentBalancedBST<T>> versions = this.collect();
+        PersistentBalancedBST<T> snapshot = versions.get(0);
+        for (int i=1; i<versions.size(); i++) snapshot = snapshot.concat(versions.get(i));
+        return snapshot;
+    }
+
+    /**
+     * Get the number of times a value has been added to the tree.
+     * @param value Value to look for.
+     * @return Count of the value, 0 if it is not in the tree.
+     */
+    int getCount(T value){
+        while (true){
+            // A stripe sealed by a split still holds its values until the new layout is published; after that,
+            // the values may have changed in its halves, so they are read from the new layout.
+            Layout<T> layout = this.layout.get();
+            State<T> state = layout.route(value, this.order).state.get();
+            if (!state.split || layout == this.layout.get()) return state.version.getCount(value);
+        }
+    }
+
+    /**
+     * Checks if a value is in the tree.
+     * @param value Value to look for.
+     * @return True if the value has been added at least once.
+     */
+    boolean contains(T value){
+        return this.getCount(value) > 0;
+    }
+
+    /**
+     * Get the number of values in the tree, counting duplicates.
+     * @return Number of values added to the tree.
+     */
+    long size(){
+        long size = 0;
+        for (PersistentBalancedBST<T> version : this.collect()) size += version.size();
+        return size;
+    }
+
+    /**
+     * Get the number of stripes the values are split into.
+     * @return Number of stripes.
+     */
+    int stripes(){
+        return this.layout.get().stripes.size();
+    }
+
+    /**
+     * Get the height of the tree the stripes make when joined.
+     * @return Height of the tree.
+     */
+    int getHeight(){
+        return this.snapshot().getHeight();
+    }
+
+    /**
+     * Iterates over the values in order, repeating a value for each count of its node.
+     * The iterator sees the tree as it was when it was made, whatever other threads do afterwards.
+     * @return Iterator of the values.
+     */
+    public Iterator<T> iterator(){
+        return this.snapshot().iterator();
+    }
+
+    /**
+     * Checks the search order, AVL balance, heights and count totals of every node in every stripe, and that every
+     * stripe holds only values less than those of the stripes after it.
+     * @throws IllegalStateException If any of them is wrong.
+     */
+    void checkInvariants(){
+        PersistentBalancedBST<T> previous = null;
+        for (PersistentBalancedBST<T> version : this.collect()){
+            version.checkInvariants();
+            if (version.isEmpty()) continue;
+            if (previous != null && this.order.compare(previous.select(previous.size() - 1), version.select(0)) >= 0)
+                throw new IllegalStateException("Stripe starting at " + version.select(0) + " overlaps the one before it.");
+            previous = version;
+        }
+    }
+
+    /**
+     * Creates a string representation of the nodes in the tree.
+     * @return String of nodes in the tree, comma + space delimited.
+     */
+    public String toString(){
+        return this.snapshot().toString();
+    }
+}
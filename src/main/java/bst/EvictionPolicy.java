@@ -0,0 +1,29 @@
+package bst;
+
+/**
+ * Which values a BoundedBST evicts once it is over its bound.
+ * Every policy evicts a whole value, with all its counts, in O(log n).
+ */
+enum EvictionPolicy {
+
+    /**
+     * Evict the smallest value in the tree, for a window that slides towards larger values.
+     */
+    SMALLEST,
+
+    /**
+     * Evict the largest value in the tree, for a window that keeps the smallest values.
+     */
+    LARGEST,
+
+    /**
+     * Evict the value that was added or looked up longest ago.
+     */
+    LRU,
+
+    /**
+     * Evict the value with the lowest count, ie the one added the fewest times,
+     * and of those the one that was added or looked up longest ago.
+     */
+    LFU
+}
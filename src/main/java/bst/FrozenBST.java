@@ -0,0 +1,158 @@
+package bst;
+
+import java.util.Comparator;
+
+/**
+ * Class for an immutable snapshot of a BalancedBST, for long read-only stretches.
+ * The distinct values are stored in Eytzinger (level) order in one array: the root is at index 1 and the
+ * children of index k are at 2k and 2k+1. A lookup walks down by index arithmetic instead of following node
+ * references, and the top levels of the tree share a few cache lines. Made by BalancedBST.freeze().
+ * @param <T> Type of the values.
+ */
+public class FrozenBST<T> {
+    private final Object[] values; // Distinct values in level order, starting at index 1.
+    private final int[] counts; // Count of each value, at the same index.
+    private final int size; // Number of distinct values.
+    private final long total; // Number of values, counting duplicates.
+    private final Comparator<Object> order; // Order of the values, the same as the tree's.
+
+    /**
+     * Constructor to lay out a run list in level order.
+     * @param runs Run list of the values, in order.
+     */
+    FrozenBST(BalancedBST.Runs runs){
+        this.size = runs.size;
+        this.order = runs.order;
+        this.values = new Object[runs.size + 1];
+        this.counts = new int[runs.size + 1];
+        this.fill(runs, 0, 1);
+        long sum = 0;
+        for (int i=0; i<runs.size; i++) sum += runs.counts[i];
+        this.total = sum;
+    }
+
+    /**
+     * Copies runs into the subtree at an index, in order.
+     * @param runs Run list of the values.
+     * @param next Index of the next run to copy.
+     * @param k Index of the subtree root in level order.
+     * @return Index of the next run to copy after this subtree.
+     */
+    private int fill(BalancedBST.Runs runs, int next, int k){
+        if (k > this.size) return next;
+        next = this.fill(runs, next, 2*k);
+        this.values[k] = runs.values[next];
+        this.counts[k] = runs.counts[next];
+        return this.fill(runs, next + 1, 2*k + 1);
+    }
+
+    /**
+     * Finds the smallest value not less than a value (or greater than it, if strict).
+     * The descent always runs to the bottom of the tree, then climbs back to the last node where it went left.
+     * @param value Value to look for.
+     * @param strict If equal values should be skipped.
+     * @return Level-order index of the value, 0 if there is none.
+     */
+    private int lowerBound(T value, boolean strict){
+        int bias = strict ? 1 : 0;
+        int k = 1;
+        while (k <= this.size) k = 2*k + (this.order.compare(this.values[k], value) < bias ? 1 : 0);
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    /**
+     * Finds the node before another one in order.
+     * @param k Level-order index of the node, or 0 for the position after the largest value.
+     * @return Level-order index of the previous node, 0 if there is none.
+     */
+    private int predecessor(int k){
+        // Past the end, the previous node is the rightmost one.
+        if (k == 0){
+            if (this.size == 0) return 0;
+            k = 1;
+            while (2*k + 1 <= this.size) k = 2*k + 1;
+            return k;
+        }
+
+        // With a left subtree, it is the rightmost node in there.
+        if (2*k <= this.size){
+            k = 2*k;
+            while (2*k + 1 <= this.size) k = 2*k + 1;
+            return k;
+        }
+
+        // Otherwise climb while this is a left child, then once more to the parent.
+        return k >>> (Integer.numberOfTrailingZeros(k) + 1);
+    }
+
+    /**
+     * Get the value at a level-order index.
+     * @param k Level-order index, 0 for none.
+     * @return Value at the index, null if the index is 0.
+     */
+    @SuppressWarnings("unchecked")
+    private T valueAt(int k){
+        return k == 0 ? null : (T) this.values[k];
+    }
+
+    /**
+     * Get the number of times a value is in the snapshot.
+     * @param value Value to look for.
+     * @return Count of the value, 0 if it is not in the snapshot.
+     */
+    int getCount(T value){
+        int k = this.lowerBound(value, false);
+        return k != 0 && this.order.compare(value, this.values[k]) == 0 ? this.counts[k] : 0;
+    }
+
+    /**
+     * Checks if a value is in the snapshot.
+     * @param value Value to look for.
+     * @return True if the value is in the snapshot.
+     */
+    boolean contains(T value){
+        return this.getCount(value) > 0;
+    }
+
+    /**
+     * Get the smallest value greater than or equal to a value.
+     * @param value Value to look for.
+     * @return Ceiling of the value, null if there is none.
+     */
+    T ceiling(T value){
+        return this.valueAt(this.lowerBound(value, false));
+    }
+
+    /**
+     * Get the largest value less than or equal to a value.
+     * @param value Value to look for.
+     * @return Floor of the value, null if there is none.
+     */
+    T floor(T value){
+        return this.valueAt(this.predecessor(this.lowerBound(value, true)));
+    }
+
+    /**
+     * Get the number of distinct values in the snapshot.
+     * @return Number of distinct values.
+     */
+    int distinct(){
+        return this.size;
+    }
+
+    /**
+     * Get the number of values in the snapshot, counting duplicates.
+     * @return Number of values.
+     */
+    long size(){
+        return this.total;
+    }
+
+    /**
+     * Get the height of the implicit tree.
+     * @return Height of the tree.
+     */
+    int getHeight(){
+        return 32 - Integer.numberOfLeadingZeros(this.size);
+    }
+}
@@ -0,0 +1,370 @@
+package bst;
+
+import java.util.Arrays;
+
+/**
+ * Class for balanced binary search tree of int values, without boxing.
+ * Nodes are not objects: the key, count, height and children of each node are kept in parallel arrays,
+ * and nodes refer to each other by index. Index 0 is the empty node.
+ * This tree balances when a new node is added, using AVL rotations along the insert path, and rebuilds when a
+ * batch is added.
+ */
+public class IntBalancedBST {
+    private int[] keys; // Value of each node.
+    private int[] counts; // Count of each node.
+    private int[] heights; // Height of each node; the empty node has height 0.
+    private int[] left; // Index of the left child of each node.
+    private int[] right; // Index of the right child of each node.
+    private int size = 0; // Number of nodes in use, not counting the empty node.
+    private int root = 0; // Index of the root node.
+    private int nodeCount = 0;
+
+    /**
+     * Constructor to make a new IntBalancedBST with a root node of a passed value.
+     * @param valueOfRoot Value of the root of the BST.
+     */
+    IntBalancedBST(int valueOfRoot){
+        this();
+        this.addNode(valueOfRoot);
+    }
+
+    /**
+     * Constructor to make an empty IntBalancedBST.
+     */
+    IntBalancedBST(){
+        this.keys = new int[16];
+        this.counts = new int[16];
+        this.heights = new int[16];
+        this.left = new int[16];
+        this.right = new int[16];
+    }
+
+    /**
+     * Add a node to the BST.
+     * @param value Value to be placed in node.
+     */
+    void addNode(int value){
+        this.root = this.insert(this.root, value);
+        this.nodeCount++;
+    }
+
+    /**
+     * Add a batch of values to the BST. A sorted copy of the batch is merged with the values in the tree,
+     * and the tree is rebuilt perfectly balanced from the merged values in one linear pass.
+     * @param values Values to be placed in the tree.
+     */
+    void addAll(int[] values){
+        if (values.length == 0) return;
+
+        // Sort a copy of the batch, and take the values of the tree out in order.
+        int[] batch = values.clone();
+        Arrays.sort(batch);
+        int batchDistinct = 1;
+        for (int i=1; i<batch.length; i++) if (batch[i] != batch[i-1]) batchDistinct++;
+        int[] treeKeys = new int[this.size];
+        int[] treeCounts = new int[this.size];
+        this.fillRuns(this.root, treeKeys, treeCounts, 0);
+
+        // Merge both into new arrays, one node per distinct value in order, from index 1.
+        int capacity = Math.max(16, this.size + batchDistinct + 1);
+        int[] mergedKeys = new int[capacity];
+        int[] mergedCounts = new int[capacity];
+        int distinct = 0, i = 0, j = 0;
+        while (i < treeKeys.length || j < batch.length){
+            boolean fromTree = j == batch.length || (i < treeKeys.length && treeKeys[i] <= batch[j]);
+            int key = fromTree ? treeKeys[i] : batch[j];
+            if (distinct == 0 || mergedKeys[distinct] != key) mergedKeys[++distinct] = key;
+            mergedCounts[distinct] += fromTree ? treeCounts[i++] : 1;
+            if (!fromTree) j++;
+        }
+
+        // Rebuild the tree over the merged nodes.
+        this.keys = mergedKeys;
+        this.counts = mergedCounts;
+        this.heights = new int[capacity];
+        this.left = new int[capacity];
+        this.right = new int[capacity];
+        this.size = distinct;
+        this.root = this.build(1, distinct);
+        this.nodeCount += values.length;
+    }
+
+    /**
+     * Links a range of nodes, whose keys are in order, into a perfectly balanced subtree.
+     * @param from Index of the first node in the range.
+     * @param to Index of the last node in the range.
+     * @return Index of the subtree root, 0 if the range is empty.
+     */
+    private int build(int from, int to){
+        if (from > to) return 0;
+        int node = (from + to) >>> 1;
+        left[node] = this.build(from, node - 1);
+        right[node] = this.build(node + 1, to);
+        this.updateHeight(node);
+        return node;
+    }
+
+    /**
+     * Writes the key and count of a node and its children, in order, into arrays.
+     * @param node Index of the node.
+     * @param runKeys Array to write keys to.
+     * @param runCounts Array to write counts to.
+     * @param index Index in the arrays to start writing at.
+     * @return Index after the last node written.
+     */
+    private int fillRuns(int node, int[] runKeys, int[] runCounts, int index){
+        if (node == 0) return index;
+        index = this.fillRuns(left[node], runKeys, runCounts, index);
+        runKeys[index] = keys[node];
+        runCounts[index++] = counts[node];
+        return this.fillRuns(right[node], runKeys, runCounts, index);
+    }
+
+    /**
+     * Inserts a value under a node, rotating on the way back up to keep the subtree balanced.
+     * @param node Index of the subtree root, 0 if empty.
+     * @param value Value to be inserted.
+     * @return Index of the subtree root after any rotations.
+     */
+    private int insert(int node, int value){
+        // If the place is empty, make a new node there.
+        if (node == 0) return this.newNode(value);
+
+        // If they are equal, increase count. The shape of the tree does not change.
+        if (value == keys[node]){
+            counts[node]++;
+            return node;
+        }
+
+        // Otherwise, send it down the chain. The child is read into a local first,
+        // because the arrays may be replaced by larger ones while inserting.
+        if (value < keys[node]){
+            int child = this.insert(left[node], value);
+            left[node] = child;
+        }
+        else {
+            int child = this.insert(right[node], value);
+            right[node] = child;
+        }
+        return this.rebalance(node);
+    }
+
+    /**
+     * Makes a node with no children, growing the arrays if they are full.
+     * @param value Value of the node.
+     * @return Index of the new node.
+     */
+    private int newNode(int value){
+        if (size + 1 == keys.length){
+            int capacity = keys.length*2;
+            keys = Arrays.copyOf(keys, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            heights = Arrays.copyOf(heights, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+        }
+        int node = ++size;
+        keys[node] = value;
+        counts[node] = 1;
+        heights[node] = 1;
+        return node;
+    }
+
+    /**
+     * Resets the height of a node from the heights of its children.
+     * @param node Index of the node.
+     */
+    private void updateHeight(int node){
+        heights[node] = Math.max(heights[left[node]], heights[right[node]]) + 1;
+    }
+
+    /**
+     * Restores the AVL condition at a node, assuming both children already satisfy it.
+     * @param node Index of the node.
+     * @return Index of the subtree root after any rotations.
+     */
+    private int rebalance(int node){
+        this.updateHeight(node);
+        int balanceFactor = heights[left[node]] - heights[right[node]];
+
+        // Left side is too tall; rotate the left child first if it leans right.
+        if (balanceFactor > 1){
+            if (heights[left[left[node]]] < heights[right[left[node]]]) left[node] = this.rotateLeft(left[node]);
+            return this.rotateRight(node);
+        }
+
+        // Right side is too tall; rotate the right child first if it leans left.
+        if (balanceFactor < -1){
+            if (heights[right[right[node]]] < heights[left[right[node]]]) right[node] = this.rotateRight(right[node]);
+            return this.rotateLeft(node);
+        }
+        return node;
+    }
+
+    /**
+     * Rotates a node down to the right, making its left child the root of the subtree.
+     * @param node Index of the node.
+     * @return Index of the new subtree root.
+     */
+    private int rotateRight(int node){
+        int pivot = left[node];
+        left[node] = right[pivot];
+        right[pivot] = node;
+        this.updateHeight(node);
+        this.updateHeight(pivot);
+        return pivot;
+    }
+
+    /**
+     * Rotates a node down to the left, making its right child the root of the subtree.
+     * @param node Index of the node.
+     * @return Index of the new subtree root.
+     */
+    private int rotateLeft(int node){
+        int pivot = right[node];
+        right[node] = left[pivot];
+        left[pivot] = node;
+        this.updateHeight(node);
+        this.updateHeight(pivot);
+        return pivot;
+    }
+
+    /**
+     * Finds the node holding a value.
+     * @param value Value to look for.
+     * @return Index of the node, 0 if the value is not in the tree.
+     */
+    private int find(int value){
+        int node = this.root;
+        while (node != 0 && keys[node] != value) node = value < keys[node] ? left[node] : right[node];
+        return node;
+    }
+
+    /**
+     * Checks if a value is in the tree.
+     * @param value Value to look for.
+     * @return True if the value has been added at least once.
+     */
+    boolean contains(int value){
+        return this.find(value) != 0;
+    }
+
+    /**
+     * Get the number of times a value has been added to the tree.
+     * @param value Value to look for.
+     * @return Count of the value, 0 if it is not in the tree.
+     */
+    int getCount(int value){
+        return counts[this.find(value)];
+    }
+
+    /**
+     * Get the number of values in the tree, counting duplicates.
+     * @return Number of values added to the tree.
+     */
+    int size(){
+        return this.nodeCount;
+    }
+
+    /**
+     * Get the height of the tree.
+     * @return Height of the tree.
+     */
+    int getHeight(){
+        return heights[this.root];
+    }
+
+    /**
+     * Makes an array of the values in the tree, in order, with a value repeated for each count of its node.
+     * @return Array of the values in the tree.
+     */
+    int[] toInorderArray(){
+        int[] values = new int[this.nodeCount];
+        this.fillInorder(this.root, values, 0);
+        return values;
+    }
+
+    /**
+     * Writes the values of a node and its children, in order, into an array.
+     * @param node Index of the node.
+     * @param values Array to write to.
+     * @param index Index in the array to start writing at.
+     * @return Index after the last value written.
+     */
+    private int fillInorder(int node, int[] values, int index){
+        if (node == 0) return index;
+        index = this.fillInorder(left[node], values, index);
+        for (int i=0; i < counts[node]; i++) values[index++] = keys[node];
+        return this.fillInorder(right[node], values, index);
+    }
+
+    /**
+     * Get the tree in a two-dimensional array representation, with each row of the same height as a row in the matrix.
+     * Row i has 2^i entries; positions with no node hold 0, and can be told apart with toCountMatrix.
+     * @return Two-dimensional array representation of the tree.
+     */
+    int[][] toMatrix(){
+        int[][] values = new int[this.getHeight()][];
+        for (int i=0; i<values.length; i++) values[i] = new int[1 << i];
+        this.fillMatrix(this.root, 0, 0, values, null);
+        return values;
+    }
+
+    /**
+     * Get the counts of the tree's nodes in a two-dimensional array, laid out the same as toMatrix.
+     * Positions with no node hold 0.
+     * @return Two-dimensional array of node counts.
+     */
+    int[][] toCountMatrix(){
+        int[][] valueCounts = new int[this.getHeight()][];
+        for (int i=0; i<valueCounts.length; i++) valueCounts[i] = new int[1 << i];
+        this.fillMatrix(this.root, 0, 0, null, valueCounts);
+        return valueCounts;
+    }
+
+    /**
+     * Get the tree in a two-dimensional array representation, with each row of the same height as a row in the matrix.
+     * This methods represents the values as strings with a postfix denoting count of the node.
+     * @return Two-dimensional array representation of the tree.
+     */
+    String[][] toStringMatrix(){
+        int[][] values = this.toMatrix();
+        int[][] valueCounts = this.toCountMatrix();
+        String[][] strings = new String[values.length][];
+        for (int i=0; i<values.length; i++){
+            strings[i] = new String[values[i].length];
+            for (int j=0; j<values[i].length; j++)
+                strings[i][j] = valueCounts[i][j] == 0 ? "∅" : values[i][j] + " (x" + valueCounts[i][j] + ")";
+        }
+        return strings;
+    }
+
+    /**
+     * Writes the values and counts of a node and its children into their positions in matrices.
+     * @param node Index of the node.
+     * @param level Level of the node, 0 for the root.
+     * @param position Position of the node within its level.
+     * @param values Matrix to write values to, or null.
+     * @param valueCounts Matrix to write counts to, or null.
+     */
+    private void fillMatrix(int node, int level, int position, int[][] values, int[][] valueCounts){
+        if (node == 0) return;
+        if (values != null) values[level][position] = keys[node];
+        if (valueCounts != null) valueCounts[level][position] = counts[node];
+        this.fillMatrix(left[node], level + 1, position*2, values, valueCounts);
+        this.fillMatrix(right[node], level + 1, position*2 + 1, values, valueCounts);
+    }
+
+    /**
+     * Creates a string representation of the nodes in the tree.
+     * @return String of nodes in the tree, comma + space delimited.
+     */
+    public String toString(){
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int value : this.toInorderArray()){
+            if (stringBuilder.length() > 0) stringBuilder.append(", ");
+            stringBuilder.append(value);
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package bst;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts values to and from a fixed number of bytes, so they can be stored in fixed-size records.
+ * @param <T> Type of the values.
+ */
+interface KeyCodec<T> {
+
+    /**
+     * Codec for Integer values, four bytes each.
+     */
+    KeyCodec<Integer> INTEGER = new KeyCodec<Integer>() {
+        public int width(){
+            return Integer.BYTES;
+        }
+
+        public void write(ByteBuffer buffer, int offset, Integer value){
+            buffer.putInt(offset, value);
+        }
+
+        public Integer read(ByteBuffer buffer, int offset){
+            return buffer.getInt(offset);
+        }
+    };
+
+    /**
+     * Codec for Long values, eight bytes each.
+     */
+    KeyCodec<Long> LONG = new KeyCodec<Long>() {
+        public int width(){
+            return Long.BYTES;
+        }
+
+        public void write(ByteBuffer buffer, int offset, Long value){
+            buffer.putLong(offset, value);
+        }
+
+        public Long read(ByteBuffer buffer, int offset){
+            return buffer.getLong(offset);
+        }
+    };
+
+    /**
+     * Codec for Double values, eight bytes each.
+     */
+    KeyCodec<Double> DOUBLE = new KeyCodec<Double>() {
+        public int width(){
+            return Double.BYTES;
+        }
+
+        public void write(ByteBuffer buffer, int offset, Double value){
+            buffer.putDouble(offset, value);
+        }
+
+        public Double read(ByteBuffer buffer, int offset){
+            return buffer.getDouble(offset);
+        }
+    };
+
+    /**
+     * Get the number of bytes every value takes.
+     * @return Width of a value in bytes.
+     */
+    int width();
+
+    /**
+     * Writes a value into a buffer without moving its position.
+     * @param buffer Buffer to write to.
+     * @param offset Index in the buffer of the first byte.
+     * @param value Value to be written.
+     */
+    void write(ByteBuffer buffer, int offset, T value);
+
+    /**
+     * Reads a value from a buffer without moving its position.
+     * @param buffer Buffer to read from.
+     * @param offset Index in the buffer of the first byte.
+     * @return Value that was read.
+     */
+    T read(ByteBuffer buffer, int offset);
+}
@@ -0,0 +1,20 @@
+package bst;
+
+/**
+ * Receives the nodes of a tree one at a time, in level order, from BalancedBST.exportLevelOrder.
+ * Only nodes that exist are visited; missing children leave gaps in the positions of the next level.
+ * Trees of more than BalancedBST.MAX_EXPORT_LEVELS levels are refused, as their positions would not fit a long.
+ * @param <T> Type of the values.
+ */
+@FunctionalInterface
+interface LevelOrderVisitor<T> {
+
+    /**
+     * Called once for every node, level by level from the root, left to right within a level.
+     * @param level Depth of the node, the root being zero.
+     * @param position Index of the node in a full level of 2^level nodes; its parent is at position / 2.
+     * @param value Value of the node.
+     * @param count Number of times the value occurs.
+     */
+    void visit(int level, long position, T value, int count);
+}
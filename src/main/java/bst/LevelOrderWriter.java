@@ -0,0 +1,131 @@
+package bst;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes the level-order export of a tree as text for other tools, one node at a time as it is visited.
+ * Nothing is collected first, so the output can be as large as the writer allows.
+ */
+final class LevelOrderWriter implements LevelOrderVisitor<Object> {
+
+    /**
+     * Text formats the export can be written in.
+     */
+    enum Format {
+        /** One line per node under a header line: level,position,value,count. */
+        CSV,
+        /** An array of objects with level, position, value and count members. */
+        JSON,
+        /** A Graphviz digraph with a node per tree node and an edge from each parent. */
+        DOT
+    }
+
+    private final Format format; // Format being written.
+    private final Writer out; // Writer to write to.
+    private boolean first = true; // If no node has been written yet.
+
+    /**
+     * Constructor to write one export.
+     * @param format Format to write.
+     * @param out Writer to write to.
+     */
+    private LevelOrderWriter(Format format, Writer out){
+        this.format = format;
+        this.out = out;
+    }
+
+    /**
+     * Writes every node of a tree in level order. The writer is flushed but not closed.
+     * Pass a buffered writer; the output is written in many small pieces.
+     * @param tree Tree to be written.
+     * @param format Format to write.
+     * @param out Writer to write to.
+     * @throws IOException If the writer fails.
+     */
+    static void write(BalancedBST<?> tree, Format format, Writer out) throws IOException {
+        LevelOrderWriter writer = new LevelOrderWriter(format, out);
+        try {
+            // Write the opening, the nodes as the tree hands them over, then the closing.
+            if (format == Format.CSV) out.write("level,position,value,count\n");
+            else if (format == Format.JSON) out.write("[");
+            else out.write("digraph BST {\n");
+            tree.exportLevelOrder(writer);
+            if (format == Format.JSON) out.write(writer.first ? "]\n" : "\n]\n");
+            else if (format == Format.DOT) out.write("}\n");
+            out.flush();
+        }
+        // The visitor can not throw IOException, so it is carried out unchecked.
+        catch (UncheckedIOException e){
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes one node in the chosen format.
+     * @param level Depth of the node, the root being zero.
+     * @param position Index of the node in a full level.
+     * @param value Value of the node.
+     * @param count Number of times the value occurs.
+     */
+    public void visit(int level, long position, Object value, int count){
+        try {
+            switch (this.format){
+                case CSV:
+                    this.out.write(level + "," + position + "," + csv(String.valueOf(value)) + "," + count + "\n");
+                    break;
+                case JSON:
+                    this.out.write((this.first ? "\n  " : ",\n  ") + "{\"level\": " + level + ", \"position\": " + position
+                            + ", \"value\": " + json(value) + ", \"count\": " + count + "}");
+                    break;
+                default:
+                    String id = "n" + level + "_" + position;
+                    this.out.write("  " + id + " [label=" + quote(value + (count > 1 ? " (x" + count + ")" : "")) + "];\n");
+                    if (level > 0) this.out.write("  n" + (level - 1) + "_" + (position / 2) + " -> " + id + ";\n");
+            }
+            this.first = false;
+        }
+        catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Quotes a CSV field if it holds a comma, quote or line break.
+     * @param text Field to be written.
+     * @return Field as it should appear in the CSV.
+     */
+    private static String csv(String text){
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) return text;
+        return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Makes a JSON value: finite numbers as they are, anything else as a string.
+     * @param value Value to be written.
+     * @return JSON text of the value.
+     */
+    private static String json(Object value){
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) return value.toString();
+        if (value instanceof Number && !Double.isNaN(((Number) value).doubleValue()) && !Double.isInfinite(((Number) value).doubleValue())) return value.toString();
+        return quote(String.valueOf(value));
+    }
+
+    /**
+     * Makes a double-quoted string with backslash escapes, which is valid in both JSON and DOT.
+     * @param text Text to be quoted.
+     * @return Quoted text.
+     */
+    private static String quote(String text){
+        StringBuilder builder = new StringBuilder(text.length() + 2).append('"');
+        for (int i=0; i<text.length(); i++){
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') builder.append('\\').append(c);
+            else if (c == '\n') builder.append("\\n");
+            else if (c < 0x20) builder.append(String.format("\\u%04x", (int) c));
+            else builder.append(c);
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,453 @@
+package bst;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless load driver: fills a tree with keys from a chosen distribution, then runs a timed mix of operations
+ * on a number of threads, and prints throughput, latency percentiles and the final shape of the tree.
+ * <p>
+ * A BalancedBST is shared between threads behind one lock. A ConcurrentBalancedBST is shared without one,
+ * and is checked afterwards for its invariants and for losing no insert, as a stress test.
+ */
+class LoadDriver {
+
+    static final int DEFAULT_NODES = 100000; // Keys loaded when --nodes is not given.
+    static final String USAGE = "Usage: java -jar binary-search-tree.jar [options]\n"
+            + "  --nodes N            Keys inserted before the timed run (default " + DEFAULT_NODES + ").\n"
+            + "  --ops N              Operations in the timed run (default: same as --nodes).\n"
+            + "  --distribution D     uniform, zipf, sequential or duplicates (default uniform).\n"
+            + "  --zipf-exponent S    Skew of the zipf distribution (default 1.0).\n"
+            + "  --range R            Keys are drawn from 0 to R-1 (default 100).\n"
+            + "  --seed S             Seed of the random keys (default: random, and printed).\n"
+            + "  --threads T          Threads running the timed operations (default 1).\n"
+            + "  --mix M              Percentages of operations (default insert=60,lookup=30,remove=5,range=5,\n"
+            + "                       or insert=60,lookup=40 for a concurrent tree).\n"
+            + "  --tree K             balanced or concurrent (default balanced). concurrent allows insert and lookup only.\n"
+            + "  --policy P           Rebalancing policy of a balanced tree: avl, eager, scapegoat or deferred (default avl).\n"
+            + "  --gui                Show the tree in a window afterwards; asks for the node count if --nodes is not given.\n"
+            + "  --help               Print this message.";
+
+    private static final String[] OPERATIONS = {"insert", "lookup", "remove", "range"};
+    private static final int INSERT = 0, LOOKUP = 1, REMOVE = 2, RANGE = 3; // Indexes into OPERATIONS.
+
+    /**
+     * Distributions keys are drawn from.
+     */
+    enum Distribution {
+        /** Every key in the range equally likely. */
+        UNIFORM,
+        /** Key k drawn with probability proportional to 1 / (k + 1)^s, so a few small keys are hot. */
+        ZIPF,
+        /** Keys 0, 1, 2, ... in turn across all threads, wrapping at the end of the range. */
+        SEQUENTIAL,
+        /** Key 0 every time. */
+        DUPLICATES
+    }
+
+    /**
+     * Settings of a run, parsed from the command line.
+     */
+    static final class Options {
+        int nodes = -1; // Negative until set, meaning DEFAULT_NODES, or a prompt when only the GUI is asked for.
+        long ops = -1; // Negative until set, meaning the same as nodes.
+        Distribution distribution = Distribution.UNIFORM;
+        double zipfExponent = 1.0;
+        int range = 100;
+        long seed = System.nanoTime();
+        int threads = 1;
+        int[] mix; // Percentage of each operation, in the order of OPERATIONS; null until set.
+        boolean concurrent = false;
+        RebalancePolicy policy = RebalancePolicy.AVL;
+        boolean gui = false;
+        boolean help = false;
+
+        /**
+         * Parses the command line.
+         * @param args String[] of commandline args.
+         * @return Settings of the run.
+         * @throws IllegalArgumentException If an option is unknown, is missing its value, or has a bad value.
+         */
+        static Options parse(String[] args){
+            Options options = new Options();
+            for (int i=0; i<args.length; i++){
+                String name = args[i];
+                if (name.equals("--gui")) options.gui = true;
+                else if (name.equals("--help") || name.equals("-h")) options.help = true;
+                else {
+                    if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + name);
+                    String value = args[++i];
+                    try {
+                        switch (name){
+                            case "--nodes": options.nodes = nonNegative(name, Integer.parseInt(value)); break;
+                            case "--ops": options.ops = nonNegative(name, Long.parseLong(value)); break;
+                            case "--distribution": options.distribution = Distribution.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                            case "--zipf-exponent": options.zipfExponent = Double.parseDouble(value); break;
+                            case "--range": options.range = Integer.parseInt(value); break;
+                            case "--seed": options.seed = Long.parseLong(value); break;
+                            case "--threads": options.threads = Integer.parseInt(value); break;
+                            case "--mix": options.mix = parseMix(value); break;
+                            case "--tree": options.concurrent = parseTree(value); break;
+                            case "--policy": options.policy = RebalancePolicy.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                            default: throw new IllegalArgumentException("Unknown option " + name);
+                        }
+                    }
+                    catch (NumberFormatException e){
+                        throw new IllegalArgumentException("Bad number for " + name + ": " + value);
+                    }
+                }
+            }
+
+            // Check the settings that depend on each other.
+            if (options.range < 1) throw new IllegalArgumentException("--range must be at least 1.");
+            if (options.threads < 1) throw new IllegalArgumentException("--threads must be at least 1.");
+            if (!(options.zipfExponent > 0)) throw new IllegalArgumentException("--zipf-exponent must be above 0.");
+            if (options.mix == null) options.mix = options.concurrent ? new int[]{60, 40, 0, 0} : new int[]{60, 30, 5, 5};
+            if (options.concurrent && (options.mix[REMOVE] > 0 || options.mix[RANGE] > 0))
+                throw new IllegalArgumentException("A concurrent tree only allows insert and lookup in --mix.");
+            if (options.concurrent && options.gui) throw new IllegalArgumentException("--gui can only show a balanced tree.");
+            return options;
+        }
+
+        /**
+         * Checks that a number is not negative.
+         * @param name Option the number is for.
+         * @param value Number to check.
+         * @return The number.
+         * @throws IllegalArgumentException If the number is negative.
+         */
+        private static int nonNegative(String name, int value){
+            if (value < 0) throw new IllegalArgumentException(name + " must not be negative.");
+            return value;
+        }
+
+        /**
+         * Checks that a number is not negative.
+         * @param name Option the number is for.
+         * @param value Number to check.
+         * @return The number.
+         * @throws IllegalArgumentException If the number is negative.
+         */
+        private static long nonNegative(String name, long value){
+            if (value < 0) throw new IllegalArgumentException(name + " must not be negative.");
+            return value;
+        }
+
+        /**
+         * Parses an operation mix such as insert=60,lookup=40. Operations left out get zero.
+         * @param text Mix to parse.
+         * @return Percentage of each operation, in the order of OPERATIONS.
+         * @throws IllegalArgumentException If an operation is unknown or the percentages do not add up to 100.
+         */
+        private static int[] parseMix(String text){
+            int[] mix = new int[OPERATIONS.length];
+            for (String part : text.split(",")){
+                String[] pair = part.split("=");
+                int index = pair.length == 2 ? Arrays.asList(OPERATIONS).indexOf(pair[0].trim()) : -1;
+                if (index < 0) throw new IllegalArgumentException("Bad --mix entry: " + part);
+                mix[index] = nonNegative("--mix", Integer.parseInt(pair[1].trim()));
+            }
+            if (Arrays.stream(mix).sum() != 100) throw new IllegalArgumentException("--mix must add up to 100: " + text);
+            return mix;
+        }
+
+        /**
+         * Parses the kind of tree.
+         * @param text balanced or concurrent.
+         * @return True for a concurrent tree.
+         * @throws IllegalArgumentException If the kind is unknown.
+         */
+        private static boolean parseTree(String text){
+            if (text.equals("balanced")) return false;
+            if (text.equals("concurrent")) return true;
+            throw new IllegalArgumentException("Bad --tree: " + text);
+        }
+    }
+
+    private final Options options; // Settings of the run.
+    private final AtomicLong sequence = new AtomicLong(); // Next key of the sequential distribution.
+    private final ZipfSampler zipf; // Sampler of the zipf distribution, null for other distributions.
+    private BalancedBST<Integer> tree; // Tree under load when it is not concurrent.
+    private ConcurrentBalancedBST<Integer> concurrentTree; // Tree under load when it is concurrent.
+    private TreeMetrics metrics; // Metrics of a balanced tree.
+
+    /**
+     * Constructor to set up a run.
+     * @param options Settings of the run.
+     */
+    LoadDriver(Options options){
+        if (options.nodes < 0) options.nodes = DEFAULT_NODES;
+        if (options.ops < 0) options.ops = options.nodes;
+        this.options = options;
+        this.zipf = options.distribution == Distribution.ZIPF ? new ZipfSampler(options.range, options.zipfExponent) : null;
+    }
+
+    /**
+     * Get the balanced tree the run built, for showing it afterwards.
+     * @return Tree of the run, null if the run used a concurrent tree.
+     */
+    BalancedBST<Integer> getTree(){
+        return this.tree;
+    }
+
+    /**
+     * Draws the next key.
+     * @param random Random of the calling thread.
+     * @return Key in the range.
+     */
+    private int nextKey(Random random){
+        switch (this.options.distribution){
+            case ZIPF: return this.zipf.sample(random) - 1;
+            case SEQUENTIAL: return (int) (this.sequence.getAndIncrement() % this.options.range);
+            case DUPLICATES: return 0;
+            default: return random.nextInt(this.options.range);
+        }
+    }
+
+    /**
+     * Runs the load and the timed operations, then prints the results.
+     * @param out Stream to print to.
+     * @throws InterruptedException If interrupted while waiting for the threads.
+     */
+    void run(PrintStream out) throws InterruptedException {
+        Options o = this.options;
+        out.println("Tree " + (o.concurrent ? "concurrent" : "balanced, policy " + o.policy.name().toLowerCase(Locale.ROOT))
+                + ", distribution " + o.distribution.name().toLowerCase(Locale.ROOT) + ", range " + o.range + ", seed " + o.seed
+                + ", threads " + o.threads + ", mix " + mixString(o.mix));
+
+        // Make the tree.
+        if (o.concurrent) this.concurrentTree = new ConcurrentBalancedBST<>();
+        else {
+            this.tree = new BalancedBST<>();
+            this.tree.setRebalancePolicy(o.policy);
+            this.metrics = TreeMetrics.attach(this.tree);
+        }
+
+        // Load the tree on this thread.
+        Random random = new Random(o.seed);
+        long start = System.nanoTime();
+        for (int i=0; i<o.nodes; i++) this.insert(this.nextKey(random));
+        long loadNanos = System.nanoTime() - start;
+        out.printf("Loaded %d keys in %.1f ms (%.0f ops/s)%n", o.nodes, loadNanos / 1e6, o.nodes / Math.max(loadNanos / 1e9, 1e-9));
+
+        // Split the operations between the threads, each with its own random and latency log.
+        Worker[] workers = new Worker[o.threads];
+        Thread[] threads = new Thread[o.threads];
+        for (int i=0; i<o.threads; i++){
+            long share = o.ops / o.threads + (i < o.ops % o.threads ? 1 : 0);
+            workers[i] = new Worker(new Random(o.seed + i + 1), share);
+            threads[i] = new Thread(workers[i], "load-" + i);
+        }
+        start = System.nanoTime();
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        long runNanos = System.nanoTime() - start;
+        out.printf("Ran %d operations on %d thread(s) in %.1f ms (%.0f ops/s)%n", o.ops, o.threads, runNanos / 1e6, o.ops / Math.max(runNanos / 1e9, 1e-9));
+
+        // Print the latency of each kind of operation.
+        out.printf("%-8s %10s %10s %10s %10s %10s %10s%n", "op", "count", "mean us", "p50 us", "p90 us", "p99 us", "max us");
+        long inserted = 0;
+        for (int kind=0; kind<OPERATIONS.length; kind++){
+            int count = 0;
+            for (Worker worker : workers) count += worker.counts[kind];
+            if (count == 0) continue;
+            long[] latencies = new long[count];
+            int at = 0;
+            for (Worker worker : workers){
+                System.arraycopy(worker.latencies[kind], 0, latencies, at, worker.counts[kind]);
+                at += worker.counts[kind];
+            }
+            Arrays.sort(latencies);
+            out.printf("%-8s %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n", OPERATIONS[kind], count, Arrays.stream(latencies).average().orElse(0) / 1e3,
+                    percentile(latencies, 0.5) / 1e3, percentile(latencies, 0.9) / 1e3, percentile(latencies, 0.99) / 1e3, latencies[count-1] / 1e3);
+            if (kind == INSERT) inserted = count;
+        }
+
+        // Print the final shape of the tree, checking a concurrent one lost nothing and kept its invariants.
+        if (o.concurrent){
+            long expected = o.nodes + inserted;
+            out.println("Tree: size=" + this.concurrentTree.size() + ", height=" + this.concurrentTree.getHeight());
+            this.concurrentTree.checkInvariants();
+            if (this.concurrentTree.size() != expected) throw new IllegalStateException("Tree holds " + this.concurrentTree.size() + " values, expected " + expected);
+            out.println("Invariants: ok");
+        }
+        else out.println("Tree: size=" + this.tree.size() + ", distinct=" + this.tree.distinct() + ", " + this.metrics);
+    }
+
+    /**
+     * Inserts a key into whichever tree is under load.
+     * @param key Key to insert.
+     */
+    private void insert(int key){
+        if (this.concurrentTree != null) this.concurrentTree.addNode(key);
+        else this.tree.addNode(key);
+    }
+
+    /**
+     * Runs one operation on the tree. A balanced tree is locked for the operation; a concurrent one is not.
+     * @param kind Index of the operation in OPERATIONS.
+     * @param key Key of the operation.
+     */
+    private void operate(int kind, int key){
+        if (this.concurrentTree != null){
+            if (kind == INSERT) this.concurrentTree.addNode(key);
+            else this.concurrentTree.contains(key);
+            return;
+        }
+        synchronized (this.tree){
+            switch (kind){
+                case INSERT: this.tree.addNode(key); break;
+                case LOOKUP: this.tree.contains(key); break;
+                case REMOVE: this.tree.remove(key); break;
+                default: this.tree.countInRange(key, (int) Math.min((long) key + Math.max(this.options.range / 100, 1), Integer.MAX_VALUE)); break;
+            }
+        }
+    }
+
+    /**
+     * Thread body that runs its share of the operations and logs the time of each.
+     */
+    private final class Worker implements Runnable {
+        private final Random random; // Random of this thread.
+        private final long operations; // Number of operations to run.
+        private final long[][] latencies = new long[OPERATIONS.length][]; // Time of each operation, by kind.
+        private final int[] counts = new int[OPERATIONS.length]; // Number of operations of each kind run.
+
+        /**
+         * Constructor to set up a thread's share.
+         * @param random Random of this thread.
+         * @param operations Number of operations to run.
+         */
+        Worker(Random random, long operations){
+            this.random = random;
+            this.operations = operations;
+            for (int kind=0; kind<OPERATIONS.length; kind++) this.latencies[kind] = new long[16];
+        }
+
+        public void run(){
+            int[] mix = LoadDriver.this.options.mix;
+            for (long i=0; i<this.operations; i++){
+                // Pick the operation by the mix, then time it.
+                int roll = this.random.nextInt(100), kind = 0;
+                while (roll >= mix[kind]) roll -= mix[kind++];
+                int key = LoadDriver.this.nextKey(this.random);
+                long start = System.nanoTime();
+                LoadDriver.this.operate(kind, key);
+                long nanos = System.nanoTime() - start;
+
+                // Log the time, growing the log if it is full.
+                if (this.counts[kind] == this.latencies[kind].length) this.latencies[kind] = Arrays.copyOf(this.latencies[kind], this.counts[kind] * 2);
+                this.latencies[kind][this.counts[kind]++] = nanos;
+            }
+        }
+    }
+
+    /**
+     * Get a percentile of sorted times.
+     * @param sorted Times in ascending order, not empty.
+     * @param fraction Fraction of times that are no longer, such as 0.99.
+     * @return Time at the percentile.
+     */
+    private static long percentile(long[] sorted, double fraction){
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Makes the text form of an operation mix.
+     * @param mix Percentage of each operation.
+     * @return Mix such as insert=60,lookup=40.
+     */
+    private static String mixString(int[] mix){
+        StringJoiner joiner = new StringJoiner(",");
+        for (int kind=0; kind<mix.length; kind++) if (mix[kind] > 0) joiner.add(OPERATIONS[kind] + "=" + mix[kind]);
+        return joiner.toString();
+    }
+
+    /**
+     * Samples ranks 1 to n with probability proportional to 1 / rank^s in constant time and memory,
+     * by rejection-inversion (Hormann and Derflinger, 1996).
+     */
+    static final class ZipfSampler {
+        private final int n; // Largest rank.
+        private final double exponent; // Skew s.
+        private final double hIntegralX1; // H(1.5) - 1.
+        private final double hIntegralN; // H(n + 0.5).
+        private final double s; // Squeeze bound that accepts most samples without evaluating H.
+
+        /**
+         * Constructor to set the ranks and skew.
+         * @param n Largest rank, at least 1.
+         * @param exponent Skew s, above 0.
+         */
+        ZipfSampler(int n, double exponent){
+            this.n = n;
+            this.exponent = exponent;
+            this.hIntegralX1 = this.hIntegral(1.5) - 1;
+            this.hIntegralN = this.hIntegral(n + 0.5);
+            this.s = 2 - this.hIntegralInverse(this.hIntegral(2.5) - this.h(2));
+        }
+
+        /**
+         * Draws a rank.
+         * @param random Random to draw with.
+         * @return Rank from 1 to n.
+         */
+        int sample(Random random){
+            while (true){
+                double u = this.hIntegralN + random.nextDouble() * (this.hIntegralX1 - this.hIntegralN);
+                double x = this.hIntegralInverse(u);
+                int k = (int) Math.max(1, Math.min(this.n, (long) (x + 0.5)));
+                if (k - x <= this.s || u >= this.hIntegral(k + 0.5) - this.h(k)) return k;
+            }
+        }
+
+        /**
+         * The unnormalised probability, h(x) = 1 / x^s.
+         * @param x Point to evaluate at.
+         * @return Value of h.
+         */
+        private double h(double x){
+            return Math.exp(-this.exponent * Math.log(x));
+        }
+
+        /**
+         * An integral of h, H(x) = (x^(1-s) - 1) / (1 - s), or log(x) when s is 1.
+         * @param x Point to evaluate at.
+         * @return Value of H.
+         */
+        private double hIntegral(double x){
+            double logX = Math.log(x);
+            return expm1OverX((1 - this.exponent) * logX) * logX;
+        }
+
+        /**
+         * The inverse of H.
+         * @param x Point to evaluate at.
+         * @return Value of the inverse.
+         */
+        private double hIntegralInverse(double x){
+            double t = Math.max(x * (1 - this.exponent), -1);
+            return Math.exp(log1pOverX(t) * x);
+        }
+
+        /**
+         * Computes (e^x - 1) / x, accurate near zero.
+         * @param x Point to evaluate at.
+         * @return Value of the function.
+         */
+        private static double expm1OverX(double x){
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x / 2 * (1 + x / 3 * (1 + x / 4));
+        }
+
+        /**
+         * Computes log(1 + x) / x, accurate near zero.
+         * @param x Point to evaluate at.
+         * @return Value of the function.
+         */
+        private static double log1pOverX(double x){
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+    }
+}
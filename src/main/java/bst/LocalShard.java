@@ -0,0 +1,121 @@
+package bst;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shard that keeps its values in a BalancedBST in this process. Every call runs as a task on the shard's own
+ * single thread, so the tree is only ever touched by that thread and needs no lock.
+ * @param <T> Type of the values.
+ */
+class LocalShard<T> implements Shard<T> {
+    private BalancedBST<T> tree; // Values of the shard, only used on the shard's thread.
+    private final Comparator<Object> order; // Order of the values.
+    private final ExecutorService executor; // Thread the tree is used on.
+    private final boolean ownsExecutor; // If closing the shard should shut the executor down.
+
+    /**
+     * Constructor to make an empty shard with a thread of its own.
+     * @param comparator Order of the values, null for natural order.
+     * @param name Name of the shard's thread.
+     */
+    LocalShard(Comparator<? super T> comparator, String name){
+        this(comparator, Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * Constructor to make an empty shard that runs on a given executor, which it does not shut down.
+     * @param comparator Order of the values, null for natural order.
+     * @param executor Executor that runs one task at a time, in the order given.
+     */
+    LocalShard(Comparator<? super T> comparator, ExecutorService executor){
+        this(comparator, executor, false);
+    }
+
+    /**
+     * Constructor to make an empty shard.
+     * @param comparator Order of the values, null for natural order.
+     * @param executor Executor that runs one task at a time, in the order given.
+     * @param ownsExecutor If closing the shard should shut the executor down.
+     */
+    @SuppressWarnings("unchecked")
+    private LocalShard(Comparator<? super T> comparator, ExecutorService executor, boolean ownsExecutor){
+        this.tree = new BalancedBST<>(comparator);
+        this.order = comparator == null ? BalancedBST.NATURAL_ORDER : (Comparator<Object>) comparator;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    public CompletableFuture<Void> addAll(List<? extends T> values){
+        return CompletableFuture.runAsync(() -> {
+            // A batch small next to the tree is cheaper to add one value at a time, k log n, than by merging it
+            // with the whole tree and rebuilding, n + k.
+            int distinct = this.tree.distinct();
+            if ((long) values.size() * (32 - Integer.numberOfLeadingZeros(distinct)) < distinct) for (T value : values) this.tree.addNode(value);
+            else this.tree.addAll(values);
+        }, this.executor);
+    }
+
+    public CompletableFuture<Boolean> remove(T value){
+        return CompletableFuture.supplyAsync(() -> this.tree.remove(value), this.executor);
+    }
+
+    public CompletableFuture<Integer> getCount(T value){
+        return CompletableFuture.supplyAsync(() -> this.tree.getCount(value), this.executor);
+    }
+
+    public CompletableFuture<ShardRuns<T>> runs(){
+        return CompletableFuture.supplyAsync(() -> this.collect(this.tree.firstNode(), null), this.executor);
+    }
+
+    public CompletableFuture<ShardRuns<T>> runs(T low, T high){
+        return CompletableFuture.supplyAsync(() -> {
+            if (this.order.compare(low, high) > 0) return new ShardRuns<>(1);
+            return this.collect(this.tree.ceilingNode(low), high);
+        }, this.executor);
+    }
+
+    public CompletableFuture<List<T>> sample(int count){
+        return CompletableFuture.supplyAsync(() -> {
+            int size = this.tree.size();
+            List<T> sample = new ArrayList<>(Math.min(count, size));
+            for (int i=0; i<count && i<size; i++) sample.add(this.tree.select((int) ((long) i * size / Math.min(count, size))));
+            return sample;
+        }, this.executor);
+    }
+
+    public CompletableFuture<Void> load(ShardRuns<T> runs){
+        return CompletableFuture.runAsync(() -> {
+            BalancedBST.Runs treeRuns = new BalancedBST.Runs(runs.size(), false, this.order);
+            for (int i=0; i<runs.size(); i++) treeRuns.add(runs.value(i), runs.count(i));
+            this.tree = BalancedBST.fromRuns(treeRuns);
+        }, this.executor);
+    }
+
+    /**
+     * Copies the nodes from one node on, in order, one run per node with its count.
+     * @param node Node of the first value, null for none.
+     * @param high Largest value to copy, null for every value after the node.
+     * @return Run list of the values.
+     */
+    private ShardRuns<T> collect(BalancedBST<T>.Node node, T high){
+        ShardRuns<T> runs = new ShardRuns<>(16);
+        for (; node != null; node = node.successor()){
+            if (high != null && this.order.compare(node.getValue(), high) > 0) break;
+            runs.add(node.getValue(), node.getCount());
+        }
+        return runs;
+    }
+
+    public void close(){
+        if (this.ownsExecutor) this.executor.shutdown();
+    }
+}
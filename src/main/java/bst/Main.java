@@ -0,0 +1,363 @@
+package bst;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This program builds a binary search tree under a configurable load and prints how it performed.
+ * With --gui it also shows the tree, first asking for a count of nodes with a JOptionPane if none was given.
+ */
+public class Main {
+
+    /**
+     * This is the main method that runs on program execution.
+     * Runs the headless load driver with the given options, and opens a window only when asked with --gui.
+     * @param args String[] of commandline args; --help lists them.
+     * @throws InterruptedException If interrupted while waiting for the load threads.
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        // Parse the options, printing the usage if they are not valid.
+        LoadDriver.Options options;
+        try {
+            options = LoadDriver.Options.parse(args);
+        }
+        catch (IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            System.err.println(LoadDriver.USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.help){
+            System.out.println(LoadDriver.USAGE);
+            return;
+        }
+        if (options.gui && GraphicsEnvironment.isHeadless()){
+            System.err.println("--gui needs a display.");
+            System.exit(2);
+        }
+
+        // Without a node count, the GUI asks for one as it always has.
+        if (options.gui && options.nodes < 0) options.nodes = promptForCount();
+
+        // Run the load, then show the tree if asked.
+        LoadDriver driver = new LoadDriver(options);
+        driver.run(System.out);
+        if (options.gui) show(driver.getTree());
+    }
+
+    /**
+     * Asks the user for a count of nodes with a JOptionPane, until they enter an integer.
+     * @return Count of nodes.
+     */
+    private static int promptForCount(){
+        while (true){
+            // Try to parse an int from the user.
+            try {
+                // Get the count from the user and return it.
+                return Integer.parseInt(JOptionPane.showInputDialog(null, "How many values do you want?", "Create Balanced BST", JOptionPane.QUESTION_MESSAGE));
+            }
+            // On fail, repeat.
+            catch (NumberFormatException e){
+                // Tell the user to enter a valid integer as an error message.
+                JOptionPane.showMessageDialog(null, "Please enter an integer.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Opens a window showing a tree.
+     * @param tree Tree to be shown.
+     */
+    private static void show(BalancedBST<Integer> tree){
+
+        // Get the screen dimensions.
+        int width = (int)Toolkit.getDefaultToolkit().getScreenSize().getWidth();
+        int height = (int)Toolkit.getDefaultToolkit().getScreenSize().getHeight();
+
+        // Create a new JFrame and canvas with desired attributes, and add the canvas to the frame.
+        JFrame frame = new JFrame("Balanced BST of " + tree.size() + " values. Wheel: zoom, shift+wheel: zoom across, drag: pan.");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        Canvas canvas = new Drawing(tree);
+        canvas.setSize(width, height);
+        frame.add(canvas);
+        frame.pack();
+        frame.setVisible(true);
+    }
+
+    /**
+     * This class extends canvas to paint a binary tree.
+     * The tree is walked directly: each node gets a slot half as wide as its parent's, and only slots that
+     * cross the visible area are visited. Subtrees whose slots are narrower than a few pixels are drawn as
+     * one grey triangle instead of node by node. Frames are painted on a background thread into an image,
+     * which the canvas only copies, stretched to the current zoom and pan until the next frame is ready.
+     * The tree must not change while it is shown.
+     */
+    static class Drawing extends Canvas{
+
+        private static final double COLLAPSE_WIDTH = 12; // Slots narrower than this many pixels are drawn as one glyph.
+        private static final double ZOOM_STEP = 1.25; // Zoom factor for one step of the mouse wheel.
+        private static final double MAX_DIAMETER = 120; // Largest circle drawn, however far in the view is zoomed.
+        private static final int MIN_FONT_SIZE = 6; // Labels smaller than this are left out.
+        private static final Color NODE_COLOR = Color.PINK;
+        private static final Color AGGREGATE_COLOR = Color.LIGHT_GRAY;
+
+        private final BalancedBST<?> tree; // Tree to be painted.
+        private final ExecutorService renderer; // Single background thread that paints frames.
+        private final AtomicInteger generation = new AtomicInteger(); // Number of the latest requested frame.
+        private final Font baseFont = new Font("Serif", Font.PLAIN, 12); // Font every label size is derived from.
+        private final Map<Integer, Font> fonts = new HashMap<>(); // Fonts by point size, used by the renderer only.
+        private final Map<Font, FontMetrics> metrics = new HashMap<>(); // Metrics by font, used by the renderer only.
+        private volatile Viewport viewport; // Latest zoom and pan, and the canvas size it was requested for.
+        private volatile Rendering rendering; // Latest finished frame, null until the first one is done.
+
+        /**
+         * Zoom, pan, and size of the canvas for one frame.
+         * A point of the tree at fraction u across and v down is drawn at (panX + u * width * zoomX, panY + v * height * zoomY).
+         */
+        private static final class Viewport {
+            final int width, height; // Size of the canvas in pixels.
+            final double zoomX, zoomY; // Magnification across and down, 1 showing the whole tree.
+            final double panX, panY; // Pixel position of the top left corner of the tree.
+
+            /**
+             * Constructor to set every field.
+             * @param width Width of the canvas in pixels.
+             * @param height Height of the canvas in pixels.
+             * @param zoomX Magnification across.
+             * @param zoomY Magnification down.
+             * @param panX Pixel position of the left of the tree.
+             * @param panY Pixel position of the top of the tree.
+             */
+            Viewport(int width, int height, double zoomX, double zoomY, double panX, double panY){
+                this.width = width;
+                this.height = height;
+                this.zoomX = zoomX;
+                this.zoomY = zoomY;
+                this.panX = panX;
+                this.panY = panY;
+            }
+        }
+
+        /**
+         * Finished frame and the viewport it was painted for.
+         */
+        private static final class Rendering {
+            final BufferedImage image; // Painted frame.
+            final Viewport viewport; // Viewport of the frame.
+
+            /**
+             * Constructor to set every field.
+             * @param image Painted frame.
+             * @param viewport Viewport of the frame.
+             */
+            Rendering(BufferedImage image, Viewport viewport){
+                this.image = image;
+                this.viewport = viewport;
+            }
+        }
+
+        /**
+         * Constructor to set tree.
+         * @param tree Tree to be painted.
+         */
+        Drawing(BalancedBST<?> tree){
+            // Balance any deferred inserts here, on the thread that built the tree, so the renderer only reads it.
+            tree.settle();
+            this.tree = tree;
+            this.renderer = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "tree-renderer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            // Zoom around the mouse with the wheel, only across when shift is held, and pan by dragging.
+            MouseAdapter mouse = new MouseAdapter(){
+                private Point last; // Where the mouse was at the last drag event.
+
+                public void mousePressed(MouseEvent e){
+                    this.last = e.getPoint();
+                }
+
+                public void mouseDragged(MouseEvent e){
+                    Viewport v = Drawing.this.current();
+                    Drawing.this.requestRender(v.zoomX, v.zoomY, v.panX + e.getX() - this.last.x, v.panY + e.getY() - this.last.y);
+                    this.last = e.getPoint();
+                }
+
+                public void mouseWheelMoved(MouseWheelEvent e){
+                    Viewport v = Drawing.this.current();
+                    double factor = Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation());
+                    double factorY = e.isShiftDown() ? 1 : factor;
+                    Drawing.this.requestRender(v.zoomX * factor, v.zoomY * factorY,
+                            e.getX() - (e.getX() - v.panX) * factor, e.getY() - (e.getY() - v.panY) * factorY);
+                }
+            };
+            this.addMouseListener(mouse);
+            this.addMouseMotionListener(mouse);
+            this.addMouseWheelListener(mouse);
+        }
+
+        /**
+         * Get the latest requested viewport, or the whole tree if there is none yet.
+         * @return Current viewport.
+         */
+        private Viewport current(){
+            Viewport v = this.viewport;
+            return v == null ? new Viewport(this.getWidth(), this.getHeight(), 1, 1, 0, 0) : v;
+        }
+
+        /**
+         * Asks the background thread for a frame at a new zoom and pan, and repaints the old frame stretched to it meanwhile.
+         * Requests that are overtaken by newer ones before they start are skipped.
+         * @param zoomX Magnification across.
+         * @param zoomY Magnification down.
+         * @param panX Pixel position of the left of the tree.
+         * @param panY Pixel position of the top of the tree.
+         */
+        private void requestRender(double zoomX, double zoomY, double panX, double panY){
+            Viewport v = new Viewport(this.getWidth(), this.getHeight(), zoomX, zoomY, panX, panY);
+            this.viewport = v;
+            int number = this.generation.incrementAndGet();
+            this.renderer.execute(() -> {
+                if (number == this.generation.get()) this.render(v);
+            });
+            this.repaint();
+        }
+
+        /**
+         * This overridden method is called to draw on the canvas.
+         * It only copies the latest frame, so it never waits for the tree to be walked.
+         * @param g Graphics object.
+         */
+        public void paint(Graphics g) {
+
+            // Ask for a new frame if the canvas has changed size since the last request.
+            Viewport v = this.viewport;
+            if (v == null || v.width != this.getWidth() || v.height != this.getHeight()){
+                v = this.current();
+                this.requestRender(v.zoomX, v.zoomY, v.panX, v.panY);
+                v = this.viewport;
+            }
+
+            // Clear, then draw the frame moved and stretched from its own viewport to the current one.
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, this.getWidth(), this.getHeight());
+            Rendering r = this.rendering;
+            if (r == null) return;
+            double scaleX = v.zoomX / r.viewport.zoomX;
+            double scaleY = v.zoomY / r.viewport.zoomY;
+            g.drawImage(r.image, (int) (v.panX - r.viewport.panX * scaleX), (int) (v.panY - r.viewport.panY * scaleY),
+                    (int) Math.ceil(r.image.getWidth() * scaleX), (int) Math.ceil(r.image.getHeight() * scaleY), null);
+        }
+
+        /**
+         * This overridden method skips the default clear, since paint covers the whole canvas, to avoid flicker.
+         * @param g Graphics object.
+         */
+        public void update(Graphics g) {
+            this.paint(g);
+        }
+
+        /**
+         * Paints a frame into a new image on the background thread, then hands it to the canvas.
+         * @param v Viewport to paint.
+         */
+        private void render(Viewport v){
+            if (v.width <= 0 || v.height <= 0) return;
+            BufferedImage image = new BufferedImage(v.width, v.height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, v.width, v.height);
+
+            // Every level gets the same share of the height.
+            BalancedBST<?>.Node root = this.tree.getRoot();
+            if (root != null){
+                double levelHeight = v.height * v.zoomY / root.getHeight();
+                this.paintSubtree(g, root, v.panY, v.panX, v.panX + v.width * v.zoomX, levelHeight, v);
+            }
+            g.dispose();
+            this.rendering = new Rendering(image, v);
+            this.repaint();
+        }
+
+        /**
+         * Paints a node and its children into a slot, skipping anything outside the viewport.
+         * @param g Graphics of the frame.
+         * @param node Node to paint.
+         * @param top Pixel position of the top of the node's level.
+         * @param left Pixel position of the left of the slot.
+         * @param right Pixel position of the right of the slot.
+         * @param levelHeight Height of a level in pixels.
+         * @param v Viewport being painted.
+         */
+        private void paintSubtree(Graphics2D g, BalancedBST<?>.Node node, double top, double left, double right, double levelHeight, Viewport v){
+
+            // Children only lie in the slot and below, so a slot off the side or bottom is skipped with its subtree.
+            if (right < 0 || left > v.width || top > v.height) return;
+            double centerX = (left + right) / 2;
+            double centerY = top + levelHeight / 2;
+
+            // A subtree too narrow to read is one triangle as tall as the subtree.
+            if (right - left < COLLAPSE_WIDTH){
+                double bottom = Math.min(top + node.getHeight() * levelHeight, v.height + 1.0);
+                g.setColor(AGGREGATE_COLOR);
+                g.fillPolygon(new int[]{(int) centerX, (int) left, (int) Math.ceil(right)}, new int[]{(int) centerY, (int) bottom, (int) bottom}, 3);
+                return;
+            }
+
+            // Draw lines to the children first, so the circles cover their ends.
+            g.setColor(Color.BLACK);
+            double childY = centerY + levelHeight;
+            if (node.getLeft() != null) g.drawLine((int) centerX, (int) centerY, (int) ((left + centerX) / 2), (int) childY);
+            if (node.getRight() != null) g.drawLine((int) centerX, (int) centerY, (int) ((centerX + right) / 2), (int) childY);
+            if (node.getLeft() != null) this.paintSubtree(g, node.getLeft(), top + levelHeight, left, centerX, levelHeight, v);
+            if (node.getRight() != null) this.paintSubtree(g, node.getRight(), top + levelHeight, centerX, right, levelHeight, v);
+
+            // Draw circle at the center of the slot, unless the level is above the viewport.
+            if (top + levelHeight < 0) return;
+            double diameter = Math.min(Math.min((right - left) * 0.8, levelHeight * 0.6), MAX_DIAMETER);
+            g.setColor(NODE_COLOR);
+            g.fillOval((int) (centerX - diameter / 2), (int) (centerY - diameter / 2), (int) diameter, (int) diameter);
+
+            // Get the string to be drawn, with the count of the node as in toStringMatrix, and size the font down if
+            // it is too wide for the circle.
+            String nodeVal = node.getValue() + " (x" + node.getCount() + ")";
+            int size = (int) (diameter * 0.5);
+            FontMetrics fm = this.metrics(g, size);
+            int textWidth = fm.stringWidth(nodeVal);
+            if (textWidth > diameter * 0.9){
+                size = (int) (size * diameter * 0.9 / textWidth);
+                fm = this.metrics(g, size);
+                textWidth = fm.stringWidth(nodeVal);
+            }
+
+            // Draw the string centered in the circle, if it is big enough to read.
+            if (size < MIN_FONT_SIZE) return;
+            g.setColor(Color.BLACK);
+            g.setFont(fm.getFont());
+            g.drawString(nodeVal, (int) (centerX - textWidth / 2.0), (int) (centerY + (fm.getAscent() - fm.getDescent()) / 2.0));
+        }
+
+        /**
+         * Get the metrics of the label font at a size, making and caching the font and metrics the first time.
+         * @param g Graphics of the frame.
+         * @param size Point size of the font.
+         * @return Metrics of the font.
+         */
+        private FontMetrics metrics(Graphics2D g, int size){
+            Font font = this.fonts.computeIfAbsent(Math.max(size, 1), s -> this.baseFont.deriveFont((float) s));
+            return this.metrics.computeIfAbsent(font, g::getFontMetrics);
+        }
+    }
+}
@@ -0,0 +1,714 @@
+package bst;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Class for a BalancedBST kept in memory-mapped files instead of on the heap, for trees too large to rebuild on
+ * every start. The balanced in-order layout of the tree is kept as fixed-size (value, count) records in a base file,
+ * so a lookup walks the implicit balanced tree over the records by halving index ranges, reading straight from the
+ * mapping. Opening a store only maps its base; nothing is rebuilt.
+ * <p>
+ * Inserts and removes are appended to a log next to the base as (value, change of count) records, and kept on the
+ * heap as the net change of each value, which lookups add to the base. The log is replayed when the store is opened.
+ * Once enough values have changed, the store is compacted: the base and the changes are merged in order into a new
+ * base, streamed through a small buffer without loading either, and a new empty log is started. Only the changes
+ * since the last compaction are ever on the heap.
+ * <p>
+ * A base is named after the store with its generation, such as tree.bst.3. It is written to a temporary file, forced
+ * to disk, then renamed into place, with the directory forced after it; the log names the generation it belongs to,
+ * and a log of an older base has already been merged and is dropped. After a crash the store holds the last
+ * completed compaction and every change logged before the last call to sync. No file is renamed over while mapped,
+ * so this also works where mapped files can not be replaced, such as on Windows; old bases that can not be deleted
+ * yet are deleted when the store is next opened.
+ * <p>
+ * A store is used from one thread at a time. Values are kept in their natural order.
+ * A store that has been closed throws IllegalStateException from every call.
+ * @param <T> Type of the values.
+ */
+public class MappedBSTStore<T> implements Closeable {
+    private static final int MAGIC = 0x4253544D; // "BSTM"
+    private static final int LOG_MAGIC = 0x4253544C; // "BSTL"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 40; // magic, version, key width, height (ints), runs, total, generation (longs).
+    private static final int LOG_HEADER_SIZE = 16; // magic, key width (ints), generation (long).
+    private static final int SEGMENT_SIZE = 1 << 30; // Largest part of a base mapped at once.
+    private static final int BUFFER_SIZE = 1 << 16; // Size of the buffers records are written and read through.
+    private static final int MIN_COMPACT_CHANGES = 1 << 12; // Fewest changed values before the store compacts itself.
+
+    private final Path path; // Path the files of the store are named after.
+    private final KeyCodec<T> codec; // Codec for the values in the records.
+    private final int recordSize; // Size of one record: the value followed by an int count, or change of count.
+    private final int recordsPerSegment; // Number of records in each mapped segment.
+    private final TreeMap<Object, Integer> changes = new TreeMap<>(BalancedBST.NATURAL_ORDER); // Net change of each value since the base.
+    private final ByteBuffer pending; // Log records not yet written to the log file.
+    private FileChannel log; // Log of the current base, open for appending.
+    private long generation; // Generation of the current base.
+    private long runs; // Number of records in the base, ie distinct values.
+    private int height; // Height of the balanced tree the base describes.
+    private long distinct; // Number of distinct values, with the changes.
+    private long total; // Number of values counting duplicates, with the changes.
+    private MappedByteBuffer[] segments; // Mapped parts of the base holding the records, null once closed.
+
+    /**
+     * Source of (value, count) runs in order, to write a base from.
+     * @param <T> Type of the values.
+     */
+    private interface RunSource<T> {
+
+        /**
+         * Moves to the next run.
+         * @return False if there are no more runs.
+         */
+        boolean next();
+
+        /**
+         * Get the value of the current run.
+         * @return Value of the run.
+         */
+        T value();
+
+        /**
+         * Get the count of the current run.
+         * @return Count of the run, at least one.
+         */
+        int count();
+    }
+
+    /**
+     * Constructor to make a store that is not yet open.
+     * @param path Path the files of the store are named after.
+     * @param codec Codec for the values in the records.
+     */
+    private MappedBSTStore(Path path, KeyCodec<T> codec){
+        this.path = path;
+        this.codec = codec;
+        this.recordSize = codec.width() + Integer.BYTES;
+        this.recordsPerSegment = SEGMENT_SIZE / this.recordSize;
+        this.pending = ByteBuffer.allocate(BUFFER_SIZE / this.recordSize * this.recordSize);
+    }
+
+    /**
+     * Writes a tree as a new store, replacing any store of the same path with a base of the next generation and
+     * an empty log. The records are written straight from the nodes of the tree, one at a time.
+     * @param path Path the files of the store are named after.
+     * @param tree Tree to be written.
+     * @param codec Codec for the values of the tree.
+     * @param <T> Type of the values.
+     * @return Open store of the tree.
+     * @throws IOException If the files can not be written.
+     * @throws IllegalArgumentException If the tree has a comparator; lookups in the store use the natural order.
+     */
+    static <T> MappedBSTStore<T> write(Path path, BalancedBST<T> tree, KeyCodec<T> codec) throws IOException {
+        if (tree.comparator() != null) throw new IllegalArgumentException("Only trees in natural order can be stored.");
+        long generation = latestGeneration(path) + 1;
+        writeBase(path, generation, codec, new RunSource<T>() {
+            private BalancedBST<T>.Node node; // Node of the current run, null before the first.
+
+            public boolean next(){
+                this.node = this.node == null ? tree.firstNode() : this.node.successor();
+                return this.node != null;
+            }
+
+            public T value(){
+                return this.node.getValue();
+            }
+
+            public int count(){
+                return this.node.getCount();
+            }
+        });
+        startLog(path, generation, codec.width());
+        return open(path, codec);
+    }
+
+    /**
+     * Opens the store of a path: maps its latest base and replays its log. No records of the base are read.
+     * @param path Path the files of the store are named after.
+     * @param codec Codec for the values, with the same width as the one the store was written with.
+     * @param <T> Type of the values.
+     * @return Open store.
+     * @throws IOException If there is no store at the path, or its files can not be read or are not of this codec's width.
+     */
+    static <T> MappedBSTStore<T> open(Path path, KeyCodec<T> codec) throws IOException {
+        long generation = latestGeneration(path);
+        if (generation < 0) throw new IOException("No tree store at " + path);
+        MappedBSTStore<T> store = new MappedBSTStore<>(path, codec);
+        store.map(generation);
+        store.replay();
+        deleteOld(path, generation);
+        return store;
+    }
+
+    /**
+     * Add a value to the store, logging it. Compacts the store if enough values have changed since the last time.
+     * @param value Value to be added.
+     * @throws IOException If the log or a compaction can not be written.
+     */
+    void addNode(T value) throws IOException {
+        this.change(value, 1);
+    }
+
+    /**
+     * Remove one occurrence of a value from the store, logging it if it was there.
+     * Compacts the store if enough values have changed since the last time.
+     * @param value Value to be removed.
+     * @return True if the value was in the store.
+     * @throws IOException If the log or a compaction can not be written.
+     */
+    boolean remove(T value) throws IOException {
+        if (this.getCount(value) == 0) return false;
+        this.change(value, -1);
+        return true;
+    }
+
+    /**
+     * Logs and applies a change of count, then compacts if enough values have changed.
+     * @param value Value to change.
+     * @param change Change of its count.
+     * @throws IOException If the log or a compaction can not be written.
+     */
+    private void change(T value, int change) throws IOException {
+        this.segments();
+        if (this.pending.remaining() < this.recordSize) this.flushLog();
+        int position = this.pending.position();
+        this.codec.write(this.pending, position, value);
+        this.pending.putInt(position + this.codec.width(), change);
+        this.pending.position(position + this.recordSize);
+        this.apply(value, change);
+        if (this.changes.size() >= Math.max(MIN_COMPACT_CHANGES, this.runs / 4)) this.compact();
+    }
+
+    /**
+     * Applies a change of count to the changes kept on the heap.
+     * @param value Value to change.
+     * @param change Change of its count.
+     * @return Count of the value after the change.
+     */
+    private long apply(T value, int change){
+        long index = this.find(value);
+        long base = index < 0 ? 0 : this.countAt(index);
+        Integer current = this.changes.get(value);
+        int before = current == null ? 0 : current, after = before + change;
+        if (after == 0) this.changes.remove(value);
+        else this.changes.put(value, after);
+
+        // Keep the totals, counting a value as distinct while its count is above zero.
+        if (base + before <= 0 && base + after > 0) this.distinct++;
+        else if (base + before > 0 && base + after <= 0) this.distinct--;
+        this.total += change;
+        return base + after;
+    }
+
+    /**
+     * Writes the logged changes that are still in the buffer to the log file, without forcing them to disk.
+     * @throws IOException If the log can not be written.
+     */
+    private void flushLog() throws IOException {
+        this.pending.flip();
+        while (this.pending.hasRemaining()) this.log.write(this.pending);
+        this.pending.clear();
+    }
+
+    /**
+     * Writes every change so far to the log and forces it to disk, so it survives a crash.
+     * @throws IOException If the log can not be written.
+     */
+    void sync() throws IOException {
+        this.segments();
+        this.flushLog();
+        this.log.force(false);
+    }
+
+    /**
+     * Merges the changes into a new base of the next generation, in one pass over the base, and starts an empty log
+     * for it. The old base is deleted once it is no longer mapped.
+     * @throws IOException If the new base or log can not be written. If the base could not be written, the store is
+     * left as it was; otherwise it should be opened again, and holds the new base.
+     */
+    void compact() throws IOException {
+        this.sync();
+        long generation = this.generation + 1;
+        writeBase(this.path, generation, this.codec, this.merged());
+
+        // A crash before the new log is in place leaves the old one, which names the old base and so is dropped.
+        this.log.close();
+        startLog(this.path, generation, this.codec.width());
+        this.changes.clear();
+        this.map(generation);
+        this.log = FileChannel.open(logPath(this.path), StandardOpenOption.WRITE);
+        this.log.position(this.log.size());
+        deleteOld(this.path, generation);
+    }
+
+    /**
+     * Maps a base and resets the totals to it.
+     * @param generation Generation of the base.
+     * @throws IOException If the base can not be read or is not a store of this codec's width.
+     */
+    private void map(long generation) throws IOException {
+        Path base = basePath(this.path, generation);
+        try (FileChannel channel = FileChannel.open(base, StandardOpenOption.READ)){
+
+            // Read and check the header.
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.read(header, 0) != HEADER_SIZE || header.getInt(0) != MAGIC) throw new IOException("Not a tree store: " + base);
+            if (header.getInt(4) != VERSION) throw new IOException("Unsupported store version: " + header.getInt(4));
+            if (header.getInt(8) != this.codec.width()) throw new IOException("Store has keys of " + header.getInt(8) + " bytes, codec has " + this.codec.width());
+            if (header.getLong(32) != generation) throw new IOException("Base " + base + " holds generation " + header.getLong(32));
+
+            // Map the records a segment at a time. The mappings stay valid after the channel is closed.
+            long runs = header.getLong(16);
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((runs + this.recordsPerSegment - 1) / this.recordsPerSegment)];
+            for (int i=0; i<segments.length; i++){
+                long first = (long) i * this.recordsPerSegment;
+                long count = Math.min(this.recordsPerSegment, runs - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * this.recordSize, count * this.recordSize);
+            }
+            this.generation = generation;
+            this.height = header.getInt(12);
+            this.runs = runs;
+            this.distinct = runs;
+            this.total = header.getLong(24);
+            this.segments = segments;
+        }
+    }
+
+    /**
+     * Opens the log of the current base and applies its changes, dropping a record cut short by a crash.
+     * A log of an older base, or no log, is replaced by an empty one.
+     * @throws IOException If the log can not be read, is of another width or a newer base, or removes values the store does not hold.
+     */
+    private void replay() throws IOException {
+        Path logPath = logPath(this.path);
+        if (Files.exists(logPath)){
+            FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+                boolean whole = channel.read(header, 0) == LOG_HEADER_SIZE;
+                if (whole && (header.getInt(0) != LOG_MAGIC || header.getInt(4) != this.codec.width())) throw new IOException("Not a log of this store: " + logPath);
+                long generation = whole ? header.getLong(8) : -1;
+                if (generation > this.generation) throw new IOException("Log " + logPath + " is of a newer base than " + this.generation);
+                if (generation == this.generation){
+                    this.log = channel;
+                    this.readLog();
+                    return;
+                }
+            }
+            catch (Throwable e){
+                channel.close();
+                throw e;
+            }
+            channel.close();
+        }
+
+        // The log was merged into the base already, or never started.
+        startLog(this.path, this.generation, this.codec.width());
+        this.log = FileChannel.open(logPath, StandardOpenOption.WRITE);
+        this.log.position(this.log.size());
+    }
+
+    /**
+     * Applies the changes in the open log, then cuts it after its last whole record and moves to its end.
+     * @throws IOException If the log can not be read, or removes values the store does not hold.
+     */
+    private void readLog() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE / this.recordSize * this.recordSize);
+        long position = LOG_HEADER_SIZE;
+        while (true){
+            buffer.clear();
+            int read = this.log.read(buffer, position);
+            if (read < this.recordSize) break;
+            for (int offset=0; offset + this.recordSize <= read; offset += this.recordSize){
+                T value = this.codec.read(buffer, offset);
+                if (this.apply(value, buffer.getInt(offset + this.codec.width())) < 0) throw new IOException("Log removes " + value + " more times than it was added.");
+                position += this.recordSize;
+            }
+        }
+        this.log.truncate(position);
+        this.log.position(position);
+    }
+
+    /**
+     * Get the runs of the base with the changes merged in, in order, leaving out values whose count is now zero.
+     * @return Source of the merged runs.
+     */
+    private RunSource<T> merged(){
+        Iterator<Map.Entry<Object, Integer>> changed = this.changes.entrySet().iterator();
+        return new RunSource<T>() {
+            private long index = 0; // Index of the next record of the base.
+            private Map.Entry<Object, Integer> change = changed.hasNext() ? changed.next() : null; // Next change, null after the last.
+            private T value; // Value of the current run.
+            private int count; // Count of the current run.
+
+            @SuppressWarnings("unchecked")
+            public boolean next(){
+                do {
+                    if (this.index == MappedBSTStore.this.runs && this.change == null) return false;
+
+                    // Take the smaller of the next record and the next change, adding them if they are equal.
+                    int compareValue = this.change == null ? -1 : this.index == MappedBSTStore.this.runs ? 1
+                            : BalancedBST.NATURAL_ORDER.compare(MappedBSTStore.this.valueAt(this.index), this.change.getKey());
+                    this.value = compareValue <= 0 ? MappedBSTStore.this.valueAt(this.index) : (T) this.change.getKey();
+                    this.count = compareValue <= 0 ? MappedBSTStore.this.countAt(this.index++) : 0;
+                    if (compareValue >= 0){
+                        this.count += this.change.getValue();
+                        this.change = changed.hasNext() ? changed.next() : null;
+                    }
+                } while (this.count == 0);
+                return true;
+            }
+
+            public T value(){
+                return this.value;
+            }
+
+            public int count(){
+                return this.count;
+            }
+        };
+    }
+
+    /**
+     * Writes a base from runs in order, through a buffer rather than a mapping, to a temporary file that is forced
+     * to disk and renamed into place, then forces the directory. The temporary file is deleted if anything fails.
+     * @param path Path the files of the store are named after.
+     * @param generation Generation of the base.
+     * @param codec Codec for the values.
+     * @param source Runs to be written.
+     * @param <T> Type of the values.
+     * @throws IOException If the base can not be written.
+     */
+    private static <T> void writeBase(Path path, long generation, KeyCodec<T> codec, RunSource<T> source) throws IOException {
+        int recordSize = codec.width() + Integer.BYTES;
+        Path base = basePath(path, generation), temp = base.resolveSibling(base.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+
+                // Write the records after the header, walking the runs in order.
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE / recordSize * recordSize);
+                long runs = 0, total = 0;
+                channel.position(HEADER_SIZE);
+                while (source.next()){
+                    if (!buffer.hasRemaining()) drain(channel, buffer);
+                    int position = buffer.position();
+                    codec.write(buffer, position, source.value());
+                    buffer.putInt(position + codec.width(), source.count());
+                    buffer.position(position + recordSize);
+                    runs++;
+                    total += source.count();
+                }
+                drain(channel, buffer);
+
+                // Write the header last, so a base with a valid header always has its records.
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, codec.width()).putInt(12, 64 - Long.numberOfLeadingZeros(runs));
+                header.putLong(16, runs).putLong(24, total).putLong(32, generation);
+                channel.write(header, 0);
+                channel.force(true);
+            }
+
+            // Move the base into place in one step, and force the directory so the rename itself survives a crash.
+            Files.move(temp, base, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(base.toAbsolutePath().getParent());
+        }
+        catch (Throwable e){
+            deleteAfterFailure(temp, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Replaces the log of a store with an empty one for a base, through a temporary file renamed into place.
+     * @param path Path the files of the store are named after.
+     * @param generation Generation of the base the log is for.
+     * @param width Width of the values in bytes.
+     * @throws IOException If the log can not be written.
+     */
+    private static void startLog(Path path, long generation, int width) throws IOException {
+        Path log = logPath(path), temp = log.resolveSibling(log.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+                ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+                header.putInt(0, LOG_MAGIC).putInt(4, width).putLong(8, generation);
+                channel.write(header, 0);
+                channel.force(true);
+            }
+            Files.move(temp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(log.toAbsolutePath().getParent());
+        }
+        catch (Throwable e){
+            deleteAfterFailure(temp, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes out what is in a buffer and empties it.
+     * @param channel Channel to write to.
+     * @param buffer Buffer to write from.
+     * @throws IOException If the channel can not be written.
+     */
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Deletes a temporary file after a write failed, keeping the failure as the error to report.
+     * @param temp Temporary file.
+     * @param failure Error the write failed with.
+     */
+    private static void deleteAfterFailure(Path temp, Throwable failure){
+        try {
+            Files.deleteIfExists(temp);
+        }
+        catch (IOException e){
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Forces the entries of a directory to disk, such as a file just renamed into it.
+     * Some platforms, such as Windows, can not open a directory as a channel; there the rename is left to the
+     * file system, which on those platforms commits renames on its own.
+     * @param directory Directory to force.
+     * @throws IOException If the directory was opened but could not be forced.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        }
+        catch (IOException e){
+            return;
+        }
+        try (FileChannel open = channel){
+            open.force(true);
+        }
+    }
+
+    /**
+     * Get the path of a base.
+     * @param path Path the files of the store are named after.
+     * @param generation Generation of the base.
+     * @return Path of the base.
+     */
+    private static Path basePath(Path path, long generation){
+        return path.resolveSibling(path.getFileName() + "." + generation);
+    }
+
+    /**
+     * Get the path of the log.
+     * @param path Path the files of the store are named after.
+     * @return Path of the log.
+     */
+    private static Path logPath(Path path){
+        return path.resolveSibling(path.getFileName() + ".log");
+    }
+
+    /**
+     * Get the generation of a file of a store from its name.
+     * @param path Path the files of the store are named after.
+     * @param file File next to it.
+     * @return Generation of the base the file is, -1 if it is not a base of the store.
+     */
+    private static long generationOf(Path path, Path file){
+        String prefix = path.getFileName() + ".", name = file.getFileName().toString();
+        if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() - prefix.length() > 18) return -1;
+        for (int i=prefix.length(); i<name.length(); i++) if (!Character.isDigit(name.charAt(i))) return -1;
+        return Long.parseLong(name.substring(prefix.length()));
+    }
+
+    /**
+     * Finds the latest base of a store. Bases are only renamed into place once complete, so every one is whole.
+     * @param path Path the files of the store are named after.
+     * @return Generation of the latest base, -1 if there is none.
+     * @throws IOException If the directory can not be read.
+     */
+    private static long latestGeneration(Path path) throws IOException {
+        long latest = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path.toAbsolutePath().getParent())){
+            for (Path file : files) latest = Math.max(latest, generationOf(path, file));
+        }
+        return latest;
+    }
+
+    /**
+     * Deletes the bases older than a generation and temporary files left by failed writes. A base still mapped by a
+     * store that has not been collected may not be deletable yet on some platforms; it is left for the next open.
+     * @param path Path the files of the store are named after.
+     * @param generation Generation of the current base.
+     * @throws IOException If the directory can not be read.
+     */
+    private static void deleteOld(Path path, long generation) throws IOException {
+        String prefix = path.getFileName() + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path.toAbsolutePath().getParent())){
+            for (Path file : files){
+                String name = file.getFileName().toString();
+                long of = generationOf(path, file);
+                boolean temporary = name.startsWith(prefix) && name.endsWith(".tmp");
+                if (temporary || (of >= 0 && of < generation)){
+                    try {
+                        Files.deleteIfExists(file);
+                    }
+                    catch (IOException e){
+                        // Still mapped; try again on the next open.
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the value of a record of the base.
+     * @param index Index of the record, in order.
+     * @return Value of the record.
+     */
+    T valueAt(long index){
+        return this.codec.read(this.segments()[(int) (index / this.recordsPerSegment)], (int) (index % this.recordsPerSegment) * this.recordSize);
+    }
+
+    /**
+     * Get the count of a record of the base, without the changes since.
+     * @param index Index of the record, in order.
+     * @return Count of the record.
+     */
+    int countAt(long index){
+        return this.segments()[(int) (index / this.recordsPerSegment)].getInt((int) (index % this.recordsPerSegment) * this.recordSize + this.codec.width());
+    }
+
+    /**
+     * Finds the record of a value in the base by walking down the balanced tree the records describe.
+     * @param value Value to look for.
+     * @return Index of the record, -1 if the value is not in the base.
+     */
+    private long find(T value){
+        this.segments();
+        long from = 0, to = this.runs;
+        while (from < to){
+            long center = (from + to) >>> 1;
+            int compareValue = BalancedBST.NATURAL_ORDER.compare(value, this.valueAt(center));
+            if (compareValue == 0) return center;
+            if (compareValue < 0) to = center;
+            else from = center + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if a value is in the store.
+     * @param value Value to look for.
+     * @return True if the value is in the store.
+     */
+    boolean contains(T value){
+        return this.getCount(value) > 0;
+    }
+
+    /**
+     * Get the number of times a value is in the store.
+     * @param value Value to look for.
+     * @return Count of the value, 0 if it is not in the store.
+     */
+    int getCount(T value){
+        long index = this.find(value);
+        Integer change = this.changes.get(value);
+        return (index < 0 ? 0 : this.countAt(index)) + (change == null ? 0 : change);
+    }
+
+    /**
+     * Get the number of distinct values in the store.
+     * @return Number of distinct values.
+     */
+    long distinct(){
+        this.segments();
+        return this.distinct;
+    }
+
+    /**
+     * Get the number of values in the store, counting duplicates.
+     * @return Number of values.
+     */
+    long size(){
+        this.segments();
+        return this.total;
+    }
+
+    /**
+     * Get the number of values whose count has changed since the last compaction, which are kept on the heap.
+     * @return Number of changed values.
+     */
+    int changed(){
+        this.segments();
+        return this.changes.size();
+    }
+
+    /**
+     * Get the generation of the current base, which goes up by one with every compaction.
+     * @return Generation of the base.
+     */
+    long generation(){
+        this.segments();
+        return this.generation;
+    }
+
+    /**
+     * Get the height of the balanced tree the base describes, as of the last compaction.
+     * @return Height of the tree.
+     */
+    int getHeight(){
+        this.segments();
+        return this.height;
+    }
+
+    /**
+     * Loads the store into a BalancedBST on the heap, in linear time.
+     * @return Perfectly balanced tree of the values in the store.
+     */
+    BalancedBST<T> toTree(){
+        this.segments();
+        if (this.distinct > Integer.MAX_VALUE) throw new IllegalStateException("Store is too large to load onto the heap.");
+        BalancedBST.Runs contents = new BalancedBST.Runs((int) this.distinct);
+        RunSource<T> source = this.merged();
+        while (source.next()) contents.add(source.value(), source.count());
+        return BalancedBST.fromRuns(contents);
+    }
+
+    /**
+     * Get the mapped segments, checking the store is still open.
+     * @return Mapped parts of the base holding the records.
+     * @throws IllegalStateException If the store has been closed.
+     */
+    private MappedByteBuffer[] segments(){
+        if (this.segments == null) throw new IllegalStateException("Store is closed.");
+        return this.segments;
+    }
+
+    /**
+     * Forces the log to disk, closes it and drops the mappings. The operating system unmaps the base once they
+     * have been garbage collected. Closing a store again does nothing.
+     * @throws IOException If the log can not be written.
+     */
+    public void close() throws IOException {
+        if (this.segments == null) return;
+        try {
+            this.sync();
+        }
+        finally {
+            this.log.close();
+            this.segments = null;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package bst;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Class for a persistent balanced binary search tree: every version is immutable, and an update returns a new
+ * version instead of changing this one. The update copies only the nodes on its path, O(log n) of them, rotated
+ * into AVL balance, and shares every other subtree with the version it came from. So a version is its own
+ * snapshot, taken in O(1) by keeping a reference to it, and a version no reader holds is reclaimed by the GC.
+ * Values are kept in their natural order, or in the order of a comparator given when the empty tree is made, which
+ * every version made from it keeps.
+ * @param <T> Type of the values.
+ */
+public final class PersistentBalancedBST<T> implements Iterable<T> {
+    private final Node<T> root; // Root of this version, null if empty.
+    private final Comparator<? super T> comparator; // Order given when the tree was made, null for natural order.
+    private final Comparator<Object> order; // Order every comparison goes through.
+
+    /**
+     * Node class contains a value, its count, and references to its children. Nodes are immutable.
+     * @param <T> Type of the value.
+     */
+    private static final class Node<T> {
+
+        final T value; // Value of node.
+        final int count; // Number of times the value was added.
+        final int height; // Height of the node.
+        final long size; // Number of values in this subtree, counting duplicates.
+        final Node<T> left; // Reference to left node.
+        final Node<T> right; // Reference to right node.
+
+        /**
+         * Constructor to build fully instantiated node. Height and size are worked out from the children.
+         * @param value Value of node.
+         * @param count Count of the value.
+         * @param left Reference to left node.
+         * @param right Reference to right node.
+         */
+        Node(T value, int count, Node<T> left, Node<T> right){
+            this.value = value;
+            this.count = count;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(heightOf(left), heightOf(right)) + 1;
+            this.size = sizeOf(left) + count + sizeOf(right);
+        }
+    }
+
+    /**
+     * Constructor to make an empty tree, with values in their natural order.
+     */
+    PersistentBalancedBST(){
+        this(null, null, BalancedBST.NATURAL_ORDER);
+    }
+
+    /**
+     * Constructor to make an empty tree, with values in the order of a comparator.
+     * @param comparator Order of the values, null for natural order.
+     */
+    @SuppressWarnings("unchecked")
+    PersistentBalancedBST(Comparator<? super T> comparator){
+        this(null, comparator, comparator == null ? BalancedBST.NATURAL_ORDER : (Comparator<Object>) comparator);
+    }
+
+    /**
+     * Constructor to make a version with a root.
+     * @param root Root of the version, null if empty.
+     * @param comparator Order given when the tree was made, null for natural order.
+     * @param order Order every comparison goes through.
+     */
+    private PersistentBalancedBST(Node<T> root, Comparator<? super T> comparator, Comparator<Object> order){
+        this.root = root;
+        this.comparator = comparator;
+        this.order = order;
+    }
+
+    /**
+     * Makes a version in the same order as this one.
+     * @param root Root of the version, null if empty.
+     * @return The version, this one if the root is the same.
+     */
+    private PersistentBalancedBST<T> with(Node<T> root){
+        return root == this.root ? this : new PersistentBalancedBST<>(root, this.comparator, this.order);
+    }
+
+    /**
+     * Get the comparator the values are ordered by.
+     * @return Comparator given when the tree was made, null for natural order.
+     */
+    Comparator<? super T> comparator(){
+        return this.comparator;
+    }
+
+    /**
+     * Get the height of a node, treating a missing node as height zero.
+     * @param node Node to get the height of, may be null.
+     * @return Height of the node.
+     */
+    private static int heightOf(Node<?> node){
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Get the number of values under a node, treating a missing node as empty.
+     * @param node Node to get the size of, may be null.
+     * @return Size of the node.
+     */
+    private static long sizeOf(Node<?> node){
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Makes a new version with a value added. This version is not changed.
+     * @param value Value to be added.
+     * @return New version holding the value once more.
+     */
+    PersistentBalancedBST<T> add(T value){
+        return this.with(this.insert(this.root, value));
+    }
+
+    /**
+     * Makes a new version with a batch of values added, one at a time. This version is not changed.
+     * @param values Values to be added.
+     * @return New version holding the values.
+     */
+    PersistentBalancedBST<T> addAll(Collection<? extends T> values){
+        Node<T> node = this.root;
+        for (T value : values) node = this.insert(node, value);
+        return this.with(node);
+    }
+
+    /**
+     * Makes a new version with one occurrence of a value removed. This version is not changed.
+     * @param value Value to be removed.
+     * @return New version, or this one if the value is not in it.
+     */
+    PersistentBalancedBST<T> remove(T value){
+        return this.with(this.delete(this.root, value, false));
+    }
+
+    /**
+     * Makes a new version with every occurrence of a value removed. This version is not changed.
+     * @param value Value to be removed.
+     * @return New version, or this one if the value is not in it.
+     */
+    PersistentBalancedBST<T> removeAll(T value){
+        return this.with(this.delete(this.root, value, true));
+    }
+
+    /**
+     * Makes a copy of a subtree with a value added, sharing every node off the insert path.
+     * @param node Root of the subtree, null if empty.
+     * @param value Value to be inserted.
+     * @return Root of the new subtree.
+     */
+    private Node<T> insert(Node<T> node, T value){
+        if (node == null) return new Node<>(value, 1, null, null);
+
+        // If they are equal, increase count. The shape of the tree does not change.
+        int compareValue = this.order.compare(value, node.value);
+        if (compareValue == 0) return new Node<>(node.value, node.count + 1, node.left, node.right);
+
+        // Otherwise, copy this node over the new child and restore balance.
+        if (compareValue < 0) return balance(node.value, node.count, this.insert(node.left, value), node.right);
+        return balance(node.value, node.count, node.left, this.insert(node.right, value));
+    }
+
+    /**
+     * Makes a copy of a subtree with a value removed, sharing every node off the removal path.
+     * @param node Root of the subtree, null if empty.
+     * @param value Value to be removed.
+     * @param all If every occurrence should be removed rather than one.
+     * @return Root of the new subtree, the same node if the value is not in it.
+     */
+    private Node<T> delete(Node<T> node, T value, boolean all){
+        if (node == null) return null;
+        int compareValue = this.order.compare(value, node.value);
+
+        // Go down the side the value is on; nothing is copied if it was not found.
+        if (compareValue < 0){
+            Node<T> left = this.delete(node.left, value, all);
+            return left == node.left ? node : balance(node.value, node.count, left, node.right);
+        }
+        if (compareValue > 0){
+            Node<T> right = this.delete(node.right, value, all);
+            return right == node.right ? node : balance(node.value, node.count, node.left, right);
+        }
+
+        // With duplicates left, only the count changes.
+        if (!all && node.count > 1) return new Node<>(node.value, node.count - 1, node.left, node.right);
+
+        // Otherwise the node goes; with two children, its successor takes its place.
+        if (node.left == null) return node.right;
+        if (node.right == null) return node.left;
+        Node<T> successor = node.right;
+        while (successor.left != null) successor = successor.left;
+        return balance(successor.value, successor.count, node.left, deleteFirst(node.right));
+    }
+
+    /**
+     * Makes a copy of a subtree without its smallest node.
+     * @param node Root of the subtree, not null.
+     * @param <T> Type of the values.
+     * @return Root of the new subtree.
+     */
+    private static <T> Node<T> deleteFirst(Node<T> node){
+        if (node.left == null) return node.right;
+        return balance(node.value, node.count, deleteFirst(node.left), node.right);
+    }
+
+    /**
+     * Makes a node from parts whose heights differ by at most two, rotating it into AVL balance if needed.
+     * @param value Value of the node.
+     * @param count Count of the node.
+     * @param left Left subtree.
+     * @param right Right subtree.
+     * @param <T> Type of the values.
+     * @return Root of the balanced subtree.
+     */
+    private static <T> Node<T> balance(T value, int count, Node<T> left, Node<T> right){
+        int balanceFactor = heightOf(left) - heightOf(right);
+
+        // Left side is too tall; the left child's right subtree is rotated up if it is the taller one.
+        if (balanceFactor > 1){
+            if (heightOf(left.left) >= heightOf(left.right))
+                return new Node<>(left.value, left.count, left.left, new Node<>(value, count, left.right, right));
+            Node<T> pivot = left.right;
+            return new Node<>(pivot.value, pivot.count,
+                    new Node<>(left.value, left.count, left.left, pivot.left),
+                    new Node<>(value, count, pivot.right, right));
+        }
+
+        // Right side is too tall; the right child's left subtree is rotated up if it is the taller one.
+        if (balanceFactor < -1){
+            if (heightOf(right.right) >= heightOf(right.left))
+                return new Node<>(right.value, right.count, new Node<>(value, count, left, right.left), right.right);
+            Node<T> pivot = right.left;
+            return new Node<>(pivot.value, pivot.count,
+                    new Node<>(value, count, left, pivot.left),
+                    new Node<>(right.value, right.count, pivot.right, right.right));
+        }
+        return new Node<>(value, count, left, right);
+    }
+
+    /**
+     * Makes a new version with only the values less than a value, in O(log n). This version is not changed.
+     * @param value Value every kept value is less than.
+     * @return New version holding the smaller values.
+     */
+    PersistentBalancedBST<T> headTree(T value){
+        return this.with(this.below(this.root, value));
+    }
+
+    /**
+     * Makes a new version with only the values greater than or equal to a value, in O(log n).
+     * This version is not changed.
+     * @param value Value every kept value is at least.
+     * @return New version holding the other values.
+     */
+    PersistentBalancedBST<T> tailTree(T value){
+        return this.with(this.from(this.root, value));
+    }
+
+    /**
+     * Makes a new version holding the values of this one followed by those of another, in O(log n).
+     * Neither version is changed.
+     * @param higher Version whose values are all greater than every value of this one.
+     * @return New version holding the values of both.
+     */
+    PersistentBalancedBST<T> concat(PersistentBalancedBST<T> higher){
+        if (higher.root == null) return this;
+        if (this.root == null) return higher;
+
+        // The smallest value of the higher version joins the two trees.
+        Node<T> first = higher.root;
+        while (first.left != null) first = first.left;
+        return this.with(join(this.root, first.value, first.count, deleteFirst(higher.root)));
+    }
+
+    /**
+     * Makes a copy of the part of a subtree less than a value, sharing every subtree that is kept whole.
+     * @param node Root of the subtree, null if empty.
+     * @param value Value every kept value is less than.
+     * @return Root of the new subtree.
+     */
+    private Node<T> below(Node<T> node, T value){
+        if (node == null) return null;
+        if (this.order.compare(value, node.value) <= 0) return this.below(node.left, value);
+        return join(node.left, node.value, node.count, this.below(node.right, value));
+    }
+
+    /**
+     * Makes a copy of the part of a subtree greater than or equal to a value, sharing every subtree that is kept whole.
+     * @param node Root of the subtree, null if empty.
+     * @param value Value every kept value is at least.
+     * @return Root of the new subtree.
+     */
+    private Node<T> from(Node<T> node, T value){
+        if (node == null) return null;
+        if (this.order.compare(value, node.value) > 0) return this.from(node.right, value);
+        return join(this.from(node.left, value), node.value, node.count, node.right);
+    }
+
+    /**
+     * Makes a subtree of two subtrees and a value between them, whatever their heights. The value goes down the
+     * side of the taller subtree until it meets a subtree about as tall as the other one, and the path back up
+     * is rotated into AVL balance.
+     * @param left Subtree of the smaller values, null if empty.
+     * @param value Value greater than every value on the left and less than every value on the right.
+     * @param count Count of the value.
+     * @param right Subtree of the greater values, null if empty.
+     * @param <T> Type of the values.
+     * @return Root of the new subtree.
+     */
+    private static <T> Node<T> join(Node<T> left, T value, int count, Node<T> right){
+        if (heightOf(left) > heightOf(right) + 1) return balance(left.value, left.count, left.left, join(left.right, value, count, right));
+        if (heightOf(right) > heightOf(left) + 1) return balance(right.value, right.count, join(left, value, count, right.left), right.right);
+        return new Node<>(value, count, left, right);
+    }
+
+    /**
+     * Get the number of times a value has been added to the tree.
+     * @param value Value to look for.
+     * @return Count of the value, 0 if it is not in the tree.
+     */
+    int getCount(T value){
+        Node<T> node = this.root;
+        while (node != null){
+            int compareValue = this.order.compare(value, node.value);
+            if (compareValue == 0) return node.count;
+            node = compareValue < 0 ? node.left : node.right;
+        }
+        return 0;
+    }
+
+    /**
+     * Checks if a value is in the tree.
+     * @param value Value to look for.
+     * @return True if the value has been added at least once.
+     */
+    boolean contains(T value){
+        return this.getCount(value) > 0;
+    }
+
+    /**
+     * Get the largest value in the tree less than or equal to a value.
+     * @param value Value to look for.
+     * @return Floor of the value, null if there is none.
+     */
+    T floor(T value){
+        Node<T> node = this.root, floor = null;
+        while (node != null){
+            int compareValue = this.order.compare(value, node.value);
+            if (compareValue == 0) return node.value;
+            if (compareValue > 0){
+                floor = node;
+                node = node.right;
+            }
+            else node = node.left;
+        }
+        return floor == null ? null : floor.value;
+    }
+
+    /**
+     * Get the smallest value in the tree greater than or equal to a value.
+     * @param value Value to look for.
+     * @return Ceiling of the value, null if there is none.
+     */
+    T ceiling(T value){
+        Node<T> node = this.root, ceiling = null;
+        while (node != null){
+            int compareValue = this.order.compare(value, node.value);
+            if (compareValue == 0) return node.value;
+            if (compareValue < 0){
+                ceiling = node;
+                node = node.left;
+            }
+            else node = node.right;
+        }
+        return ceiling == null ? null : ceiling.value;
+    }
+
+    /**
+     * Get the value at a position in order, counting duplicates.
+     * @param index Position from zero.
+     * @return Value at the position.
+     * @throws IndexOutOfBoundsException If there is no such position.
+     */
+    T select(long index){
+        if (index < 0 || index >= this.size()) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+        Node<T> node = this.root;
+        while (true){
+            long left = sizeOf(node.left);
+            if (index < left) node = node.left;
+            else if (index < left + node.count) return node.value;
+            else {
+                index -= left + node.count;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Get the number of values in the tree, counting duplicates.
+     * @return Number of values added to the tree.
+     */
+    long size(){
+        return sizeOf(this.root);
+    }
+
+    /**
+     * Checks if the tree has no values.
+     * @return True if the tree is empty.
+     */
+    boolean isEmpty(){
+        return this.root == null;
+    }
+
+    /**
+     * Get the height of the tree.
+     * @return Height of the tree.
+     */
+    int getHeight(){
+        return heightOf(this.root);
+    }
+
+    /**
+     * Iterates over the values in order, repeating a value for each count of its node.
+     * @return Iterator of the values.
+     */
+    public Iterator<T> iterator(){
+        return new Iterator<T>() {
+            private final ArrayDeque<Node<T>> stack = new ArrayDeque<>(); // Nodes whose left side has been pushed.
+            private Node<T> current; // Node whose value is being repeated.
+            private int remaining; // Number of times the current value is still to be returned.
+
+            {
+                this.pushLeft(PersistentBalancedBST.this.root);
+            }
+
+            /**
+             * Pushes a node and every left child below it.
+             * @param node Node to start from.
+             */
+            private void pushLeft(Node<T> node){
+                for (; node != null; node = node.left) this.stack.push(node);
+            }
+
+            public boolean hasNext(){
+                return this.remaining > 0 || !this.stack.isEmpty();
+            }
+
+            public T next(){
+                if (this.remaining == 0){
+                    if (this.stack.isEmpty()) throw new NoSuchElementException();
+                    this.current = this.stack.pop();
+                    this.remaining = this.current.count;
+                    this.pushLeft(this.current.right);
+                }
+                this.remaining--;
+                return this.current.value;
+            }
+        };
+    }
+
+    /**
+     * Checks the search order, AVL balance, heights and count totals of every node in the tree.
+     * @throws IllegalStateException If any of them is wrong.
+     */
+    void checkInvariants(){
+        this.checkInvariants(this.root, null, null);
+    }
+
+    /**
+     * Checks a subtree whose values must lie strictly between two bounds.
+     * @param node Root of the subtree.
+     * @param low Node holding the lower bound, null for none.
+     * @param high Node holding the upper bound, null for none.
+     */
+    private void checkInvariants(Node<T> node, Node<T> low, Node<T> high){
+        if (node == null) return;
+        if (low != null && this.order.compare(node.value, low.value) <= 0 || high != null && this.order.compare(node.value, high.value) >= 0)
+            throw new IllegalStateException("Value " + node.value + " is out of order.");
+        if (node.count < 1) throw new IllegalStateException("Value " + node.value + " has count " + node.count + ".");
+        if (Math.abs(heightOf(node.left) - heightOf(node.right)) > 1) throw new IllegalStateException("Value " + node.value + " is not balanced.");
+        if (node.height != Math.max(heightOf(node.left), heightOf(node.right)) + 1) throw new IllegalStateException("Value " + node.value + " has the wrong height.");
+        if (node.size != sizeOf(node.left) + node.count + sizeOf(node.right)) throw new IllegalStateException("Value " + node.value + " has the wrong total.");
+        this.checkInvariants(node.left, low, node);
+        this.checkInvariants(node.right, node, high);
+    }
+
+    /**
+     * Creates a string representation of the nodes in the tree.
+     * @return String of nodes in the tree, comma + space delimited.
+     */
+    public String toString(){
+        StringBuilder stringBuilder = new StringBuilder();
+        for (T t : this){
+            if (stringBuilder.length() > 0) stringBuilder.append(", ");
+            stringBuilder.append(t.toString());
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package bst;
+
+/**
+ * How a BalancedBST keeps itself balanced as values are added.
+ * Every policy keeps the height of the tree O(log n) for reads.
+ */
+enum RebalancePolicy {
+
+    /**
+     * AVL rotations along the insert path. Height stays under about 1.44 log2(n). This is the default.
+     */
+    AVL,
+
+    /**
+     * Rebuild the whole tree to perfect balance after every insert that adds a node.
+     * Gives the lowest height at a linear cost per insert.
+     */
+    EAGER,
+
+    /**
+     * Insert without rotations, and rebuild only the smallest subtree that has become too unbalanced,
+     * once a new node lands deeper than log(n) / log(1 / alpha). Amortized O(log n) per insert.
+     */
+    SCAPEGOAT,
+
+    /**
+     * Insert without rotations, and rebuild the whole tree on demand or on the first read after a change.
+     * Cheapest for bursts of writes in random order; the rebuild is linear. Sorted input makes each insert
+     * linear until the next read, so load sorted batches with addAll instead.
+     */
+    DEFERRED
+}
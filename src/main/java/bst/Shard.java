@@ -0,0 +1,68 @@
+package bst;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One range partition of a ShardedBST. Every call returns at once with a future, and everything passed in or out
+ * is plain data, values and counts copied out of the shard's tree, so a shard can run on a thread of its own
+ * without sharing its tree, or serve the calls from another process. The order of the values is not passed;
+ * the ShardedBST and the shard are each made with it. Calls to one shard must take effect in the order they were made.
+ * @param <T> Type of the values.
+ */
+interface Shard<T> extends AutoCloseable {
+
+    /**
+     * Adds a batch of values.
+     * @param values Values to be added, in any order.
+     * @return Future done once the values are in the shard.
+     */
+    CompletableFuture<Void> addAll(List<? extends T> values);
+
+    /**
+     * Removes one occurrence of a value.
+     * @param value Value to be removed.
+     * @return Future of true if the value was in the shard.
+     */
+    CompletableFuture<Boolean> remove(T value);
+
+    /**
+     * Gets the number of times a value has been added.
+     * @param value Value to look for.
+     * @return Future of the count, 0 if the value is not in the shard.
+     */
+    CompletableFuture<Integer> getCount(T value);
+
+    /**
+     * Gets every value in the shard as runs.
+     * @return Future of the run list of the shard, in order.
+     */
+    CompletableFuture<ShardRuns<T>> runs();
+
+    /**
+     * Gets the values in the shard between two values, inclusive, as runs.
+     * @param low Smallest value to return.
+     * @param high Largest value to return.
+     * @return Future of the run list of the values in the range, in order.
+     */
+    CompletableFuture<ShardRuns<T>> runs(T low, T high);
+
+    /**
+     * Gets values at evenly spaced positions in the shard, counting duplicates, for picking split points.
+     * @param count Number of values to pick.
+     * @return Future of the values in order, fewer than count if the shard is smaller, empty if it is empty.
+     */
+    CompletableFuture<List<T>> sample(int count);
+
+    /**
+     * Replaces everything in the shard with a run list.
+     * @param runs Run list of the new values, in order.
+     * @return Future done once the shard holds the new values.
+     */
+    CompletableFuture<Void> load(ShardRuns<T> runs);
+
+    /**
+     * Releases the shard's threads or connections. Calls made after this fail.
+     */
+    void close();
+}
@@ -0,0 +1,64 @@
+package bst;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Distinct values of a shard in order, with the count of each. It is plain data, without the order of the values
+ * or any part of a tree, so it can be sent to or from a shard in another process; the order stays with the
+ * ShardedBST and with the shard's own tree.
+ * @param <T> Type of the values.
+ */
+final class ShardRuns<T> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final ArrayList<T> values; // Distinct values, in order.
+    private int[] counts; // Count of each value.
+
+    /**
+     * Constructor to make an empty run list with room for a number of distinct values.
+     * @param capacity Initial number of distinct values it can hold.
+     */
+    ShardRuns(int capacity){
+        this.values = new ArrayList<>(Math.max(capacity, 1));
+        this.counts = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Appends a value to the end of the list. The value must be greater than the last value.
+     * @param value Value to be appended.
+     * @param count Number of times the value occurs.
+     */
+    void add(T value, int count){
+        int size = this.values.size();
+        if (size == this.counts.length) this.counts = Arrays.copyOf(this.counts, size*2);
+        this.values.add(value);
+        this.counts[size] = count;
+    }
+
+    /**
+     * Get the number of distinct values.
+     * @return Number of runs.
+     */
+    int size(){
+        return this.values.size();
+    }
+
+    /**
+     * Get a value.
+     * @param index Index of the run.
+     * @return Value of the run.
+     */
+    T value(int index){
+        return this.values.get(index);
+    }
+
+    /**
+     * Get the count of a value.
+     * @param index Index of the run.
+     * @return Number of times the value of the run occurs.
+     */
+    int count(int index){
+        return this.counts[index];
+    }
+}
@@ -0,0 +1,466 @@
+package bst;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Class for a balanced binary search tree split by value range across a number of shards, each with its own tree,
+ * so no one root or rebuild holds up the whole key space. Shard i holds the values from split i - 1 (inclusive)
+ * up to split i; a value is routed to its shard by a binary search of the splits, in O(log N) for N shards.
+ * Batches are split by shard and the parts sent to all shards at once, so a LocalShard per core adds them in parallel.
+ * <p>
+ * The splits are picked from samples of the shards: whenever one shard holds more than its share of the values
+ * by the skew factor, and the tree has grown by half since the last time, every value is moved to the shard the new
+ * splits give it, in one linear pass. Rebuilds are so amortized O(1) per value added. Until the first one, every
+ * value is in the first shard.
+ * <p>
+ * Safe to use from many threads: calls route under a shared lock and only moving values takes it alone.
+ * @param <T> Type of the values.
+ */
+public class ShardedBST<T> implements Iterable<T>, AutoCloseable {
+    private final List<Shard<T>> shards; // Shards in order of their ranges.
+    private final Comparator<Object> order; // Order of the values.
+    private volatile Object[] splits = new Object[0]; // Smallest value of each shard after the first, in order.
+    private final AtomicLongArray loads; // Number of values in each shard, counting duplicates.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // Held alone only while values move.
+    private double skew = 2; // Share of the values one shard may hold, as a multiple of its fair share.
+    private volatile long lastSplitSize = 0; // Size of the tree when the splits were last picked.
+
+    /**
+     * Number of values sampled from each shard to pick the splits.
+     */
+    static final int SAMPLES_PER_SHARD = 64;
+
+    /**
+     * Fewest values per shard before the splits are first picked.
+     */
+    static final int MIN_SPLIT_SIZE = 1024;
+
+    /**
+     * Constructor to make an empty tree of local shards in natural order, each on a thread of its own.
+     * @param shards Number of shards, such as the number of cores.
+     * @throws IllegalArgumentException If shards is less than one.
+     */
+    ShardedBST(int shards){
+        this(shards, null);
+    }
+
+    /**
+     * Constructor to make an empty tree of local shards, each on a thread of its own.
+     * @param shards Number of shards, such as the number of cores.
+     * @param comparator Order of the values, null for natural order.
+     * @throws IllegalArgumentException If shards is less than one.
+     */
+    ShardedBST(int shards, Comparator<? super T> comparator){
+        this(localShards(shards, comparator), comparator);
+    }
+
+    /**
+     * Constructor to make a tree of shards made elsewhere, such as local shards on executors of the caller's.
+     * The shards must be empty and must all use the given order.
+     * @param shards Shards in any order; they are given their ranges here.
+     * @param comparator Order of the values, null for natural order.
+     * @throws IllegalArgumentException If there are no shards.
+     */
+    @SuppressWarnings("unchecked")
+    ShardedBST(List<? extends Shard<T>> shards, Comparator<? super T> comparator){
+        if (shards.isEmpty()) throw new IllegalArgumentException("A sharded tree needs at least one shard.");
+        this.shards = new ArrayList<>(shards);
+        this.order = comparator == null ? BalancedBST.NATURAL_ORDER : (Comparator<Object>) comparator;
+        this.loads = new AtomicLongArray(shards.size());
+    }
+
+    /**
+     * Makes local shards with threads named bst-shard-(index).
+     * @param count Number of shards.
+     * @param comparator Order of the values, null for natural order.
+     * @param <T> Type of the values.
+     * @return Shards.
+     * @throws IllegalArgumentException If count is less than one.
+     */
+    private static <T> List<Shard<T>> localShards(int count, Comparator<? super T> comparator){
+        if (count < 1) throw new IllegalArgumentException("Number of shards must be at least one: " + count);
+        List<Shard<T>> shards = new ArrayList<>(count);
+        for (int i=0; i<count; i++) shards.add(new LocalShard<>(comparator, "bst-shard-" + i));
+        return shards;
+    }
+
+    /**
+     * Add a node to the BST.
+     * @param value Value to be placed in node.
+     */
+    void addNode(T value){
+        this.addAll(Collections.singletonList(value));
+    }
+
+    /**
+     * Add a batch of values to the BST. The batch is split by shard and every shard adds its part at the same time.
+     * @param values Values to be placed in the tree.
+     */
+    void addAll(Collection<? extends T> values){
+        if (values.isEmpty()) return;
+        this.lock.readLock().lock();
+        try {
+            // Route every value, then send each shard its part.
+            List<List<T>> parts = new ArrayList<>(this.shards.size());
+            for (int i=0; i<this.shards.size(); i++) parts.add(null);
+            for (T value : values){
+                int shard = this.route(value);
+                if (parts.get(shard) == null) parts.set(shard, new ArrayList<>());
+                parts.get(shard).add(value);
+            }
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i=0; i<parts.size(); i++){
+                if (parts.get(i) == null) continue;
+                futures.add(this.shards.get(i).addAll(parts.get(i)));
+                this.loads.addAndGet(i, parts.get(i).size());
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+        if (this.isSkewed()) this.split(true);
+    }
+
+    /**
+     * Remove one occurrence of a value from the BST.
+     * @param value Value to be removed.
+     * @return True if the value was in the tree.
+     */
+    boolean remove(T value){
+        this.lock.readLock().lock();
+        try {
+            int shard = this.route(value);
+            boolean removed = this.shards.get(shard).remove(value).join();
+            if (removed) this.loads.decrementAndGet(shard);
+            return removed;
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of times a value has been added to the tree.
+     * @param value Value to look for.
+     * @return Count of the value, 0 if it is not in the tree.
+     */
+    int getCount(T value){
+        this.lock.readLock().lock();
+        try {
+            return this.shards.get(this.route(value)).getCount(value).join();
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if a value is in the tree.
+     * @param value Value to look for.
+     * @return True if the value has been added at least once.
+     */
+    boolean contains(T value){
+        return this.getCount(value) > 0;
+    }
+
+    /**
+     * Get the number of values in the tree, counting duplicates.
+     * @return Number of values added to the tree.
+     */
+    long size(){
+        long size = 0;
+        for (int i=0; i<this.loads.length(); i++) size += this.loads.get(i);
+        return size;
+    }
+
+    /**
+     * Get the number of values in each shard, counting duplicates.
+     * @return Size of each shard, in order of their ranges.
+     */
+    long[] shardSizes(){
+        long[] sizes = new long[this.loads.length()];
+        for (int i=0; i<sizes.length; i++) sizes[i] = this.loads.get(i);
+        return sizes;
+    }
+
+    /**
+     * Get the values the shards start at.
+     * @return Smallest value of each shard after the first; fewer than one per shard until the first split.
+     */
+    Object[] getSplits(){
+        return this.splits.clone();
+    }
+
+    /**
+     * Get how far one shard may go over its fair share of the values before the splits are picked again.
+     * @return Skew factor.
+     */
+    double getSkew(){
+        return this.skew;
+    }
+
+    /**
+     * Set how far one shard may go over its fair share of the values before the splits are picked again.
+     * @param skew Skew factor, above 1.
+     * @throws IllegalArgumentException If skew is not above 1.
+     */
+    void setSkew(double skew){
+        if (!(skew > 1)) throw new IllegalArgumentException("Skew must be above 1: " + skew);
+        this.skew = skew;
+    }
+
+    /**
+     * Get the values in the tree between two values, inclusive, in order. The shards in the range are read one
+     * after another, in order of their ranges, which is the merged order; see iterator.
+     * @param low Smallest value to return.
+     * @param high Largest value to return.
+     * @return Iterable of the values in the range, repeating a value for each count.
+     */
+    Iterable<T> range(final T low, final T high){
+        return () -> this.order.compare(low, high) <= 0 ? new RunsIterator(true, low, high) : Collections.<T>emptyIterator();
+    }
+
+    /**
+     * Iterates over the values in order, repeating a value for each count. The shards are asked for their values
+     * one at a time as the iterator reaches them, with the next one asked ahead, so only two shards are held at
+     * once. Each shard is seen as it was when it was asked; if values move between shards in the meantime, the
+     * iterator goes on from the last value it returned, so none is returned twice or skipped.
+     * @return Iterator of the values.
+     */
+    public Iterator<T> iterator(){
+        return new RunsIterator(false, null, null);
+    }
+
+    /**
+     * Iterator over the run lists of shards in order, asking each shard for its runs when the one before it is
+     * reached and waiting for them only when they are needed.
+     */
+    private class RunsIterator implements Iterator<T> {
+        private final boolean bounded; // If only the values from low to high are read.
+        private final T low; // Smallest value to return, if bounded.
+        private final T high; // Largest value to return, if bounded.
+        private Object[] splits; // Splits the shards being read were routed with, null before the first.
+        private int shard; // Index of the shard being read.
+        private int first; // Index of the first shard of the range, by the splits.
+        private int last; // Index of the last shard of the range, by the splits.
+        private CompletableFuture<ShardRuns<T>> ahead; // Runs of the next shard, null if there is none.
+        private ShardRuns<T> runs; // Run list being read, null before the first.
+        private int index; // Index of the run being read.
+        private int remaining; // Number of times the current value is still to be returned.
+        private Object previous; // Last value returned, null before the first.
+
+        /**
+         * Constructor to read the shards in order.
+         * @param bounded If only the values from low to high are read.
+         * @param low Smallest value to return, if bounded.
+         * @param high Largest value to return, if bounded.
+         */
+        RunsIterator(boolean bounded, T low, T high){
+            this.bounded = bounded;
+            this.low = low;
+            this.high = high;
+        }
+
+        public boolean hasNext(){
+            // Move on to the next run, and to the next shard when this one runs out.
+            while (this.remaining == 0){
+                if (this.runs != null && this.index + 1 < this.runs.size()) this.remaining = this.runs.count(++this.index);
+                else if (!this.advance()) return false;
+            }
+            return true;
+        }
+
+        public T next(){
+            if (!this.hasNext()) throw new NoSuchElementException();
+            this.remaining--;
+            T value = this.runs.value(this.index);
+            this.previous = value;
+            return value;
+        }
+
+        /**
+         * Moves on to the runs of the next shard, and asks the shard after it for its runs. If the splits have
+         * changed since the shards were routed, they are routed again from the last value returned.
+         * @return False if there are no more shards.
+         */
+        private boolean advance(){
+            CompletableFuture<ShardRuns<T>> next;
+            ShardedBST.this.lock.readLock().lock();
+            try {
+                Object[] splits = ShardedBST.this.splits;
+                if (splits == this.splits){
+                    if (this.ahead == null) return false;
+                    next = this.ahead;
+                    this.shard++;
+                }
+                else {
+                    // Route again; the shard of the last value returned holds the values that follow it.
+                    this.splits = splits;
+                    this.first = this.bounded ? ShardedBST.this.route(this.low) : 0;
+                    this.last = this.bounded ? ShardedBST.this.route(this.high) : ShardedBST.this.shards.size() - 1;
+                    this.shard = this.previous != null ? ShardedBST.this.route(this.previous) : this.first;
+                    next = this.fetch(this.shard);
+                }
+                this.ahead = this.shard < this.last ? this.fetch(this.shard + 1) : null;
+            }
+            finally {
+                ShardedBST.this.lock.readLock().unlock();
+            }
+
+            // Skip what was returned before the shards were routed again.
+            this.runs = next.join();
+            this.index = -1;
+            if (this.previous != null)
+                while (this.index + 1 < this.runs.size() && ShardedBST.this.order.compare(this.runs.value(this.index + 1), this.previous) <= 0) this.index++;
+            return true;
+        }
+
+        /**
+         * Asks a shard for its runs, only those in the range if it is the first or last shard of it.
+         * @param shard Index of the shard.
+         * @return Future of the runs.
+         */
+        private CompletableFuture<ShardRuns<T>> fetch(int shard){
+            Shard<T> part = ShardedBST.this.shards.get(shard);
+            return this.bounded && (shard == this.first || shard == this.last) ? part.runs(this.low, this.high) : part.runs();
+        }
+    }
+
+    /**
+     * Routes a value to its shard by a binary search of the splits.
+     * @param value Value to route.
+     * @return Index of the shard whose range holds the value.
+     */
+    private int route(Object value){
+        Object[] splits = this.splits;
+        int low = 0, high = splits.length;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if (this.order.compare(value, splits[middle]) < 0) high = middle;
+            else low = middle + 1;
+        }
+        return low;
+    }
+
+    /**
+     * Checks if a shard holds too much of the tree, and the tree has grown enough to pay for moving its values.
+     * @return True if the splits should be picked again.
+     */
+    private boolean isSkewed(){
+        int count = this.shards.size();
+        long size = this.size();
+        if (count == 1 || size < (long) MIN_SPLIT_SIZE * count || size < this.lastSplitSize * 3 / 2) return false;
+        long largest = 0;
+        for (int i=0; i<count; i++) largest = Math.max(largest, this.loads.get(i));
+        return largest > this.skew * size / count;
+    }
+
+    /**
+     * Picks new splits from samples of the shards, then moves every value to the shard the new splits give it.
+     * Other calls wait until the values have moved.
+     */
+    void split(){
+        this.split(false);
+    }
+
+    /**
+     * Picks new splits and moves the values, unless only asked to if the tree is skewed and it no longer is,
+     * such as when another thread has just split it.
+     * @param onlyIfSkewed If the tree should be checked again once no other call is running.
+     */
+    private void split(boolean onlyIfSkewed){
+        this.lock.writeLock().lock();
+        try {
+            if (onlyIfSkewed && !this.isSkewed()) return;
+            int count = this.shards.size();
+            List<CompletableFuture<List<T>>> samples = new ArrayList<>(count);
+            List<CompletableFuture<ShardRuns<T>>> contents = new ArrayList<>(count);
+            for (Shard<T> shard : this.shards){
+                samples.add(shard.sample(SAMPLES_PER_SHARD));
+                contents.add(shard.runs());
+            }
+
+            // The samples are in order across shards; each stands for an equal part of its shard.
+            long size = this.size();
+            if (size == 0) return;
+            Object[] splits = new Object[count - 1];
+            double seen = 0;
+            int next = 0;
+            for (int i=0; i<count && next<splits.length; i++){
+                List<T> sample = samples.get(i).join();
+                double weight = (double) this.loads.get(i) / Math.max(sample.size(), 1);
+                for (T value : sample){
+                    while (next < splits.length && seen >= (double) size * (next + 1) / count) splits[next++] = value;
+                    seen += weight;
+                }
+            }
+
+            // Splits the samples did not reach, such as when one value fills the tree, go to the largest value.
+            Object largest = null;
+            for (int i=count - 1; i>=0 && largest==null; i--){
+                ShardRuns<T> runs = contents.get(i).join();
+                if (runs.size() > 0) largest = runs.value(runs.size() - 1);
+            }
+            while (next < splits.length) splits[next++] = largest;
+
+            // Walk the values in order, cutting a new run list for each shard at its split.
+            List<ShardRuns<T>> parts = new ArrayList<>(count);
+            long[] loads = new long[count];
+            ShardRuns<T> part = new ShardRuns<>(16);
+            for (CompletableFuture<ShardRuns<T>> content : contents){
+                ShardRuns<T> runs = content.join();
+                for (int j=0; j<runs.size(); j++){
+                    while (parts.size() < splits.length && this.order.compare(runs.value(j), splits[parts.size()]) >= 0){
+                        parts.add(part);
+                        part = new ShardRuns<>(16);
+                    }
+                    part.add(runs.value(j), runs.count(j));
+                    loads[parts.size()] += runs.count(j);
+                }
+            }
+            parts.add(part);
+            while (parts.size() < count) parts.add(new ShardRuns<>(1));
+
+            // Load every shard at once.
+            List<CompletableFuture<Void>> futures = new ArrayList<>(count);
+            for (int i=0; i<count; i++) futures.add(this.shards.get(i).load(parts.get(i)));
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            for (int i=0; i<count; i++) this.loads.set(i, loads[i]);
+            this.splits = splits;
+            this.lastSplitSize = size;
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes every shard.
+     */
+    public void close(){
+        for (Shard<T> shard : this.shards) shard.close();
+    }
+
+    /**
+     * Creates a string representation of the nodes in the tree.
+     * @return String of nodes in the tree, comma + space delimited.
+     */
+    public String toString(){
+        StringBuilder stringBuilder = new StringBuilder();
+        for (T t : this){
+            if (stringBuilder.length() > 0) stringBuilder.append(", ");
+            stringBuilder.append(t.toString());
+        }
+        return stringBuilder.toString();
+    }
+}
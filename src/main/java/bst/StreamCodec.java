@@ -0,0 +1,98 @@
+package bst;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts values to and from a stream of bytes, given the value written before, so ascending values can be
+ * stored as small differences.
+ * @param <T> Type of the values.
+ */
+interface StreamCodec<T> {
+
+    /**
+     * Codec for Integer values: the first as a zigzag varint, each later one as the varint distance from the last.
+     */
+    StreamCodec<Integer> INTEGER = new StreamCodec<Integer>() {
+        public void write(DataOutput out, Integer previous, Integer value) throws IOException {
+            if (previous == null) BSTSerializer.writeVarLong(out, BSTSerializer.zigzag(value));
+            else BSTSerializer.writeVarLong(out, (long) value - previous);
+        }
+
+        public Integer read(DataInput in, Integer previous) throws IOException {
+            if (previous == null) return (int) BSTSerializer.unzigzag(BSTSerializer.readVarLong(in));
+            return (int) (previous + BSTSerializer.readVarLong(in));
+        }
+    };
+
+    /**
+     * Codec for Long values: the first as a zigzag varint, each later one as the varint distance from the last.
+     * Distances too large for a long wrap around, and wrap back when read.
+     */
+    StreamCodec<Long> LONG = new StreamCodec<Long>() {
+        public void write(DataOutput out, Long previous, Long value) throws IOException {
+            if (previous == null) BSTSerializer.writeVarLong(out, BSTSerializer.zigzag(value));
+            else BSTSerializer.writeVarLong(out, value - previous);
+        }
+
+        public Long read(DataInput in, Long previous) throws IOException {
+            if (previous == null) return BSTSerializer.unzigzag(BSTSerializer.readVarLong(in));
+            return previous + BSTSerializer.readVarLong(in);
+        }
+    };
+
+    /**
+     * Codec for String values in modified UTF-8, each prefixed with its length.
+     */
+    StreamCodec<String> STRING = new StreamCodec<String>() {
+        public void write(DataOutput out, String previous, String value) throws IOException {
+            out.writeUTF(value);
+        }
+
+        public String read(DataInput in, String previous) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    /**
+     * Makes a codec that writes every value at the fixed width of a KeyCodec, such as KeyCodec.DOUBLE.
+     * The codec has its own buffer, so it should only be used by one thread at a time.
+     * @param codec Fixed-width codec for the values.
+     * @param <T> Type of the values.
+     * @return Codec writing the same bytes as the fixed-width codec.
+     */
+    static <T> StreamCodec<T> fixed(final KeyCodec<T> codec){
+        final ByteBuffer buffer = ByteBuffer.allocate(codec.width());
+        return new StreamCodec<T>() {
+            public void write(DataOutput out, T previous, T value) throws IOException {
+                codec.write(buffer, 0, value);
+                out.write(buffer.array());
+            }
+
+            public T read(DataInput in, T previous) throws IOException {
+                in.readFully(buffer.array());
+                return codec.read(buffer, 0);
+            }
+        };
+    }
+
+    /**
+     * Writes a value.
+     * @param out Stream to write to.
+     * @param previous Value written just before, which is less than this one, or null for the first value.
+     * @param value Value to be written.
+     * @throws IOException If the stream can not be written.
+     */
+    void write(DataOutput out, T previous, T value) throws IOException;
+
+    /**
+     * Reads a value.
+     * @param in Stream to read from.
+     * @param previous Value read just before, or null for the first value.
+     * @return Value that was read.
+     * @throws IOException If the stream can not be read.
+     */
+    T read(DataInput in, T previous) throws IOException;
+}
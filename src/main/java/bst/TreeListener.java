@@ -0,0 +1,42 @@
+package bst;
+
+/**
+ * Receives events from a BalancedBST as they happen, for metrics. Set with BalancedBST.setListener.
+ * Every method does nothing by default, so a listener only needs the events it cares about.
+ * Events arrive on the thread doing the operation, so they should be cheap.
+ */
+interface TreeListener {
+
+    /**
+     * Called after a value is added.
+     * @param nanos Time the insert took.
+     * @param comparisons Number of values compared against.
+     * @param duplicate True if the value was already in the tree and only its count changed.
+     */
+    default void inserted(long nanos, int comparisons, boolean duplicate){
+    }
+
+    /**
+     * Called after a value is removed.
+     * @param nanos Time the removal took.
+     * @param comparisons Number of values compared against.
+     * @param unlinked True if the value's node was taken out of the tree.
+     */
+    default void removed(long nanos, int comparisons, boolean unlinked){
+    }
+
+    /**
+     * Called after nodes are rebuilt to perfect balance: the whole tree after a balance, a bulk add or a deferred
+     * rebuild, or only the subtree of a scapegoat that a scapegoat insert rebuilt.
+     * @param nanos Time the rebuild took.
+     * @param nodes Number of nodes rebuilt, which is less than the nodes in the tree for a subtree.
+     */
+    default void rebalanced(long nanos, int nodes){
+    }
+
+    /**
+     * Called when a new node object is allocated, rather than taken from the pool of removed nodes.
+     */
+    default void allocated(){
+    }
+}
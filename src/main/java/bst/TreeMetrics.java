@@ -0,0 +1,167 @@
+package bst;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class for metrics of one BalancedBST: operation counts, insert latency, comparisons, rebuilds and allocations,
+ * plus the shape of the tree. Counters are striped, so recording an event costs a few uncontended adds.
+ * Attach it with tree.setListener(metrics), and publish it over JMX with register.
+ */
+public class TreeMetrics implements TreeListener, TreeMetricsMBean {
+    private final BalancedBST<?> tree; // Tree the metrics are for.
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder removes = new LongAdder();
+    private final LongAdder comparisons = new LongAdder(); // Comparisons made by inserts and removals.
+    private final LongAdder rebalances = new LongAdder();
+    private final LongAdder rebalanceNanos = new LongAdder();
+    private final LongAdder allocations = new LongAdder();
+    private final AtomicLongArray insertLatency = new AtomicLongArray(64); // Insert count by bit length of its time in nanoseconds.
+
+    /**
+     * Constructor to make metrics for a tree. The tree still has to be given the metrics as its listener.
+     * @param tree Tree the metrics are for.
+     */
+    TreeMetrics(BalancedBST<?> tree){
+        this.tree = tree;
+    }
+
+    /**
+     * Makes metrics for a tree and sets them as its listener.
+     * @param tree Tree to measure.
+     * @return Metrics of the tree.
+     */
+    static TreeMetrics attach(BalancedBST<?> tree){
+        TreeMetrics metrics = new TreeMetrics(tree);
+        tree.setListener(metrics);
+        return metrics;
+    }
+
+    /**
+     * Publishes the metrics on the platform MBean server as bst:type=BalancedBST,name=(name).
+     * @param name Name of the tree.
+     * @return Name the metrics were registered under.
+     * @throws JMException If the name is taken or not valid.
+     */
+    ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("bst:type=BalancedBST,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public void inserted(long nanos, int comparisons, boolean duplicate){
+        this.inserts.increment();
+        this.comparisons.add(comparisons);
+        this.insertLatency.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(nanos, 1)) - 1);
+    }
+
+    public void removed(long nanos, int comparisons, boolean unlinked){
+        this.removes.increment();
+        this.comparisons.add(comparisons);
+    }
+
+    public void rebalanced(long nanos, int nodes){
+        this.rebalances.increment();
+        this.rebalanceNanos.add(nanos);
+    }
+
+    public void allocated(){
+        this.allocations.increment();
+    }
+
+    /**
+     * Estimates a percentile of the insert times from the histogram.
+     * @param fraction Fraction of inserts that took no longer, such as 0.99.
+     * @return Upper end of the histogram bucket the percentile falls in, in nanoseconds.
+     */
+    long insertLatencyPercentile(double fraction){
+        long total = 0;
+        for (int i=0; i<64; i++) total += this.insertLatency.get(i);
+        if (total == 0) return 0;
+
+        // Walk up the buckets until enough inserts have been passed.
+        long target = (long) Math.ceil(total * fraction), seen = 0;
+        for (int i=0; i<64; i++){
+            seen += this.insertLatency.get(i);
+            if (seen >= target) return i == 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public long getInsertCount(){
+        return this.inserts.sum();
+    }
+
+    public long getRemoveCount(){
+        return this.removes.sum();
+    }
+
+    public long getInsertLatencyP50Nanos(){
+        return this.insertLatencyPercentile(0.5);
+    }
+
+    public long getInsertLatencyP99Nanos(){
+        return this.insertLatencyPercentile(0.99);
+    }
+
+    public long getInsertLatencyP999Nanos(){
+        return this.insertLatencyPercentile(0.999);
+    }
+
+    public double getComparisonsPerOperation(){
+        long operations = this.inserts.sum() + this.removes.sum();
+        return operations == 0 ? 0 : (double) this.comparisons.sum() / operations;
+    }
+
+    public long getRebalanceCount(){
+        return this.rebalances.sum();
+    }
+
+    public double getRebalanceTotalMillis(){
+        return this.rebalanceNanos.sum() / 1e6;
+    }
+
+    public long getNodeAllocations(){
+        return this.allocations.sum();
+    }
+
+    public int getSize(){
+        return this.tree.size();
+    }
+
+    public int getHeight(){
+        return this.tree.getHeight();
+    }
+
+    public int getOptimalHeight(){
+        return 32 - Integer.numberOfLeadingZeros(this.tree.distinct());
+    }
+
+    public double getDuplicateRatio(){
+        int size = this.tree.size();
+        return size == 0 ? 0 : 1 - (double) this.tree.distinct() / size;
+    }
+
+    public void reset(){
+        this.inserts.reset();
+        this.removes.reset();
+        this.comparisons.reset();
+        this.rebalances.reset();
+        this.rebalanceNanos.reset();
+        this.allocations.reset();
+        for (int i=0; i<64; i++) this.insertLatency.set(i, 0);
+    }
+
+    public String toString(){
+        return "inserts=" + this.getInsertCount() + ", removes=" + this.getRemoveCount()
+                + ", insertP50=" + this.getInsertLatencyP50Nanos() + "ns, insertP99=" + this.getInsertLatencyP99Nanos() + "ns"
+                + ", comparisons/op=" + String.format("%.2f", this.getComparisonsPerOperation())
+                + ", rebalances=" + this.getRebalanceCount() + " (" + String.format("%.1f", this.getRebalanceTotalMillis()) + "ms)"
+                + ", allocations=" + this.getNodeAllocations()
+                + ", height=" + this.getHeight() + "/" + this.getOptimalHeight()
+                + ", duplicates=" + String.format("%.3f", this.getDuplicateRatio());
+    }
+}
@@ -0,0 +1,90 @@
+package bst;
+
+/**
+ * Management interface of TreeMetrics, as seen through JMX.
+ */
+public interface TreeMetricsMBean {
+
+    /**
+     * Get the number of inserts since the last reset, duplicates included.
+     * @return Number of values added.
+     */
+    long getInsertCount();
+
+    /**
+     * Get the number of removals since the last reset, whether or not a node was unlinked.
+     * @return Number of removals.
+     */
+    long getRemoveCount();
+
+    /**
+     * Get the median insert time, read from a histogram of power-of-two buckets.
+     * @return Median insert time in nanoseconds, to within a factor of two.
+     */
+    long getInsertLatencyP50Nanos();
+
+    /**
+     * Get the 99th percentile insert time, read from a histogram of power-of-two buckets.
+     * @return 99th percentile insert time in nanoseconds, to within a factor of two.
+     */
+    long getInsertLatencyP99Nanos();
+
+    /**
+     * Get the 99.9th percentile insert time, read from a histogram of power-of-two buckets.
+     * @return 99.9th percentile insert time in nanoseconds, to within a factor of two.
+     */
+    long getInsertLatencyP999Nanos();
+
+    /**
+     * Get how many values each insert or removal was compared against on average.
+     * @return Average number of comparisons per insert or removal.
+     */
+    double getComparisonsPerOperation();
+
+    /**
+     * Get the number of rebuilds to perfect balance, of the whole tree or of a scapegoat subtree.
+     * @return Number of rebuilds.
+     */
+    long getRebalanceCount();
+
+    /**
+     * Get the time spent in rebuilds, of the whole tree or of a scapegoat subtree.
+     * @return Total time spent in rebuilds, in milliseconds.
+     */
+    double getRebalanceTotalMillis();
+
+    /**
+     * Get the number of nodes made new, rather than taken from the pool of removed nodes.
+     * @return Number of node objects allocated.
+     */
+    long getNodeAllocations();
+
+    /**
+     * Get the size of the tree as it is now; this is not reset.
+     * @return Number of values in the tree, counting duplicates.
+     */
+    int getSize();
+
+    /**
+     * Get the height of the tree as it is now; this is not reset.
+     * @return Current height of the tree, before any deferred inserts are balanced.
+     */
+    int getHeight();
+
+    /**
+     * Get the lowest height the nodes of the tree could have, to compare with the current height.
+     * @return Height of a perfectly balanced tree of the same nodes, ceil(log2(n+1)).
+     */
+    int getOptimalHeight();
+
+    /**
+     * Get how much of the tree is duplicates, which are counted in a node rather than given their own.
+     * @return Share of the values in the tree that repeat a value already there.
+     */
+    double getDuplicateRatio();
+
+    /**
+     * Sets every counter back to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,185 @@
+package bst;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for BSTSerializer against a TreeMap model of the values and their counts: round trips through streams and
+ * channels, damaged snapshots, and whatever follows a snapshot being left for the caller.
+ */
+public class BSTSerializerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A tree read back holds exactly the values and counts written, with or without a checksum, and is balanced.
+     */
+    @Test
+    public void roundTripMatchesModel() throws IOException {
+        for (boolean checksum : new boolean[]{false, true}){
+            TreeMap<Integer, Integer> model = new TreeMap<>();
+            BalancedBST<Integer> tree = new BalancedBST<>();
+            Random random = new Random(checksum ? 1 : 0);
+            for (int i=0; i<20_000; i++){
+                // Mostly near values, with some at the ends of the range so the distances overflow an int.
+                int value = random.nextInt(10) == 0 ? (random.nextBoolean() ? Integer.MIN_VALUE + i : Integer.MAX_VALUE - i) : random.nextInt(10_000) - 5_000;
+                tree.addNode(value);
+                model.merge(value, 1, Integer::sum);
+            }
+            BalancedBST<Integer> read = BSTSerializer.read(StreamCodec.INTEGER, new ByteArrayInputStream(write(tree, StreamCodec.INTEGER, checksum)));
+            assertEquals(model, counts(read));
+            assertEquals(tree.size(), read.size());
+            assertEquals(32 - Integer.numberOfLeadingZeros(read.distinct()), read.getHeight());
+        }
+
+        // Longs and strings round trip the same way, and an empty tree reads back empty.
+        BalancedBST<Long> longs = new BalancedBST<>();
+        for (long i=0; i<1_000; i++) longs.addNode(i * i * i * 1_000_003L - (1L << 40), (int) (i % 3) + 1);
+        assertEquals(longs.toString(), BSTSerializer.read(StreamCodec.LONG, new ByteArrayInputStream(write(longs, StreamCodec.LONG, true))).toString());
+        BalancedBST<String> strings = new BalancedBST<>();
+        for (int i=0; i<1_000; i++) strings.addNode("value " + (i % 300) + " é");
+        assertEquals(strings.toString(), BSTSerializer.read(StreamCodec.STRING, new ByteArrayInputStream(write(strings, StreamCodec.STRING, false))).toString());
+        assertEquals(0, BSTSerializer.read(StreamCodec.INTEGER, new ByteArrayInputStream(write(new BalancedBST<>(), StreamCodec.INTEGER, true))).size());
+    }
+
+    /**
+     * Any one byte of a checksummed snapshot changed, or the snapshot cut short, fails the read with an IOException.
+     */
+    @Test
+    public void damagedSnapshotFails() throws IOException {
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        for (int i=0; i<200; i++) tree.addNode(i * 7 % 101);
+        byte[] bytes = write(tree, StreamCodec.INTEGER, true);
+
+        for (int i=0; i<bytes.length; i++){
+            byte[] damaged = bytes.clone();
+            damaged[i] ^= 0x10;
+            assertFails("Byte " + i + " changed", damaged);
+        }
+        byte[] checksum = bytes.clone();
+        checksum[checksum.length - 1]++;
+        try {
+            BSTSerializer.read(StreamCodec.INTEGER, new ByteArrayInputStream(checksum));
+            fail("A wrong checksum was accepted.");
+        }
+        catch (IOException e){
+            assertEquals("Snapshot checksum does not match.", e.getMessage());
+        }
+        for (int length=0; length<bytes.length; length += 7) assertFails("Cut to " + length, Arrays.copyOf(bytes, length));
+    }
+
+    /**
+     * Reading a snapshot from a stream leaves the bytes after it unread, so snapshots can follow one another.
+     */
+    @Test
+    public void bytesAfterSnapshotStayInStream() throws IOException {
+        BalancedBST<Integer> first = new BalancedBST<>(), second = new BalancedBST<>();
+        for (int i=0; i<5_000; i++){
+            first.addNode(i % 1_000);
+            second.addNode(-i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BSTSerializer.write(first, StreamCodec.INTEGER, out, true);
+        BSTSerializer.write(second, StreamCodec.INTEGER, out, false);
+        out.write(new byte[]{42, 43});
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals(first.toString(), BSTSerializer.read(StreamCodec.INTEGER, in).toString());
+        assertEquals(second.toString(), BSTSerializer.read(StreamCodec.INTEGER, in).toString());
+        assertEquals(42, in.read());
+        assertEquals(43, in.read());
+        assertEquals(-1, in.read());
+    }
+
+    /**
+     * Reading a snapshot from a file channel leaves its position just past the snapshot, though the file is read
+     * ahead in blocks.
+     */
+    @Test
+    public void channelPositionEndsAtSnapshot() throws IOException {
+        BalancedBST<Integer> first = new BalancedBST<>(), second = new BalancedBST<>();
+        for (int i=0; i<50_000; i++){
+            first.addNode(i * 31);
+            second.addNode(i % 17);
+        }
+        Path path = this.folder.getRoot().toPath().resolve("trees");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)){
+            BSTSerializer.write(first, StreamCodec.INTEGER, channel, true);
+            BSTSerializer.write(second, StreamCodec.INTEGER, channel, true);
+        }
+        long firstLength = write(first, StreamCodec.INTEGER, true).length;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            assertEquals(first.toString(), BSTSerializer.read(StreamCodec.INTEGER, channel).toString());
+            assertEquals(firstLength, channel.position());
+            assertEquals(second.toString(), BSTSerializer.read(StreamCodec.INTEGER, channel).toString());
+            assertEquals(channel.size(), channel.position());
+        }
+    }
+
+    /**
+     * A tree with a comparator can not be written, as snapshots are read back in natural order.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void treeWithComparatorIsRejected() throws IOException {
+        BalancedBST<Integer> tree = new BalancedBST<>(Comparator.<Integer>reverseOrder());
+        tree.addNode(1);
+        BSTSerializer.write(tree, StreamCodec.INTEGER, new ByteArrayOutputStream(), false);
+    }
+
+    /**
+     * Writes a snapshot of a tree to an array.
+     * @param tree Tree to be written.
+     * @param codec Codec for the values of the tree.
+     * @param checksum If a CRC32 should be written.
+     * @param <T> Type of the values.
+     * @return Bytes of the snapshot.
+     * @throws IOException Never, as the stream is an array.
+     */
+    private static <T> byte[] write(BalancedBST<T> tree, StreamCodec<T> codec, boolean checksum) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BSTSerializer.write(tree, codec, out, checksum);
+        return out.toByteArray();
+    }
+
+    /**
+     * Checks that reading a snapshot fails with an IOException.
+     * @param message Message if it does not.
+     * @param bytes Bytes of the snapshot.
+     */
+    private static void assertFails(String message, byte[] bytes){
+        try {
+            BSTSerializer.read(StreamCodec.INTEGER, new ByteArrayInputStream(bytes));
+            fail(message + " was read.");
+        }
+        catch (IOException e){
+            // Expected.
+        }
+    }
+
+    /**
+     * Get the values of a tree with their counts.
+     * @param tree Tree to read.
+     * @return Values and their counts.
+     */
+    private static TreeMap<Integer, Integer> counts(BalancedBST<Integer> tree){
+        TreeMap<Integer, Integer> counts = new TreeMap<>();
+        for (Integer value : tree) counts.merge(value, 1, Integer::sum);
+        return counts;
+    }
+}
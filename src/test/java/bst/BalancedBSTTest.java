@@ -0,0 +1,318 @@
+package bst;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for BalancedBST against a TreeMap model of the values and their counts, under every rebalance policy.
+ */
+public class BalancedBSTTest {
+    private static final int VALUES = 5_000; // Values added to each tree.
+
+    /**
+     * The iterator and a sequential stream return every value in order, once for each count.
+     */
+    @Test
+    public void iterationMatchesModel(){
+        for (RebalancePolicy policy : RebalancePolicy.values()){
+            TreeMap<Integer, Integer> model = new TreeMap<>();
+            BalancedBST<Integer> tree = fill(policy, model, new Random(policy.ordinal()));
+            List<Integer> expected = expand(model);
+
+            List<Integer> iterated = new ArrayList<>();
+            for (Integer value : tree) iterated.add(value);
+            assertEquals(policy.toString(), expected, iterated);
+            assertEquals(policy.toString(), expected, tree.stream().collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Splitting the spliterator until no part splits gives parts that together return every value once, in
+     * order, and a parallel stream gives the same values as the model.
+     */
+    @Test
+    public void spliteratorSplitsCoverTreeInOrder(){
+        for (RebalancePolicy policy : RebalancePolicy.values()){
+            TreeMap<Integer, Integer> model = new TreeMap<>();
+            BalancedBST<Integer> tree = fill(policy, model, new Random(policy.ordinal()));
+            List<Integer> expected = expand(model);
+
+            Spliterator<Integer> whole = tree.spliterator();
+            assertEquals(expected.size(), whole.getExactSizeIfKnown());
+            List<Spliterator<Integer>> parts = new ArrayList<>();
+            split(whole, parts);
+            assertTrue(policy + " never split.", parts.size() > 1);
+            List<Integer> joined = new ArrayList<>();
+            for (Spliterator<Integer> part : parts) part.forEachRemaining(joined::add);
+            assertEquals(policy.toString(), expected, joined);
+
+            assertEquals(policy.toString(), expected, tree.parallelStream().collect(Collectors.toList()));
+            long sum = 0;
+            for (Integer value : expected) sum += value;
+            assertEquals(sum, tree.parallelStream().mapToLong(Integer::longValue).sum());
+        }
+    }
+
+    /**
+     * Advancing one value at a time after a split keeps the count of a node that was part way through.
+     */
+    @Test
+    public void spliteratorSplitPartWayThroughDuplicates(){
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        for (int i=0; i<64; i++){
+            tree.addNode(i, 3);
+            model.put(i, 3);
+        }
+        Spliterator<Integer> upper = tree.spliterator();
+        List<Integer> values = new ArrayList<>();
+        upper.tryAdvance(values::add);
+        upper.tryAdvance(values::add);
+        Spliterator<Integer> lower = upper.trySplit();
+        assertNotNull(lower);
+        while (lower.tryAdvance(values::add));
+        while (upper.tryAdvance(values::add));
+        assertEquals(expand(model), values);
+    }
+
+    /**
+     * Changing the tree while iterating over it fails the next step rather than returning wrong values.
+     */
+    @Test(expected = ConcurrentModificationException.class)
+    public void iteratorFailsAfterChange(){
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        for (int i=0; i<10; i++) tree.addNode(i);
+        Iterator<Integer> iterator = tree.iterator();
+        iterator.next();
+        tree.addNode(100);
+        iterator.next();
+    }
+
+    /**
+     * An empty tree iterates and streams nothing.
+     */
+    @Test
+    public void emptyTreeIteratesNothing(){
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        assertFalse(tree.iterator().hasNext());
+        assertEquals(0, tree.spliterator().getExactSizeIfKnown());
+        assertEquals(0, tree.parallelStream().count());
+    }
+
+    /**
+     * Rank, select, floor, ceiling, range counts and range iteration agree with the model, with values added
+     * between queries so deferred inserts are balanced by the queries themselves.
+     */
+    @Test
+    public void orderStatisticsMatchModel(){
+        for (RebalancePolicy policy : RebalancePolicy.values()){
+            TreeMap<Integer, Integer> model = new TreeMap<>();
+            BalancedBST<Integer> tree = fill(policy, model, new Random(policy.ordinal()));
+            Random random = new Random(-policy.ordinal());
+            for (int i=0; i<2_000; i++){
+                int value = random.nextInt(VALUES + 200) - VALUES / 2 - 100;
+                if (i % 4 == 0){
+                    tree.addNode(value);
+                    model.merge(value, 1, Integer::sum);
+                }
+                String message = policy + " at " + value;
+                assertEquals(message, count(model.headMap(value, false)), tree.rank(value));
+                assertEquals(message, model.floorKey(value), tree.floor(value));
+                assertEquals(message, model.ceilingKey(value), tree.ceiling(value));
+
+                int high = value + random.nextInt(300) - 50;
+                int inRange = high < value ? 0 : count(model.subMap(value, true, high, true));
+                assertEquals(message + ".." + high, inRange, tree.countInRange(value, high));
+                if (high >= value){
+                    List<Integer> ranged = new ArrayList<>();
+                    for (Integer found : tree.range(value, high)) ranged.add(found);
+                    assertEquals(message + ".." + high, expand(new TreeMap<>(model.subMap(value, true, high, true))), ranged);
+                }
+            }
+
+            // Select walks the whole tree by position.
+            List<Integer> expected = expand(model);
+            assertEquals(expected.size(), tree.size());
+            for (int i=0; i<expected.size(); i++) assertEquals(policy + " at " + i, expected.get(i), tree.select(i));
+        }
+    }
+
+    /**
+     * Selecting a position outside the tree fails rather than returning a value.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void selectPastEndFails(){
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        tree.addNode(1, 3);
+        tree.select(3);
+    }
+
+    /**
+     * Random adds, removes and removeAlls agree with the model under every policy, and leave a tree whose
+     * order, sizes and heights are right, and which an AVL tree keeps balanced at every node.
+     */
+    @Test
+    public void removesMatchModel(){
+        for (RebalancePolicy policy : RebalancePolicy.values()){
+            TreeMap<Integer, Integer> model = new TreeMap<>();
+            BalancedBST<Integer> tree = fill(policy, model, new Random(policy.ordinal()));
+            Random random = new Random(-policy.ordinal());
+            for (int i=0; i<VALUES * 2; i++){
+                int value = random.nextInt(VALUES) - VALUES / 2;
+                switch (random.nextInt(4)){
+                    case 0:
+                        tree.addNode(value);
+                        model.merge(value, 1, Integer::sum);
+                        break;
+                    case 1:
+                        Integer all = model.remove(value);
+                        assertEquals(policy + " at " + value, all == null ? 0 : (int) all, tree.removeAll(value));
+                        break;
+                    default:
+                        Integer count = model.get(value);
+                        if (count != null && count > 1) model.put(value, count - 1);
+                        else model.remove(value);
+                        assertEquals(policy + " at " + value, count != null, tree.remove(value));
+                }
+                if (i % 500 == 0) check(policy, tree, model);
+            }
+            check(policy, tree, model);
+
+            // Removing everything left empties the tree.
+            for (Integer value : new ArrayList<>(model.keySet())) assertEquals((int) model.remove(value), tree.removeAll(value));
+            check(policy, tree, model);
+            assertFalse(tree.iterator().hasNext());
+        }
+    }
+
+    /**
+     * Nodes of removed values are kept and used again, so adding back what was removed allocates nothing.
+     */
+    @Test
+    public void removedNodesAreReused(){
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        int[] allocated = {0};
+        tree.setListener(new TreeListener() {
+            public void allocated(){
+                allocated[0]++;
+            }
+        });
+        for (int i=0; i<500; i++) tree.addNode(i);
+        assertEquals(500, allocated[0]);
+        for (int i=0; i<500; i++) assertTrue(tree.remove(i));
+        for (int i=0; i<500; i++) tree.addNode(-i);
+        assertEquals(500, allocated[0]);
+        assertEquals(500, tree.distinct());
+    }
+
+    /**
+     * Makes a tree under a policy from random values with duplicates, adding the same values to a model.
+     * @param policy Rebalance policy of the tree.
+     * @param model Values and their counts, added to.
+     * @param random Source of the values.
+     * @return Tree holding the values.
+     */
+    private static BalancedBST<Integer> fill(RebalancePolicy policy, TreeMap<Integer, Integer> model, Random random){
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        tree.setRebalancePolicy(policy);
+        for (int i=0; i<VALUES; i++){
+            int value = random.nextInt(VALUES) - VALUES / 2;
+            tree.addNode(value);
+            model.merge(value, 1, Integer::sum);
+        }
+        return tree;
+    }
+
+    /**
+     * Checks that a tree holds exactly the values and counts of a model, and that every node has the right size
+     * and height, with an AVL tree balanced at every node.
+     * @param policy Rebalance policy of the tree.
+     * @param tree Tree under test.
+     * @param model Values and their counts.
+     */
+    private static void check(RebalancePolicy policy, BalancedBST<Integer> tree, TreeMap<Integer, Integer> model){
+        tree.settle();
+        TreeMap<Integer, Integer> found = new TreeMap<>();
+        checkNode(policy, tree.getRoot(), found);
+        assertEquals(policy.toString(), model, found);
+        assertEquals(policy.toString(), count(model), tree.size());
+        assertEquals(policy.toString(), model.size(), tree.distinct());
+    }
+
+    /**
+     * Checks the size and height of a node and everything under it, collecting its values in order.
+     * @param policy Rebalance policy of the tree.
+     * @param node Node to check, null for none.
+     * @param found Values and their counts, added to in order.
+     * @return Height of the node.
+     */
+    private static int checkNode(RebalancePolicy policy, BalancedBST<Integer>.Node node, TreeMap<Integer, Integer> found){
+        if (node == null) return 0;
+        int left = checkNode(policy, node.getLeft(), found);
+
+        // Every value is greater than those before it.
+        assertTrue(policy + " out of order at " + node.getValue(), found.isEmpty() || found.lastKey() < node.getValue());
+        assertTrue(node.getCount() > 0);
+        found.put(node.getValue(), node.getCount());
+        int right = checkNode(policy, node.getRight(), found);
+
+        int size = node.getCount() + (node.getLeft() == null ? 0 : node.getLeft().getSize()) + (node.getRight() == null ? 0 : node.getRight().getSize());
+        assertEquals(policy + " size at " + node.getValue(), size, node.getSize());
+        assertEquals(policy + " height at " + node.getValue(), Math.max(left, right) + 1, node.getHeight());
+        if (policy == RebalancePolicy.AVL) assertTrue("Unbalanced at " + node.getValue(), Math.abs(left - right) <= 1);
+        return node.getHeight();
+    }
+
+    /**
+     * Get the number of values in part of a model, counting duplicates.
+     * @param model Values and their counts.
+     * @return Number of values.
+     */
+    private static int count(Map<Integer, Integer> model){
+        int count = 0;
+        for (int each : model.values()) count += each;
+        return count;
+    }
+
+    /**
+     * Get the values of a model in order, repeating each for its count.
+     * @param model Values and their counts.
+     * @return Values in order.
+     */
+    private static List<Integer> expand(TreeMap<Integer, Integer> model){
+        List<Integer> values = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : model.entrySet()){
+            for (int i=0; i<entry.getValue(); i++) values.add(entry.getKey());
+        }
+        return values;
+    }
+
+    /**
+     * Splits a spliterator until no part splits any further, collecting the parts in order.
+     * @param spliterator Spliterator to split.
+     * @param parts Parts, added to in order.
+     */
+    private static void split(Spliterator<Integer> spliterator, List<Spliterator<Integer>> parts){
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        if (prefix == null){
+            parts.add(spliterator);
+            return;
+        }
+        split(prefix, parts);
+        split(spliterator, parts);
+    }
+}
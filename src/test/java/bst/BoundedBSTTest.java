@@ -0,0 +1,193 @@
+package bst;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for BoundedBST against a naive model that keeps every value with its count and when it was last used,
+ * and picks each victim by scanning them all.
+ */
+public class BoundedBSTTest {
+    private static final int MAX_ENTRIES = 50;
+
+    /**
+     * Every policy evicts the same values as the model, through adds, removes and lookups that count as uses.
+     */
+    @Test
+    public void evictionOrderMatchesModel(){
+        for (EvictionPolicy policy : EvictionPolicy.values()){
+            BoundedBST<Integer> bounded = new BoundedBST<>(new BalancedBST<>(), MAX_ENTRIES, policy);
+            Model model = new Model(policy);
+            Random random = new Random(policy.ordinal());
+            for (int i=0; i<20_000; i++){
+                int value = random.nextInt(200);
+                switch (random.nextInt(6)){
+                    case 0:
+                        assertEquals(model.remove(value), bounded.remove(value));
+                        break;
+                    case 1:
+                        assertEquals(model.getCount(value), bounded.getCount(value));
+                        break;
+                    case 2:
+                        assertEquals(model.floor(value), bounded.floor(value));
+                        break;
+                    default:
+                        bounded.addNode(value);
+                        model.add(value);
+                }
+                assertEquals(policy + " after " + i + " operations", model.counts, counts(bounded));
+            }
+            assertEquals(model.evictions, bounded.getEvictions());
+        }
+    }
+
+    /**
+     * Values already in the tree are taken in as if added in order, so the smallest are used longest ago.
+     */
+    @Test
+    public void valuesInTreeAreTakenInOrder(){
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        for (int i=0; i<100; i++) tree.addNode(99 - i);
+        BoundedBST<Integer> bounded = new BoundedBST<>(tree, 10, EvictionPolicy.LRU);
+        assertEquals("90, 91, 92, 93, 94, 95, 96, 97, 98, 99", bounded.getTree().toString());
+        assertEquals(90, bounded.getEvictions());
+    }
+
+    /**
+     * A byte bound counts each value as its node, linked or not, plus what the weigher says.
+     */
+    @Test
+    public void byteBoundCountsNodes(){
+        BoundedBST<Integer> linked = new BoundedBST<>(new BalancedBST<>(), 10 * (BoundedBST.LINKED_NODE_BYTES + 16), value -> 16, EvictionPolicy.LRU);
+        BoundedBST<Integer> plain = new BoundedBST<>(new BalancedBST<>(), 10 * (BoundedBST.NODE_BYTES + 16), value -> 16, EvictionPolicy.SMALLEST);
+        for (int i=0; i<100; i++){
+            linked.addNode(i);
+            plain.addNode(i);
+        }
+        assertEquals(10, linked.distinct());
+        assertEquals(10, plain.distinct());
+        assertEquals(10 * (BoundedBST.LINKED_NODE_BYTES + 16), linked.getBytes());
+        assertEquals(10 * (BoundedBST.NODE_BYTES + 16), plain.getBytes());
+    }
+
+    /**
+     * Only a tree balanced by AVL can be bounded.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void treeNotBalancedByAvlIsRejected(){
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        tree.setRebalancePolicy(RebalancePolicy.DEFERRED);
+        new BoundedBST<>(tree, 10, EvictionPolicy.LRU);
+    }
+
+    /**
+     * Get the values of a bounded tree with their counts, without counting lookups.
+     * @param bounded Tree under test.
+     * @return Values and their counts.
+     */
+    private static TreeMap<Integer, Integer> counts(BoundedBST<Integer> bounded){
+        TreeMap<Integer, Integer> counts = new TreeMap<>();
+        for (Integer value : bounded) counts.merge(value, 1, Integer::sum);
+        return counts;
+    }
+
+    /**
+     * Naive bounded tree: the values with their counts, and when each was last used.
+     */
+    private static final class Model {
+        final EvictionPolicy policy; // Which values are evicted.
+        final TreeMap<Integer, Integer> counts = new TreeMap<>(); // Values and their counts.
+        final Map<Integer, Long> used = new HashMap<>(); // When each value was last used.
+        long clock = 0; // Time of the last use.
+        long evictions = 0; // Number of values evicted.
+
+        /**
+         * Constructor to make an empty model.
+         * @param policy Which values are evicted.
+         */
+        Model(EvictionPolicy policy){
+            this.policy = policy;
+        }
+
+        /**
+         * Adds a value, using it, then evicts values while there are too many.
+         * @param value Value to add.
+         */
+        void add(int value){
+            this.counts.merge(value, 1, Integer::sum);
+            this.used.put(value, ++this.clock);
+            while (this.counts.size() > MAX_ENTRIES){
+                int victim = this.victim();
+                this.counts.remove(victim);
+                this.used.remove(victim);
+                this.evictions++;
+            }
+        }
+
+        /**
+         * Removes one occurrence of a value; a value that stays counts as used.
+         * @param value Value to remove.
+         * @return True if the value was there.
+         */
+        boolean remove(int value){
+            Integer count = this.counts.get(value);
+            if (count == null) return false;
+            if (count == 1){
+                this.counts.remove(value);
+                this.used.remove(value);
+            }
+            else {
+                this.counts.put(value, count - 1);
+                this.used.put(value, ++this.clock);
+            }
+            return true;
+        }
+
+        /**
+         * Looks up a value, using it if it is there.
+         * @param value Value to look for.
+         * @return Count of the value, 0 if it is not there.
+         */
+        int getCount(int value){
+            Integer count = this.counts.get(value);
+            if (count == null) return 0;
+            this.used.put(value, ++this.clock);
+            return count;
+        }
+
+        /**
+         * Looks up the floor of a value, using it if there is one.
+         * @param value Value to look for.
+         * @return Floor of the value, null if there is none.
+         */
+        Integer floor(int value){
+            Integer floor = this.counts.floorKey(value);
+            if (floor != null) this.used.put(floor, ++this.clock);
+            return floor;
+        }
+
+        /**
+         * Picks the value to evict by scanning every value.
+         * @return Value to evict.
+         */
+        int victim(){
+            if (this.policy == EvictionPolicy.SMALLEST) return this.counts.firstKey();
+            if (this.policy == EvictionPolicy.LARGEST) return this.counts.lastKey();
+            Integer victim = null;
+            for (Integer value : this.counts.keySet()){
+                if (victim == null) victim = value;
+                else if (this.policy == EvictionPolicy.LFU && !this.counts.get(value).equals(this.counts.get(victim))){
+                    if (this.counts.get(value) < this.counts.get(victim)) victim = value;
+                }
+                else if (this.used.get(value) < this.used.get(victim)) victim = value;
+            }
+            return victim;
+        }
+    }
+}
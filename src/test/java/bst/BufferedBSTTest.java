@@ -0,0 +1,171 @@
+package bst;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for BufferedBST against a TreeMap model of the values and their counts: lookups must be exact whether a
+ * value is in the buffer, the tree or both, and merges of either kind must not change what is held.
+ */
+public class BufferedBSTTest {
+    private static final int CAPACITY = 64;
+
+    /**
+     * Adds, removes and lookups agree with the model through many merges, with scans now and then merging the
+     * buffer early.
+     */
+    @Test
+    public void bufferedLookupsMatchModel(){
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        for (int i=0; i<1_000; i += 3){
+            tree.addNode(i);
+            model.merge(i, 1, Integer::sum);
+        }
+        BufferedBST<Integer> buffered = new BufferedBST<>(tree, CAPACITY);
+        Random random = new Random(1);
+        for (int i=0; i<50_000; i++){
+            int value = random.nextInt(1_000);
+            String message = "At " + value + " after " + i + " operations";
+            switch (random.nextInt(8)){
+                case 0:
+                    assertEquals(message, remove(model, value), buffered.remove(value));
+                    break;
+                case 1:
+                    Integer all = model.remove(value);
+                    assertEquals(message, all == null ? 0 : (int) all, buffered.removeAll(value));
+                    break;
+                case 2:
+                    assertEquals(message, model.getOrDefault(value, 0).intValue(), buffered.getCount(value));
+                    assertEquals(message, model.containsKey(value), buffered.contains(value));
+                    break;
+                case 3:
+                    assertEquals(message, model.floorKey(value), buffered.floor(value));
+                    assertEquals(message, model.ceilingKey(value), buffered.ceiling(value));
+                    break;
+                default:
+                    buffered.addNode(value);
+                    model.merge(value, 1, Integer::sum);
+            }
+            assertEquals(message, count(model), buffered.size());
+
+            // A scan merges the buffer first, whatever it holds.
+            if (i % 5_000 == 4_999){
+                List<Integer> ranged = new ArrayList<>();
+                for (Integer found : buffered.range(200, 400)) ranged.add(found);
+                assertEquals(expand(model.subMap(200, true, 400, true)), ranged);
+                assertEquals(0, buffered.buffered());
+            }
+        }
+        check(buffered, model);
+        assertTrue("No merge rebuilt the tree.", buffered.getRebuilds() > 0);
+        assertTrue("No merge inserted into the tree.", buffered.getMerges() > buffered.getRebuilds());
+    }
+
+    /**
+     * Values stay in the buffer, counted with those in the tree, until it fills or the tree is read in order.
+     */
+    @Test
+    public void valuesWaitInBufferUntilFull(){
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        tree.addNode(5, 2);
+        BufferedBST<Integer> buffered = new BufferedBST<>(tree, CAPACITY);
+        for (int i=0; i<CAPACITY - 1; i++) buffered.addNode(i);
+        assertEquals(CAPACITY - 1, buffered.buffered());
+        assertEquals(0, buffered.getMerges());
+        assertEquals(3, buffered.getCount(5));
+        assertEquals(2, tree.getCount(5));
+
+        buffered.addNode(CAPACITY);
+        assertEquals(0, buffered.buffered());
+        assertEquals(1, buffered.getMerges());
+        assertEquals(3, tree.getCount(5));
+        assertEquals(CAPACITY + 2, tree.size());
+    }
+
+    /**
+     * A bound on merge time lowers how far the buffer fills once both kinds of merge have been measured, and the
+     * values are still all there.
+     */
+    @Test
+    public void mergeBoundLowersFill(){
+        BufferedBST<Integer> buffered = new BufferedBST<>(new BalancedBST<>(), CAPACITY, 1);
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        for (int i=0; i<CAPACITY * 3; i++){
+            buffered.addNode(i);
+            model.merge(i, 1, Integer::sum);
+        }
+        assertTrue(buffered.getMerges() >= 2);
+        assertTrue("Fill limit is " + buffered.getLimit(), buffered.getLimit() < CAPACITY);
+        check(buffered, model);
+    }
+
+    /**
+     * A buffer needs room for at least one value.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyBufferIsRejected(){
+        new BufferedBST<>(new BalancedBST<Integer>(), 0);
+    }
+
+    /**
+     * Removes one occurrence of a value from a model.
+     * @param model Values and their counts.
+     * @param value Value to remove.
+     * @return True if the model held the value.
+     */
+    private static boolean remove(TreeMap<Integer, Integer> model, int value){
+        Integer count = model.get(value);
+        if (count == null) return false;
+        if (count == 1) model.remove(value);
+        else model.put(value, count - 1);
+        return true;
+    }
+
+    /**
+     * Get the number of values in a model, counting duplicates.
+     * @param model Values and their counts.
+     * @return Number of values.
+     */
+    private static int count(Map<Integer, Integer> model){
+        int count = 0;
+        for (int each : model.values()) count += each;
+        return count;
+    }
+
+    /**
+     * Get the values of a model in order, repeating each for its count.
+     * @param model Values and their counts.
+     * @return Values in order.
+     */
+    private static List<Integer> expand(Map<Integer, Integer> model){
+        List<Integer> values = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : model.entrySet()){
+            for (int i=0; i<entry.getValue(); i++) values.add(entry.getKey());
+        }
+        return values;
+    }
+
+    /**
+     * Checks that a buffered tree holds exactly the values and counts of a model, then that its tree does once
+     * the buffer is merged.
+     * @param buffered Buffered tree under test.
+     * @param model Values and their counts.
+     */
+    private static void check(BufferedBST<Integer> buffered, TreeMap<Integer, Integer> model){
+        for (Map.Entry<Integer, Integer> entry : model.entrySet()) assertEquals((int) entry.getValue(), buffered.getCount(entry.getKey()));
+        assertEquals(count(model), buffered.size());
+        List<Integer> iterated = new ArrayList<>();
+        for (Integer value : buffered) iterated.add(value);
+        assertEquals(expand(model), iterated);
+        assertEquals(count(model), buffered.getTree().size());
+    }
+}
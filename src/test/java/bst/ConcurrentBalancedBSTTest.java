@@ -0,0 +1,229 @@
+package bst;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress tests for ConcurrentBalancedBST: threads insert and remove at the same time, and the tree must end up
+ * holding exactly what a sequential model of the same operations holds.
+ */
+public class ConcurrentBalancedBSTTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 50_000; // Operations per thread.
+
+    /**
+     * Every thread inserts and removes keys of its own, checking each remove against its own model.
+     */
+    @Test
+    public void disjointKeysMatchSequentialModel() throws Exception {
+        ConcurrentBalancedBST<Integer> tree = new ConcurrentBalancedBST<>();
+        List<TreeMap<Integer, Integer>> models = run(tree, THREADS, (thread, random, model) -> {
+            int key = random.nextInt(4096) * THREADS + thread;
+            if (random.nextInt(3) > 0) add(tree, model, key);
+            else assertEquals(remove(model, key), tree.remove(key));
+        });
+        check(tree, models, Comparator.naturalOrder());
+        assertTrue("The tree was never split into stripes.", tree.stripes() > 1);
+    }
+
+    /**
+     * Every thread inserts keys from one shared range and removes only keys it has added itself, so every remove
+     * must succeed whatever the other threads do.
+     */
+    @Test
+    public void sharedKeysMatchSequentialModel() throws Exception {
+        ConcurrentBalancedBST<Integer> tree = new ConcurrentBalancedBST<>();
+        List<TreeMap<Integer, Integer>> models = run(tree, THREADS, (thread, random, model) -> {
+            Integer key = model.ceilingKey(random.nextInt(10_000));
+            if (key != null && random.nextInt(3) == 0) assertTrue(remove(model, key) && tree.remove(key));
+            else add(tree, model, random.nextInt(10_000));
+        });
+        check(tree, models, Comparator.naturalOrder());
+    }
+
+    /**
+     * A tree with a comparator keeps its order across stripes and snapshots, the same as a BalancedBST with it.
+     */
+    @Test
+    public void comparatorOrderMatchesBalancedBST() throws Exception {
+        Comparator<Integer> reverse = Comparator.reverseOrder();
+        ConcurrentBalancedBST<Integer> tree = new ConcurrentBalancedBST<>(reverse);
+        List<TreeMap<Integer, Integer>> models = run(tree, 4, (thread, random, model) -> {
+            int key = random.nextInt(2048) * 4 + thread;
+            if (random.nextInt(4) > 0) add(tree, model, key);
+            else assertEquals(remove(model, key), tree.remove(key));
+        });
+        check(tree, models, reverse);
+
+        BalancedBST<Integer> sequential = new BalancedBST<>(reverse);
+        for (Map<Integer, Integer> model : models) for (Map.Entry<Integer, Integer> entry : model.entrySet()) sequential.addNode(entry.getKey(), entry.getValue());
+        assertEquals(sequential.toString(), tree.toString());
+    }
+
+    /**
+     * Lookups keep finding the right counts while one thread inserts enough to split the tree into stripes and
+     * others take snapshots and iterate over it the whole time.
+     */
+    @Test
+    public void lookupsProgressDuringSplitsAndSnapshots() throws Exception {
+        ConcurrentBalancedBST<Integer> tree = new ConcurrentBalancedBST<>();
+        for (int i=0; i<16; i++) tree.addNode(-1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int i=0; i<OPERATIONS; i++) tree.addNode(i);
+                writing.set(false);
+            });
+            List<Future<Long>> scanners = new ArrayList<>();
+            for (int n=0; n<2; n++) scanners.add(executor.submit(() -> {
+                long scanned = 0;
+                while (writing.get()){
+                    for (Integer value : tree) scanned += value;
+                    tree.snapshot().checkInvariants();
+                }
+                return scanned;
+            }));
+            Future<Long> reader = executor.submit(() -> {
+                long lookups = 0, slowest = 0;
+                while (writing.get()){
+                    long start = System.nanoTime();
+                    assertEquals(16, tree.getCount(-1));
+                    assertTrue(tree.contains(-1));
+                    slowest = Math.max(slowest, System.nanoTime() - start);
+                    lookups++;
+                }
+                assertTrue("A lookup took " + slowest + "ns.", slowest < TimeUnit.SECONDS.toNanos(5));
+                return lookups;
+            });
+
+            writer.get(2, TimeUnit.MINUTES);
+            for (Future<Long> scanner : scanners) scanner.get(1, TimeUnit.MINUTES);
+            assertTrue(reader.get(1, TimeUnit.MINUTES) > 0);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertTrue("The tree was never split into stripes.", tree.stripes() > 1);
+        assertEquals(OPERATIONS + 16, tree.size());
+        tree.checkInvariants();
+    }
+
+    /**
+     * One operation of a writing thread, which changes the tree and records the change in the thread's model.
+     */
+    private interface Operation {
+        /**
+         * Makes one change to the tree.
+         * @param thread Number of the thread.
+         * @param random Random numbers of the thread.
+         * @param model Keys the thread has added and not removed, with their counts.
+         */
+        void apply(int thread, Random random, TreeMap<Integer, Integer> model);
+    }
+
+    /**
+     * Adds a key to the tree and to a model.
+     * @param tree Tree under test.
+     * @param model Model of the thread.
+     * @param key Key to add.
+     */
+    private static void add(ConcurrentBalancedBST<Integer> tree, TreeMap<Integer, Integer> model, int key){
+        tree.addNode(key);
+        model.merge(key, 1, Integer::sum);
+    }
+
+    /**
+     * Removes one occurrence of a key from a model.
+     * @param model Model of the thread.
+     * @param key Key to remove.
+     * @return True if the model held the key.
+     */
+    private static boolean remove(TreeMap<Integer, Integer> model, int key){
+        Integer count = model.get(key);
+        if (count == null) return false;
+        if (count == 1) model.remove(key);
+        else model.put(key, count - 1);
+        return true;
+    }
+
+    /**
+     * Runs threads of operations against a tree at the same time, while another thread takes snapshots and checks
+     * that each one is a valid tree.
+     * @param tree Tree under test.
+     * @param threads Number of writing threads.
+     * @param operation Operation every thread repeats.
+     * @return Model of every thread.
+     */
+    private static List<TreeMap<Integer, Integer>> run(ConcurrentBalancedBST<Integer> tree, int threads, Operation operation) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            List<Future<TreeMap<Integer, Integer>>> writers = new ArrayList<>();
+            for (int i=0; i<threads; i++){
+                int thread = i;
+                writers.add(executor.submit(() -> {
+                    Random random = new Random(thread);
+                    TreeMap<Integer, Integer> model = new TreeMap<>();
+                    start.await();
+                    for (int n=0; n<OPERATIONS; n++) operation.apply(thread, random, model);
+                    return model;
+                }));
+            }
+            Future<Integer> reader = executor.submit(() -> {
+                int snapshots = 0;
+                start.await();
+                for (; writing.get(); snapshots++) tree.snapshot().checkInvariants();
+                return snapshots;
+            });
+
+            start.countDown();
+            List<TreeMap<Integer, Integer>> models = new ArrayList<>();
+            for (Future<TreeMap<Integer, Integer>> writer : writers) models.add(writer.get(2, TimeUnit.MINUTES));
+            writing.set(false);
+            assertTrue(reader.get(1, TimeUnit.MINUTES) > 0);
+            return models;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks the tree's invariants and that it holds exactly the keys of the models merged, in order.
+     * @param tree Tree under test.
+     * @param models Model of every thread.
+     * @param order Order the tree keeps.
+     */
+    private static void check(ConcurrentBalancedBST<Integer> tree, List<TreeMap<Integer, Integer>> models, Comparator<Integer> order){
+        tree.checkInvariants();
+        tree.snapshot().checkInvariants();
+
+        TreeMap<Integer, Integer> expected = new TreeMap<>(order);
+        for (Map<Integer, Integer> model : models) for (Map.Entry<Integer, Integer> entry : model.entrySet()) expected.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        List<Integer> values = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) for (int i=0; i<entry.getValue(); i++) values.add(entry.getKey());
+
+        List<Integer> actual = new ArrayList<>();
+        for (Integer value : tree) actual.add(value);
+        assertEquals(values, actual);
+        assertEquals(values.size(), tree.size());
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) assertEquals((int) entry.getValue(), tree.getCount(entry.getKey()));
+    }
+}
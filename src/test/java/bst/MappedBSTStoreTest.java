@@ -0,0 +1,237 @@
+package bst;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for MappedBSTStore against a TreeMap model of the values and their counts, across writes, logged changes,
+ * reopening, compaction, and files left as a crash would leave them.
+ */
+public class MappedBSTStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A written store opens with exactly the values and counts of the tree.
+     */
+    @Test
+    public void writtenStoreMatchesTree() throws IOException {
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        Random random = new Random(1);
+        for (int i=0; i<20_000; i++){
+            int value = random.nextInt(5_000) - 2_500;
+            tree.addNode(value);
+            model.merge(value, 1, Integer::sum);
+        }
+        Path path = this.folder.getRoot().toPath().resolve("tree");
+        MappedBSTStore.write(path, tree, KeyCodec.INTEGER).close();
+
+        try (MappedBSTStore<Integer> store = MappedBSTStore.open(path, KeyCodec.INTEGER)){
+            check(store, model);
+            assertEquals(tree.toString(), store.toTree().toString());
+        }
+    }
+
+    /**
+     * Adds and removes are logged, seen by lookups at once, replayed on open, and merged by compactions.
+     */
+    @Test
+    public void changesSurviveReopenAndCompaction() throws IOException {
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        Path path = this.folder.getRoot().toPath().resolve("tree");
+        MappedBSTStore<Integer> store = MappedBSTStore.write(path, new BalancedBST<>(), KeyCodec.INTEGER);
+        Random random = new Random(2);
+        try {
+            for (int round=0; round<6; round++){
+                for (int i=0; i<3_000; i++){
+                    int value = random.nextInt(10_000);
+                    if (random.nextInt(3) > 0){
+                        store.addNode(value);
+                        model.merge(value, 1, Integer::sum);
+                    }
+                    else assertEquals(remove(model, value), store.remove(value));
+                }
+                check(store, model);
+                if (round % 2 == 0) store.compact();
+                store.close();
+                store = MappedBSTStore.open(path, KeyCodec.INTEGER);
+                check(store, model);
+            }
+            assertTrue("The store never compacted.", store.generation() > 1);
+        }
+        finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Enough changed values make the store compact itself, keeping the changes on the heap bounded.
+     */
+    @Test
+    public void manyChangesCompactOnTheirOwn() throws IOException {
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        Path path = this.folder.getRoot().toPath().resolve("tree");
+        try (MappedBSTStore<Integer> store = MappedBSTStore.write(path, new BalancedBST<>(), KeyCodec.INTEGER)){
+            for (int i=0; i<20_000; i++){
+                store.addNode(i);
+                model.merge(i, 1, Integer::sum);
+                assertTrue(store.changed() <= Math.max(1 << 12, store.distinct() / 4));
+            }
+            assertTrue(store.generation() > 1);
+            check(store, model);
+        }
+    }
+
+    /**
+     * A log record cut short by a crash is dropped, and the whole records before it are kept.
+     */
+    @Test
+    public void tornLogRecordIsDropped() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("tree");
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        try (MappedBSTStore<Integer> store = MappedBSTStore.write(path, new BalancedBST<>(), KeyCodec.INTEGER)){
+            for (int i=0; i<100; i++){
+                store.addNode(i % 7);
+                model.merge(i % 7, 1, Integer::sum);
+            }
+        }
+        Files.write(path.resolveSibling("tree.log"), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (MappedBSTStore<Integer> store = MappedBSTStore.open(path, KeyCodec.INTEGER)){
+            check(store, model);
+            store.addNode(3);
+            model.merge(3, 1, Integer::sum);
+        }
+        try (MappedBSTStore<Integer> store = MappedBSTStore.open(path, KeyCodec.INTEGER)){
+            check(store, model);
+        }
+    }
+
+    /**
+     * A crash after a compaction wrote its base but before it started the new log leaves the old log, whose
+     * changes are already in the base; it is dropped rather than applied twice.
+     */
+    @Test
+    public void logOfOlderBaseIsDropped() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("tree");
+        Path log = path.resolveSibling("tree.log"), saved = path.resolveSibling("saved.log");
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        try (MappedBSTStore<Integer> store = MappedBSTStore.write(path, new BalancedBST<>(), KeyCodec.INTEGER)){
+            for (int i=0; i<500; i++){
+                store.addNode(i);
+                model.merge(i, 1, Integer::sum);
+            }
+            store.sync();
+            Files.copy(log, saved);
+            store.compact();
+        }
+        Files.move(saved, log, StandardCopyOption.REPLACE_EXISTING);
+
+        try (MappedBSTStore<Integer> store = MappedBSTStore.open(path, KeyCodec.INTEGER)){
+            check(store, model);
+        }
+    }
+
+    /**
+     * A write that fails part way leaves no temporary file behind, and the store as it was.
+     */
+    @Test
+    public void failedWriteLeavesNoTemporaryFile() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("tree");
+        BalancedBST<Integer> tree = new BalancedBST<>();
+        for (int i=0; i<1_000; i++) tree.addNode(i);
+        MappedBSTStore.write(path, tree, KeyCodec.INTEGER).close();
+
+        KeyCodec<Integer> failing = new KeyCodec<Integer>() {
+            public int width(){
+                return Integer.BYTES;
+            }
+
+            public void write(ByteBuffer buffer, int offset, Integer value){
+                if (value == 500) throw new IllegalStateException("Codec failed.");
+                buffer.putInt(offset, value);
+            }
+
+            public Integer read(ByteBuffer buffer, int offset){
+                return buffer.getInt(offset);
+            }
+        };
+        try {
+            MappedBSTStore.write(path, tree, failing);
+            fail("The write should have failed.");
+        }
+        catch (IllegalStateException e){
+            assertEquals("Codec failed.", e.getMessage());
+        }
+        try (Stream<Path> files = Files.list(this.folder.getRoot().toPath())){
+            assertFalse(files.anyMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+        }
+        try (MappedBSTStore<Integer> store = MappedBSTStore.open(path, KeyCodec.INTEGER)){
+            assertEquals(tree.toString(), store.toTree().toString());
+        }
+    }
+
+    /**
+     * A closed store refuses every call.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void closedStoreThrows() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("tree");
+        MappedBSTStore<Integer> store = MappedBSTStore.write(path, new BalancedBST<>(), KeyCodec.INTEGER);
+        store.close();
+        store.close();
+        store.getCount(1);
+    }
+
+    /**
+     * Removes one occurrence of a value from a model.
+     * @param model Values and their counts.
+     * @param value Value to remove.
+     * @return True if the model held the value.
+     */
+    private static boolean remove(TreeMap<Integer, Integer> model, int value){
+        Integer count = model.get(value);
+        if (count == null) return false;
+        if (count == 1) model.remove(value);
+        else model.put(value, count - 1);
+        return true;
+    }
+
+    /**
+     * Checks that a store holds exactly the values and counts of a model.
+     * @param store Store under test.
+     * @param model Values and their counts.
+     */
+    private static void check(MappedBSTStore<Integer> store, TreeMap<Integer, Integer> model){
+        long size = 0;
+        for (Map.Entry<Integer, Integer> entry : model.entrySet()){
+            assertEquals((int) entry.getValue(), store.getCount(entry.getKey()));
+            size += entry.getValue();
+        }
+        assertEquals(model.size(), store.distinct());
+        assertEquals(size, store.size());
+        assertFalse(store.contains(Integer.MIN_VALUE));
+
+        TreeMap<Integer, Integer> loaded = new TreeMap<>();
+        for (Integer value : store.toTree()) loaded.merge(value, 1, Integer::sum);
+        assertEquals(model, loaded);
+    }
+}
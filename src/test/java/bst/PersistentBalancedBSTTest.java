@@ -0,0 +1,191 @@
+package bst;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for PersistentBalancedBST against TreeMap models of the values and their counts: every version must keep
+ * holding what its model holds after later versions are made from it, and splits and joins must match the model.
+ */
+public class PersistentBalancedBSTTest {
+
+    /**
+     * Adds and removes make versions that each match a copy of the model taken when they were made, checked
+     * again after every later version has been made.
+     */
+    @Test
+    public void oldVersionsKeepTheirValues(){
+        PersistentBalancedBST<Integer> tree = new PersistentBalancedBST<>();
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        List<PersistentBalancedBST<Integer>> versions = new ArrayList<>();
+        List<TreeMap<Integer, Integer>> models = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i=0; i<20_000; i++){
+            int value = random.nextInt(2_000);
+            switch (random.nextInt(5)){
+                case 0:
+                    tree = tree.remove(value);
+                    remove(model, value);
+                    break;
+                case 1:
+                    tree = tree.removeAll(value);
+                    model.remove(value);
+                    break;
+                default:
+                    tree = tree.add(value);
+                    model.merge(value, 1, Integer::sum);
+            }
+            if (i % 1_000 == 0){
+                versions.add(tree);
+                models.add(new TreeMap<>(model));
+            }
+        }
+        versions.add(tree);
+        models.add(model);
+        for (int i=0; i<versions.size(); i++) check(versions.get(i), models.get(i));
+    }
+
+    /**
+     * Lookups and positions agree with the model.
+     */
+    @Test
+    public void lookupsMatchModel(){
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        PersistentBalancedBST<Integer> tree = fill(new PersistentBalancedBST<>(), model, new Random(2), 10_000);
+        for (int value=-10; value<3_010; value++){
+            assertEquals(model.getOrDefault(value, 0).intValue(), tree.getCount(value));
+            assertEquals(model.floorKey(value), tree.floor(value));
+            assertEquals(model.ceilingKey(value), tree.ceiling(value));
+        }
+        long index = 0;
+        for (Map.Entry<Integer, Integer> entry : model.entrySet()){
+            for (int i=0; i<entry.getValue(); i++) assertEquals(entry.getKey(), tree.select(index++));
+        }
+        assertEquals(index, tree.size());
+    }
+
+    /**
+     * Splitting at any value gives the head and tail of the model, and joining them gives the tree back, balanced.
+     */
+    @Test
+    public void splitAndJoinMatchModel(){
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        PersistentBalancedBST<Integer> tree = fill(new PersistentBalancedBST<>(), model, new Random(3), 5_000);
+        for (int value=-5; value<3_005; value += 7){
+            PersistentBalancedBST<Integer> head = tree.headTree(value), tail = tree.tailTree(value);
+            check(head, new TreeMap<>(model.headMap(value, false)));
+            check(tail, new TreeMap<>(model.tailMap(value, true)));
+            check(head.concat(tail), model);
+        }
+        check(tree, model);
+    }
+
+    /**
+     * Joining trees of very different heights keeps the tree balanced, and joining with an empty one changes nothing.
+     */
+    @Test
+    public void joinOfUnevenTreesStaysBalanced(){
+        TreeMap<Integer, Integer> low = new TreeMap<>(), high = new TreeMap<>();
+        PersistentBalancedBST<Integer> small = new PersistentBalancedBST<>(), large = new PersistentBalancedBST<>();
+        for (int i=0; i<3; i++){
+            small = small.add(i);
+            low.merge(i, 1, Integer::sum);
+        }
+        for (int i=100; i<10_000; i++){
+            large = large.add(i);
+            high.merge(i, 1, Integer::sum);
+        }
+        TreeMap<Integer, Integer> both = new TreeMap<>(low);
+        both.putAll(high);
+        check(small.concat(large), both);
+        TreeMap<Integer, Integer> ends = new TreeMap<>(high.headMap(103));
+        ends.putAll(high.tailMap(9_998));
+        check(large.headTree(103).concat(large.tailTree(9_998)), ends);
+
+        PersistentBalancedBST<Integer> empty = new PersistentBalancedBST<>();
+        assertSame(large, large.concat(empty));
+        assertSame(large, empty.concat(large));
+    }
+
+    /**
+     * A tree with a comparator keeps its order through adds, splits and joins.
+     */
+    @Test
+    public void comparatorOrderIsKept(){
+        Comparator<Integer> reverse = Comparator.reverseOrder();
+        TreeMap<Integer, Integer> model = new TreeMap<>(reverse);
+        PersistentBalancedBST<Integer> tree = fill(new PersistentBalancedBST<>(reverse), model, new Random(4), 5_000);
+        check(tree, model);
+        check(tree.headTree(1_500), new TreeMap<>(model.headMap(1_500, false)));
+        check(tree.tailTree(1_500), new TreeMap<>(model.tailMap(1_500, true)));
+        check(tree.headTree(1_500).concat(tree.tailTree(1_500)), model);
+    }
+
+    /**
+     * Removing a value that is not there gives back the same version.
+     */
+    @Test
+    public void removeOfMissingValueKeepsVersion(){
+        PersistentBalancedBST<Integer> tree = new PersistentBalancedBST<Integer>().add(1).add(2);
+        assertSame(tree, tree.remove(3));
+        assertSame(tree, tree.removeAll(3));
+    }
+
+    /**
+     * Adds random values to a tree and a model.
+     * @param tree Tree to add to.
+     * @param model Values and their counts, added to.
+     * @param random Source of the values.
+     * @param values Number of values to add.
+     * @return Version holding the values.
+     */
+    private static PersistentBalancedBST<Integer> fill(PersistentBalancedBST<Integer> tree, TreeMap<Integer, Integer> model, Random random, int values){
+        for (int i=0; i<values; i++){
+            int value = random.nextInt(3_000);
+            tree = tree.add(value);
+            model.merge(value, 1, Integer::sum);
+        }
+        return tree;
+    }
+
+    /**
+     * Removes one occurrence of a value from a model.
+     * @param model Values and their counts.
+     * @param value Value to remove.
+     */
+    private static void remove(TreeMap<Integer, Integer> model, int value){
+        Integer count = model.get(value);
+        if (count == null) return;
+        if (count == 1) model.remove(value);
+        else model.put(value, count - 1);
+    }
+
+    /**
+     * Checks that a version holds exactly the values and counts of a model, in the model's order, and that its
+     * nodes are in order, balanced and totalled right.
+     * @param tree Version under test.
+     * @param model Values and their counts.
+     */
+    private static void check(PersistentBalancedBST<Integer> tree, TreeMap<Integer, Integer> model){
+        tree.checkInvariants();
+        List<Integer> expected = new ArrayList<>(), found = new ArrayList<>();
+        long size = 0;
+        for (Map.Entry<Integer, Integer> entry : model.entrySet()){
+            for (int i=0; i<entry.getValue(); i++) expected.add(entry.getKey());
+            size += entry.getValue();
+        }
+        for (Integer value : tree) found.add(value);
+        assertEquals(expected, found);
+        assertEquals(size, tree.size());
+        assertEquals(model.isEmpty(), tree.isEmpty());
+    }
+}
@@ -0,0 +1,202 @@
+package bst;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for ShardedBST against a TreeMap model of the values and their counts: whatever the splits, the shards
+ * together must hold what the model holds, each shard only the values of its range.
+ */
+public class ShardedBSTTest {
+    private static final int SHARDS = 4;
+
+    /**
+     * Batches, removes and lookups agree with the model through the splits the tree picks on its own, and every
+     * shard holds only the values of its range.
+     */
+    @Test
+    public void randomOperationsMatchModel(){
+        List<LocalShard<Integer>> shards = shards(null);
+        try (ShardedBST<Integer> tree = new ShardedBST<>(shards, null)){
+            TreeMap<Integer, Integer> model = new TreeMap<>();
+            Random random = new Random(1);
+            for (int round=0; round<40; round++){
+                // Each round adds a batch from a range that drifts upwards, so the shards keep going out of balance.
+                List<Integer> batch = new ArrayList<>();
+                int size = random.nextInt(2_000) + 500;
+                for (int i=0; i<size; i++) batch.add(random.nextInt(5_000) + round * 1_000);
+                tree.addAll(batch);
+                for (Integer value : batch) model.merge(value, 1, Integer::sum);
+                for (int i=0; i<200; i++){
+                    int value = random.nextInt(45_000);
+                    if (random.nextBoolean()) assertEquals(remove(model, value), tree.remove(value));
+                    else assertEquals(model.getOrDefault(value, 0).intValue(), tree.getCount(value));
+                }
+                check(tree, shards, model);
+            }
+            assertEquals(SHARDS - 1, tree.getSplits().length);
+        }
+    }
+
+    /**
+     * An explicit split spreads a tree filled in order evenly over the shards, without changing what it holds.
+     */
+    @Test
+    public void splitSpreadsValuesEvenly(){
+        List<LocalShard<Integer>> shards = shards(null);
+        try (ShardedBST<Integer> tree = new ShardedBST<>(shards, null)){
+            TreeMap<Integer, Integer> model = new TreeMap<>();
+            List<Integer> batch = new ArrayList<>();
+            for (int i=0; i<100_000; i++){
+                batch.add(i / 2);
+                model.merge(i / 2, 1, Integer::sum);
+            }
+            tree.addAll(batch);
+            tree.split();
+            check(tree, shards, model);
+            for (long size : tree.shardSizes()){
+                assertTrue("Shard of " + size + " values.", size > 100_000 / SHARDS / 2 && size < 100_000 / SHARDS * 2);
+            }
+        }
+    }
+
+    /**
+     * Iterators and ranges return every value once, in order, though the values move between shards part way
+     * through.
+     */
+    @Test
+    public void iterationSurvivesSplits(){
+        try (ShardedBST<Integer> tree = new ShardedBST<>(SHARDS)){
+            TreeMap<Integer, Integer> model = new TreeMap<>();
+            Random random = new Random(2);
+            List<Integer> batch = new ArrayList<>();
+            for (int i=0; i<50_000; i++){
+                int value = random.nextInt(20_000);
+                batch.add(value);
+                model.merge(value, 1, Integer::sum);
+            }
+            tree.addAll(batch);
+
+            List<Integer> iterated = new ArrayList<>(), ranged = new ArrayList<>();
+            Iterator<Integer> all = tree.iterator(), some = tree.range(5_000, 15_000).iterator();
+            for (int step=0; all.hasNext(); step++){
+                iterated.add(all.next());
+                if (some.hasNext()) ranged.add(some.next());
+                if (step % 10_000 == 5_000) tree.split();
+            }
+            while (some.hasNext()) ranged.add(some.next());
+            assertEquals(expand(model), iterated);
+            assertEquals(expand(model.subMap(5_000, true, 15_000, true)), ranged);
+        }
+    }
+
+    /**
+     * A tree with a comparator routes, splits and iterates in that order.
+     */
+    @Test
+    public void comparatorOrderIsKept(){
+        Comparator<Integer> reverse = Comparator.reverseOrder();
+        List<LocalShard<Integer>> shards = shards(reverse);
+        try (ShardedBST<Integer> tree = new ShardedBST<>(shards, reverse)){
+            TreeMap<Integer, Integer> model = new TreeMap<>(reverse);
+            List<Integer> batch = new ArrayList<>();
+            for (int i=0; i<20_000; i++){
+                batch.add(i % 7_000);
+                model.merge(i % 7_000, 1, Integer::sum);
+            }
+            tree.addAll(batch);
+            tree.split();
+            check(tree, shards, model);
+            List<Integer> ranged = new ArrayList<>();
+            for (Integer value : tree.range(5_000, 2_000)) ranged.add(value);
+            assertEquals(expand(model.subMap(5_000, true, 2_000, true)), ranged);
+        }
+    }
+
+    /**
+     * A tree needs at least one shard.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void noShardsIsRejected(){
+        new ShardedBST<Integer>(0);
+    }
+
+    /**
+     * Makes local shards, each on a thread of its own.
+     * @param comparator Order of the values, null for natural order.
+     * @return Shards.
+     */
+    private static List<LocalShard<Integer>> shards(Comparator<Integer> comparator){
+        List<LocalShard<Integer>> shards = new ArrayList<>();
+        for (int i=0; i<SHARDS; i++) shards.add(new LocalShard<>(comparator, "test-shard-" + i));
+        return shards;
+    }
+
+    /**
+     * Removes one occurrence of a value from a model.
+     * @param model Values and their counts.
+     * @param value Value to remove.
+     * @return True if the model held the value.
+     */
+    private static boolean remove(TreeMap<Integer, Integer> model, int value){
+        Integer count = model.get(value);
+        if (count == null) return false;
+        if (count == 1) model.remove(value);
+        else model.put(value, count - 1);
+        return true;
+    }
+
+    /**
+     * Get the values of a model in order, repeating each for its count.
+     * @param model Values and their counts.
+     * @return Values in order.
+     */
+    private static List<Integer> expand(Map<Integer, Integer> model){
+        List<Integer> values = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : model.entrySet()){
+            for (int i=0; i<entry.getValue(); i++) values.add(entry.getKey());
+        }
+        return values;
+    }
+
+    /**
+     * Checks that a tree holds exactly the values and counts of a model, in the model's order, and that each of
+     * its shards holds only values from its split up to the next and knows its size.
+     * @param tree Tree under test.
+     * @param shards Shards of the tree, in order of their ranges.
+     * @param model Values and their counts.
+     */
+    private static void check(ShardedBST<Integer> tree, List<LocalShard<Integer>> shards, TreeMap<Integer, Integer> model){
+        List<Integer> iterated = new ArrayList<>();
+        for (Integer value : tree) iterated.add(value);
+        assertEquals(expand(model), iterated);
+
+        Object[] splits = tree.getSplits();
+        long[] sizes = tree.shardSizes();
+        Comparator<? super Integer> order = model.comparator() == null ? Comparator.<Integer>naturalOrder() : model.comparator();
+        long size = 0;
+        for (int i=0; i<shards.size(); i++){
+            ShardRuns<Integer> runs = shards.get(i).runs().join();
+            long shardSize = 0;
+            for (int j=0; j<runs.size(); j++){
+                Integer value = runs.value(j);
+                assertTrue("Shard " + i + " holds " + value, i == 0 || i > splits.length || order.compare(value, (Integer) splits[i - 1]) >= 0);
+                assertTrue("Shard " + i + " holds " + value, i >= splits.length || order.compare(value, (Integer) splits[i]) < 0);
+                shardSize += runs.count(j);
+            }
+            assertEquals(shardSize, sizes[i]);
+            size += shardSize;
+        }
+        assertEquals(size, tree.size());
+    }
+}